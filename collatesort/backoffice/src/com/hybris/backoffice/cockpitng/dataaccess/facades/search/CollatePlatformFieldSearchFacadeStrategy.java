@@ -13,6 +13,8 @@ import de.hybris.platform.core.GenericSearchField;
 import de.hybris.platform.core.GenericSearchFieldType;
 import de.hybris.platform.core.GenericSearchOrderBy;
 import de.hybris.platform.core.Operator;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.Tenant;
 import de.hybris.platform.core.model.ItemModel;
 import de.hybris.platform.core.model.c2l.LanguageModel;
 import de.hybris.platform.core.model.enumeration.EnumerationMetaTypeModel;
@@ -21,87 +23,293 @@ import de.hybris.platform.core.model.type.AtomicTypeModel;
 import de.hybris.platform.core.model.type.AttributeDescriptorModel;
 import de.hybris.platform.core.model.type.ComposedTypeModel;
 import de.hybris.platform.core.model.type.TypeModel;
+import de.hybris.platform.core.model.user.UserModel;
 import de.hybris.platform.genericsearch.GenericSearchQuery;
+import de.hybris.platform.jalo.JaloSession;
 import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.session.Session;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
 import de.hybris.platform.util.Config;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.log4j.Logger;
 
 import com.hybris.backoffice.cockpitng.search.builder.ConditionQueryBuilder;
+import com.hybris.backoffice.constants.CollatesortConstants;
+import com.hybris.backoffice.core.CollateEnumRanking;
+import com.hybris.backoffice.core.CollateEnumSortOrderBy;
+import com.hybris.backoffice.core.CollateEnumSortOrderCache;
+import com.hybris.backoffice.core.CollateGenericSearchService;
+import com.hybris.backoffice.core.CollateInMemorySort;
+import com.hybris.backoffice.core.CollateIndexedSearch;
 import com.hybris.backoffice.core.CollateQuery;
+import com.hybris.backoffice.core.CollateSearchIndexService;
+import com.hybris.backoffice.core.CollateSearchMonitor;
 import com.hybris.backoffice.core.CollateSearchOrderBy;
+import com.hybris.backoffice.core.CollateSearchResultCache;
+import com.hybris.backoffice.core.CollateSearchTrace;
+import com.hybris.backoffice.core.CollateSortKey;
+import com.hybris.backoffice.core.CollateSortMetadata;
+import com.hybris.backoffice.core.CollateSortMetadataCache;
+import com.hybris.backoffice.core.CollateStatementRegistry;
 import com.hybris.cockpitng.search.data.SearchQueryCondition;
+import com.hybris.cockpitng.search.data.SearchQueryConditionList;
 import com.hybris.cockpitng.search.data.SearchQueryData;
+import com.hybris.cockpitng.search.data.ValueComparisonOperator;
 
 public class CollatePlatformFieldSearchFacadeStrategy extends DefaultPlatformFieldSearchFacadeStrategy
 {
+	private static final Logger LOG = Logger.getLogger(CollatePlatformFieldSearchFacadeStrategy.class);
+
+	/** the session attribute of the session catalog versions, collatesort does not depend on the catalog extension */
+	private static final String SESSION_CATALOG_VERSIONS = "catalogversions";
+
 	private CommonI18NService ownCommonI18NService;
 
 	private ConditionQueryBuilder ownGenericMultiConditionQueryBuilder;
 
+	private CollateEnumSortOrderCache enumSortOrderCache;
+
+	private CollateSortMetadataCache sortMetadataCache;
+
+	private CollateStatementRegistry statementRegistry;
+
+	private CollateSearchResultCache resultCache;
+
+	private UserService ownUserService;
+
+	private CollateSearchMonitor searchMonitor;
+
+	private ExecutorService conditionExecutor;
+
+	private CollateSearchIndexService searchIndexService;
+
+	private SessionService sessionService;
+
+	/** structural keys of the conditions found to join a type, see {@link #conditionShape(String, SearchQueryCondition)} */
+	private final Set<String> joiningConditions = ConcurrentHashMap.newKeySet();
+
+	/** session of each condition worker thread, created on its first task */
+	private final ThreadLocal<Session> workerSession = new ThreadLocal<>();
+
 	@Override
 	protected GenericSearchOrderBy createSortCondition(final GenericQuery query, final String typeCode,
 	                                                   final SearchQueryData searchQueryData)
 	{
-		GenericSearchOrderBy ret = null;
 		if (searchQueryData.getSortData() != null && StringUtils.isNotBlank(searchQueryData.getSortData().getSortAttribute()))
 		{
-			final String qualifier = searchQueryData.getSortData().getSortAttribute();
-			final AttributeDescriptorModel attDescriptor = getTypeService().getAttributeDescriptor(typeCode, qualifier);
-			if (isAttributeSortable(attDescriptor))
+			return createSortCondition(query, typeCode, new CollateSortKey(searchQueryData.getSortData().getSortAttribute(),
+					searchQueryData.getSortData().isAscending(), null));
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the order bys of a search in sort order: the sort attribute of the search, if any, the secondary keys
+	 * configured for the type with <code>collatesort.sort.secondary.&lt;typecode&gt;</code> and finally <code>{pk}</code>
+	 * ascending, which makes the order of every page deterministic.
+	 */
+	protected List<GenericSearchOrderBy> createSortConditions(final GenericQuery query, final String typeCode,
+			final SearchQueryData searchQueryData)
+	{
+		final List<GenericSearchOrderBy> orderBys = new ArrayList<>();
+		for (final CollateSortKey key : getSortKeys(typeCode, searchQueryData))
+		{
+			final GenericSearchOrderBy orderBy = createSortCondition(query, typeCode, key);
+			if (orderBy != null)
 			{
-				final boolean asc = searchQueryData.getSortData().isAscending();
-				if (attDescriptor.getAttributeType() instanceof EnumerationMetaTypeModel && sorEnumByLocalizedNameEnabled())
+				orderBys.add(orderBy);
+			}
+		}
+		orderBys.add(new GenericSearchOrderBy(new GenericSearchField(typeCode, ItemModel.PK), true));
+		return orderBys;
+	}
+
+	/**
+	 * @return the sort attribute of the search followed by the secondary keys of the type, without <code>{pk}</code>
+	 */
+	protected List<CollateSortKey> getSortKeys(final String typeCode, final SearchQueryData searchQueryData)
+	{
+		final List<CollateSortKey> keys = new ArrayList<>();
+		final String sortAttribute = getSortAttribute(searchQueryData);
+		if (sortAttribute != null)
+		{
+			keys.add(new CollateSortKey(sortAttribute, searchQueryData.getSortData().isAscending(), null));
+		}
+		for (final CollateSortKey key : getSecondarySortKeys(typeCode))
+		{
+			if (!key.getQualifier().equals(sortAttribute) && !ItemModel.PK.equals(key.getQualifier()))
+			{
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	protected List<CollateSortKey> getSecondarySortKeys(final String typeCode)
+	{
+		return CollateSortKey.parseList(Config.getParameter(CollatesortConstants.SORT_SECONDARY_PREFIX + typeCode));
+	}
+
+	private static String getSortAttribute(final SearchQueryData searchQueryData)
+	{
+		return searchQueryData.getSortData() == null ? null
+				: StringUtils.trimToNull(searchQueryData.getSortData().getSortAttribute());
+	}
+
+	/**
+	 * Creates the order by of one sort key, <code>null</code> if the attribute is not sortable.
+	 */
+	protected GenericSearchOrderBy createSortCondition(final GenericQuery query, final String typeCode,
+			final CollateSortKey key)
+	{
+		GenericSearchOrderBy ret = null;
+		final String qualifier = key.getQualifier();
+		final boolean asc = key.isAscending();
+		final CollateSortMetadata metadata = getSortMetadata(typeCode, qualifier);
+		switch (metadata.getSortKind())
+		{
+			case ENUM:
+				if (sorEnumByLocalizedNameEnabled())
 				{
-					final ComposedTypeModel sortType = (ComposedTypeModel) attDescriptor.getAttributeType();
-					ret = createEnumSortOrder(query, sortType.getCode(), qualifier, asc);
+					ret = createEnumSortOrder(query, metadata.getEnumTypeCode(), qualifier, asc);
 				}
 				else
 				{
-					final GenericSearchField field = new GenericSearchField(typeCode,
-							searchQueryData.getSortData().getSortAttribute());
-
-					if (isCollateSupportEnabled() && Boolean.TRUE.equals(attDescriptor.getLocalized()))
-					{
-						field.addFieldType(GenericSearchFieldType.LOCALIZED);
-						ret = new CollateSearchOrderBy(
-								field,
-								searchQueryData.getSortData().isAscending(), collate());
-					}
-					else
-					{
-						ret = new GenericSearchOrderBy(field,searchQueryData.getSortData().isAscending());
-					}
+					ret = new GenericSearchOrderBy(new GenericSearchField(typeCode, qualifier), asc);
 				}
-			}
+				break;
+			case LOCALIZED:
+				final GenericSearchField field = new GenericSearchField(typeCode, qualifier);
+				if (isCollateSupportEnabled())
+				{
+					field.addFieldType(GenericSearchFieldType.LOCALIZED);
+					ret = new CollateSearchOrderBy(field, asc, key.getCollateType() == null ? collate()
+							: canonicalCollation(key.getCollateType()));
+				}
+				else
+				{
+					ret = new GenericSearchOrderBy(field, asc);
+				}
+				break;
+			case PLAIN:
+				ret = new GenericSearchOrderBy(new GenericSearchField(typeCode, qualifier), asc);
+				break;
+			default:
+				break;
 		}
 		return ret;
 	}
 
+	protected CollateSortMetadata getSortMetadata(final String typeCode, final String qualifier)
+	{
+		if (sortMetadataCache == null)
+		{
+			return resolveSortMetadata(typeCode, qualifier);
+		}
+		return sortMetadataCache.get(typeCode, qualifier, this::resolveSortMetadata);
+	}
+
+	protected CollateSortMetadata resolveSortMetadata(final String typeCode, final String qualifier)
+	{
+		final AttributeDescriptorModel attDescriptor = getTypeService().getAttributeDescriptor(typeCode, qualifier);
+		if (!isAttributeSortable(attDescriptor))
+		{
+			return CollateSortMetadata.unsortable();
+		}
+		if (attDescriptor.getAttributeType() instanceof EnumerationMetaTypeModel)
+		{
+			return CollateSortMetadata.enumeration(attDescriptor.getAttributeType().getCode());
+		}
+		return Boolean.TRUE.equals(attDescriptor.getLocalized()) ? CollateSortMetadata.localized()
+				: CollateSortMetadata.plain();
+	}
+
 	@Override
 	protected GenericSearchQuery buildQuery(final SearchQueryData searchQueryData)
 	{
 		validateParameterNotNull(searchQueryData, "Parameter 'searchQueryData' must not be null!");
 		validateParameterNotNull(searchQueryData.getSearchType(), "Parameter 'searchQueryData.typeCode' must not be empty!");
 
+		final long start = System.nanoTime();
 		final String typeCode = searchQueryData.getSearchType();
-		final GenericQuery query = new CollateQuery(typeCode);
+		final CollateQuery query = new CollateQuery(typeCode);
+
+		addConditions(query, typeCode, searchQueryData);
+
+		createSortConditions(query, typeCode, searchQueryData).forEach(query::addOrderBy);
+		// every search is ordered by {pk}; it is only a sorted search if the sort attribute or secondary keys apply
+		final boolean sortedByKeys = !getSortKeys(typeCode, searchQueryData).isEmpty();
+		if (sortedByKeys && isInMemorySortApplicable(typeCode, searchQueryData))
+		{
+			query.setInMemorySort(createInMemorySort(searchQueryData));
+		}
+		if (sortedByKeys && isCountSplitEnabled())
+		{
+			query.setSeparateCount(true);
+		}
+
+		query.setTypeExclusive(!searchQueryData.isIncludeSubtypes());
+		if (searchIndexService != null && searchIndexService.isEnabled())
+		{
+			query.setIndexedSearch(createIndexedSearch(searchQueryData));
+		}
+		if (isResultCacheEnabled())
+		{
+			query.setResultCacheKey(createResultCacheKey(searchQueryData));
+		}
+		if (isInstrumentationEnabled())
+		{
+			query.setTrace(createTrace(searchQueryData, System.nanoTime() - start));
+		}
+		return new GenericSearchQuery(query);
+	}
+
+	/**
+	 * Builds the query of the given search for an export, which reads the whole result from the database in chunks: the
+	 * in-memory sort, the local index and the result cache are dropped.
+	 */
+	public CollateQuery buildExportQuery(final SearchQueryData searchQueryData)
+	{
+		final CollateQuery query = (CollateQuery) buildQuery(searchQueryData).getQuery();
+		query.setInMemorySort(null);
+		query.setIndexedSearch(null);
+		query.setResultCacheKey(null);
+		return query;
+	}
 
+	protected void addConditions(final CollateQuery query, final String typeCode, final SearchQueryData searchQueryData)
+	{
 		if (CollectionUtils.isNotEmpty(searchQueryData.getConditions()))
 		{
 			final List<GenericCondition> conditions = new ArrayList<>();
 			final List<GenericCondition> filteringConditions = new ArrayList<>();
+			final List<List<GenericCondition>> builtConditions = buildConditions(query, typeCode, searchQueryData);
 
-			for (final SearchQueryCondition condition : searchQueryData.getConditions())
+			for (int i = 0; i < builtConditions.size(); i++)
 			{
-				final List<GenericCondition> genericConditions = ownGenericMultiConditionQueryBuilder.buildQuery(query, typeCode,
-						condition, searchQueryData);
+				final SearchQueryCondition condition = searchQueryData.getConditions().get(i);
+				final List<GenericCondition> genericConditions = builtConditions.get(i);
 				if (condition.isFilteringCondition())
 				{
 					filteringConditions.addAll(genericConditions);
@@ -119,15 +327,216 @@ public class CollatePlatformFieldSearchFacadeStrategy extends DefaultPlatformFie
 			final Optional<GenericCondition> optional = joinConditionsWithFilteringConditions(allConditions, allFilteringConditions);
 			optional.ifPresent(query::addCondition);
 		}
+	}
 
-		final GenericSearchOrderBy orderBy = createSortCondition(query, typeCode, searchQueryData);
-		if (orderBy != null)
+	protected boolean isCountSplitEnabled()
+	{
+		return Config.getBoolean(CollatesortConstants.COUNT_SPLIT_ENABLED, true);
+	}
+
+	/**
+	 * Builds the generic conditions of every search condition, in the order of the search conditions. Wide searches are
+	 * built concurrently on the condition executor if enabled, see {@link #isParallelConditionBuildingApplicable(int)}.
+	 * Conditions known to join a type are built on the calling thread only, see
+	 * {@link #buildDetachedCondition(String, SearchQueryCondition, SearchQueryData)}.
+	 */
+	protected List<List<GenericCondition>> buildConditions(final CollateQuery query, final String typeCode,
+			final SearchQueryData searchQueryData)
+	{
+		final List<SearchQueryCondition> searchConditions = searchQueryData.getConditions();
+		final List<List<GenericCondition>> built = new ArrayList<>(searchConditions.size());
+		if (!isParallelConditionBuildingApplicable(searchConditions.size()))
 		{
-			query.addOrderBy(orderBy);
+			searchConditions.forEach(condition -> built
+					.add(ownGenericMultiConditionQueryBuilder.buildQuery(query, typeCode, condition, searchQueryData)));
+			return built;
 		}
 
-		query.setTypeExclusive(!searchQueryData.isIncludeSubtypes());
-		return new GenericSearchQuery(query);
+		final Runnable callerContext = captureCallerContext();
+		final List<Future<List<GenericCondition>>> futures = new ArrayList<>(searchConditions.size());
+		for (final SearchQueryCondition condition : searchConditions)
+		{
+			futures.add(joiningConditions.contains(conditionShape(typeCode, condition)) ? null
+					: conditionExecutor.submit(inCallerContext(callerContext,
+							() -> buildDetachedCondition(typeCode, condition, searchQueryData))));
+		}
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getParallelConditionTimeout());
+		for (int i = 0; i < searchConditions.size(); i++)
+		{
+			final Future<List<GenericCondition>> future = futures.get(i);
+			List<GenericCondition> conditions = future == null ? null : awaitCondition(future, deadline);
+			if (conditions == null)
+			{
+				conditions = ownGenericMultiConditionQueryBuilder.buildQuery(query, typeCode, searchConditions.get(i),
+						searchQueryData);
+			}
+			built.add(conditions);
+		}
+		return built;
+	}
+
+	/**
+	 * Builds the condition against a scratch query. Conditions which change the scratch query, e.g. by joining a type, are
+	 * not detached and <code>null</code> is returned, so that they are built again on the real query. Their shape is
+	 * remembered, and later conditions of the same shape are not built concurrently any more.
+	 */
+	protected List<GenericCondition> buildDetachedCondition(final String typeCode, final SearchQueryCondition condition,
+			final SearchQueryData searchQueryData)
+	{
+		final CollateQuery scratch = new CollateQuery(typeCode);
+		final List<GenericCondition> conditions = ownGenericMultiConditionQueryBuilder.buildQuery(scratch, typeCode,
+				condition, searchQueryData);
+		if (scratch.isPristine())
+		{
+			return conditions;
+		}
+		joiningConditions.add(conditionShape(typeCode, condition));
+		return null;
+	}
+
+	/**
+	 * @return key of the searched type and the attributes and operators of the condition, without its values
+	 */
+	private static String conditionShape(final String typeCode, final SearchQueryCondition condition)
+	{
+		final StringBuilder key = new StringBuilder(typeCode);
+		appendConditionShape(key, condition);
+		return key.toString();
+	}
+
+	private static void appendConditionShape(final StringBuilder key, final SearchQueryCondition condition)
+	{
+		key.append('(');
+		if (condition instanceof SearchQueryConditionList)
+		{
+			final SearchQueryConditionList conditionList = (SearchQueryConditionList) condition;
+			key.append(conditionList.getOperator());
+			conditionList.getConditions().forEach(nested -> appendConditionShape(key, nested));
+		}
+		else
+		{
+			key.append(condition.getDescriptor() == null ? null : condition.getDescriptor().getAttributeName()).append(',')
+					.append(condition.getOperator());
+		}
+		key.append(')');
+	}
+
+	/**
+	 * @return the built conditions, or <code>null</code> if they have to be built on the calling thread
+	 */
+	private List<GenericCondition> awaitCondition(final Future<List<GenericCondition>> future, final long deadline)
+	{
+		try
+		{
+			return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		catch (final TimeoutException e)
+		{
+			future.cancel(true);
+			LOG.debug("Building a search condition timed out, building it on the calling thread", e);
+			return null;
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building the search conditions", e);
+		}
+		catch (final ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Building a search condition failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Captures the user, language and session catalog versions of the calling thread.
+	 *
+	 * @return a runnable which applies them to the session of a worker thread
+	 */
+	protected Runnable captureCallerContext()
+	{
+		final UserModel user = ownUserService.getCurrentUser();
+		final LanguageModel language = ownCommonI18NService.getCurrentLanguage();
+		final Object catalogVersions = sessionService.getAttribute(SESSION_CATALOG_VERSIONS);
+		return () -> {
+			ownUserService.setCurrentUser(user);
+			if (language != null)
+			{
+				ownCommonI18NService.setCurrentLanguage(language);
+			}
+			if (catalogVersions != null)
+			{
+				sessionService.setAttribute(SESSION_CATALOG_VERSIONS, catalogVersions);
+			}
+		};
+	}
+
+	/**
+	 * Runs the task on a worker thread in the session of that thread, in a local view with the captured context of the
+	 * calling thread. The session of the calling thread is never shared, so a cancelled task which is still running cannot
+	 * touch it. A task run by the calling thread itself, because the executor is saturated, runs unchanged.
+	 */
+	protected <T> Callable<T> inCallerContext(final Runnable callerContext, final Supplier<T> task)
+	{
+		final Thread caller = Thread.currentThread();
+		final Tenant tenant = Registry.getCurrentTenantNoFallback();
+		return () -> {
+			if (Thread.currentThread() == caller || tenant == null)
+			{
+				return task.get();
+			}
+			Registry.setCurrentTenant(tenant);
+			try
+			{
+				activateWorkerSession();
+				return sessionService.executeInLocalView(new SessionExecutionBody()
+				{
+					@Override
+					public Object execute()
+					{
+						callerContext.run();
+						return task.get();
+					}
+				});
+			}
+			finally
+			{
+				Registry.unsetCurrentTenant();
+			}
+		};
+	}
+
+	/**
+	 * Activates the session of the current worker thread, which is created by its first task. Every task runs in a local
+	 * view of it, so no task sees the user, language or catalog versions of the task before.
+	 */
+	private void activateWorkerSession()
+	{
+		final Session session = workerSession.get();
+		if (session == null)
+		{
+			workerSession.set(sessionService.createNewSession());
+		}
+		else
+		{
+			((JaloSession) sessionService.getRawSession(session)).activate();
+		}
+	}
+
+	protected boolean isParallelConditionBuildingApplicable(final int conditionCount)
+	{
+		return conditionExecutor != null && sessionService != null
+				&& Config.getBoolean(CollatesortConstants.PARALLEL_CONDITIONS_ENABLED, false)
+				&& conditionCount >= Config.getInt(CollatesortConstants.PARALLEL_CONDITIONS_THRESHOLD, 8);
+	}
+
+	protected long getParallelConditionTimeout()
+	{
+		return Config.getLong(CollatesortConstants.PARALLEL_CONDITIONS_TIMEOUT, 5000);
 	}
 
 	protected boolean isCollateSupportEnabled()
@@ -143,18 +552,35 @@ public class CollatePlatformFieldSearchFacadeStrategy extends DefaultPlatformFie
 			return false;
 		}
 
-		return StringUtils.isNotEmpty(Config.getParameter("collate." + currentLanguage.getIsocode()));
+		return StringUtils.isNotEmpty(Config.getParameter(CollatesortConstants.COLLATE_PREFIX + currentLanguage.getIsocode()));
 	}
 
 	protected String collate()
 	{
-		return Config.getParameter("collate." + ownCommonI18NService.getCurrentLanguage().getIsocode());
+		final String collateType = Config
+				.getParameter(CollatesortConstants.COLLATE_PREFIX + ownCommonI18NService.getCurrentLanguage().getIsocode());
+		return canonicalCollation(collateType);
+	}
+
+	private String canonicalCollation(final String collateType)
+	{
+		return statementRegistry == null ? collateType : statementRegistry.canonicalCollation(collateType);
 	}
 
 	@Override
 	protected GenericSearchOrderBy createEnumSortOrder(final GenericQuery query, final String sortType, final String qualifier,
 	                                                   final boolean asc)
 	{
+		final LanguageModel langModel = ownCommonI18NService.getCurrentLanguage();
+		if (isEnumSortInMemoryEnabled() && langModel != null)
+		{
+			final Optional<CollateEnumRanking> ranking = enumSortOrderCache.getRanking(sortType, langModel);
+			if (ranking.isPresent())
+			{
+				return new CollateEnumSortOrderBy(new GenericSearchField(qualifier), asc, ranking.get());
+			}
+		}
+
 		final String aliasCode = String.format("%s_sort", sortType);
 
 		query.addOuterJoin(sortType, aliasCode, GenericCondition.createJoinCondition(new GenericSearchField(qualifier),
@@ -171,13 +597,213 @@ public class CollatePlatformFieldSearchFacadeStrategy extends DefaultPlatformFie
 		{
 			orderBy = new GenericSearchOrderBy(new GenericSearchField(aliasCode, EnumerationValueModel.NAME), asc);
 		}
+		// no explicit language pk: the field is resolved with the session language, so that every language shares the
+		// same statement text
 		orderBy.getField().addFieldType(GenericSearchFieldType.LOCALIZED);
-
-		final LanguageModel langModel = ownCommonI18NService.getCurrentLanguage();
-		orderBy.getField().setLanguagePK(langModel.getPk());
 		return orderBy;
 	}
 
+	/**
+	 * Searches sorted by a localized attribute may be sorted by {@link CollateGenericSearchService}, which sorts small
+	 * results in memory instead of pushing the collation down to the database. Secondary keys have to be localized or
+	 * plain attributes for that.
+	 */
+	protected boolean isInMemorySortApplicable(final String typeCode, final SearchQueryData searchQueryData)
+	{
+		final String sortAttribute = getSortAttribute(searchQueryData);
+		if (getInMemorySortLimit() <= 0 || ownCommonI18NService.getCurrentLanguage() == null || sortAttribute == null
+				|| getSortMetadata(typeCode, sortAttribute).getSortKind() != CollateSortMetadata.SortKind.LOCALIZED)
+		{
+			return false;
+		}
+		final List<CollateSortKey> keys = getSortKeys(typeCode, searchQueryData);
+		for (final CollateSortKey key : keys)
+		{
+			final CollateSortMetadata.SortKind sortKind = getSortMetadata(typeCode, key.getQualifier()).getSortKind();
+			if (sortKind != CollateSortMetadata.SortKind.LOCALIZED && sortKind != CollateSortMetadata.SortKind.PLAIN)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected CollateInMemorySort createInMemorySort(final SearchQueryData searchQueryData)
+	{
+		final LanguageModel language = ownCommonI18NService.getCurrentLanguage();
+		final String languageCollation = Config.getParameter(CollatesortConstants.COLLATE_PREFIX + language.getIsocode());
+		final String typeCode = searchQueryData.getSearchType();
+		final List<CollateInMemorySort.Key> keys = new ArrayList<>();
+		for (final CollateSortKey key : getSortKeys(typeCode, searchQueryData))
+		{
+			final boolean localized = getSortMetadata(typeCode, key.getQualifier())
+					.getSortKind() == CollateSortMetadata.SortKind.LOCALIZED;
+			keys.add(new CollateInMemorySort.Key(key.getQualifier(), key.isAscending(), localized,
+					key.getCollateType() == null ? languageCollation : key.getCollateType()));
+		}
+		return new CollateInMemorySort(keys, ownCommonI18NService.getLocaleForLanguage(language), getInMemorySortLimit());
+	}
+
+	protected int getInMemorySortLimit()
+	{
+		return Config.getInt(CollatesortConstants.IN_MEMORY_SORT_LIMIT, 0);
+	}
+
+	/**
+	 * A search can be answered by the {@link CollateSearchIndexService} if it includes subtypes, has no full text and
+	 * exactly one <code>contains</code> condition, and both the condition attribute and the sort attribute, if any, are
+	 * indexed in the current language.
+	 *
+	 * @return the indexed search, or <code>null</code> if the search has to be run by the database
+	 */
+	protected CollateIndexedSearch createIndexedSearch(final SearchQueryData searchQueryData)
+	{
+		final LanguageModel language = ownCommonI18NService.getCurrentLanguage();
+		if (language == null || !searchQueryData.isIncludeSubtypes()
+				|| StringUtils.isNotBlank(searchQueryData.getSearchQueryText()) || searchQueryData.getConditions() == null
+				|| searchQueryData.getConditions().size() != 1)
+		{
+			return null;
+		}
+
+		SearchQueryCondition condition = searchQueryData.getConditions().get(0);
+		while (condition instanceof SearchQueryConditionList
+				&& ((SearchQueryConditionList) condition).getConditions().size() == 1)
+		{
+			condition = ((SearchQueryConditionList) condition).getConditions().get(0);
+		}
+		if (condition instanceof SearchQueryConditionList || condition.getDescriptor() == null
+				|| condition.getOperator() != ValueComparisonOperator.CONTAINS)
+		{
+			return null;
+		}
+
+		final String typeCode = searchQueryData.getSearchType();
+		final String isocode = language.getIsocode();
+		final String attribute = condition.getDescriptor().getAttributeName();
+		final String term = getIndexedTerm(condition.getValue(), ownCommonI18NService.getLocaleForLanguage(language));
+		final String sortAttribute = getSortAttribute(searchQueryData);
+		// the index orders by one attribute and pk only
+		if (!getSecondarySortKeys(typeCode).isEmpty())
+		{
+			return null;
+		}
+		if (term == null || !searchIndexService.isIndexed(typeCode, attribute, isocode)
+				|| (sortAttribute != null && !searchIndexService.isIndexed(typeCode, sortAttribute, isocode)))
+		{
+			return null;
+		}
+		return new CollateIndexedSearch(typeCode, attribute, term, sortAttribute,
+				sortAttribute == null || searchQueryData.getSortData().isAscending(), isocode);
+	}
+
+	/**
+	 * Localized conditions carry their values per locale; only a value for the current locale can be indexed.
+	 */
+	private static String getIndexedTerm(final Object value, final Locale locale)
+	{
+		if (value instanceof String)
+		{
+			return (String) value;
+		}
+		if (value instanceof Map && ((Map<?, ?>) value).size() == 1 && ((Map<?, ?>) value).get(locale) instanceof String)
+		{
+			return (String) ((Map<?, ?>) value).get(locale);
+		}
+		return null;
+	}
+
+	protected boolean isInstrumentationEnabled()
+	{
+		return searchMonitor != null && searchMonitor.isEnabled();
+	}
+
+	protected CollateSearchTrace createTrace(final SearchQueryData searchQueryData, final long buildNanos)
+	{
+		final String typeCode = searchQueryData.getSearchType();
+		final String sortAttribute = getSortAttribute(searchQueryData);
+		final String sortKind = sortAttribute == null ? null : getSortMetadata(typeCode, sortAttribute).getSortKind().name();
+		final LanguageModel language = ownCommonI18NService.getCurrentLanguage();
+		final String isocode = language == null ? null : language.getIsocode();
+		final String collation = isocode == null ? null : Config.getParameter(CollatesortConstants.COLLATE_PREFIX + isocode);
+		return new CollateSearchTrace(typeCode, sortAttribute, sortKind, isocode, collation, buildNanos);
+	}
+
+	protected boolean isResultCacheEnabled()
+	{
+		return resultCache != null && resultCache.isEnabled() && ownUserService != null;
+	}
+
+	/**
+	 * Creates the key under which the pages of the given search are cached. Besides the normalized search it contains
+	 * the current language and the current user, whose search restrictions apply to the result.
+	 */
+	protected String createResultCacheKey(final SearchQueryData searchQueryData)
+	{
+		final StringBuilder key = new StringBuilder(128);
+		key.append(searchQueryData.getSearchType()).append('|').append(searchQueryData.isIncludeSubtypes()).append('|')
+				.append(StringUtils.defaultString(searchQueryData.getSearchQueryText())).append('|')
+				.append(getConditionsOperator(searchQueryData)).append('|');
+		if (searchQueryData.getConditions() != null)
+		{
+			searchQueryData.getConditions().forEach(condition -> appendCondition(key, condition));
+		}
+		if (searchQueryData.getSortData() != null)
+		{
+			key.append('|').append(searchQueryData.getSortData().getSortAttribute()).append(':')
+					.append(searchQueryData.getSortData().isAscending());
+		}
+		key.append('|').append(getSecondarySortKeys(searchQueryData.getSearchType()));
+		final LanguageModel language = ownCommonI18NService.getCurrentLanguage();
+		key.append('|').append(language == null ? null : language.getIsocode());
+		key.append('|').append(ownUserService.getCurrentUser().getUid());
+		return key.toString();
+	}
+
+	private void appendCondition(final StringBuilder key, final SearchQueryCondition condition)
+	{
+		key.append(condition.isFilteringCondition() ? "F(" : "(");
+		if (condition instanceof SearchQueryConditionList)
+		{
+			final SearchQueryConditionList conditionList = (SearchQueryConditionList) condition;
+			key.append(conditionList.getOperator());
+			conditionList.getConditions().forEach(nested -> appendCondition(key, nested));
+		}
+		else
+		{
+			key.append(condition.getDescriptor() == null ? null : condition.getDescriptor().getAttributeName()).append(',')
+					.append(condition.getOperator()).append(',');
+			appendValue(key, condition.getValue());
+		}
+		key.append(')');
+	}
+
+	private void appendValue(final StringBuilder key, final Object value)
+	{
+		if (value instanceof ItemModel)
+		{
+			key.append(((ItemModel) value).getPk());
+		}
+		else if (value instanceof Collection)
+		{
+			key.append('[');
+			((Collection<?>) value).forEach(element -> {
+				appendValue(key, element);
+				key.append(',');
+			});
+			key.append(']');
+		}
+		else
+		{
+			key.append(value);
+		}
+	}
+
+	protected boolean isEnumSortInMemoryEnabled()
+	{
+		return enumSortOrderCache != null && Config.getBoolean(CollatesortConstants.ENUM_SORT_IN_MEMORY, true);
+	}
+
 	private boolean isAttributeSortable(final AttributeDescriptorModel attributeDescriptor)
 	{
 		boolean ret = false;
@@ -200,4 +826,49 @@ public class CollatePlatformFieldSearchFacadeStrategy extends DefaultPlatformFie
 	{
 		this.ownGenericMultiConditionQueryBuilder = ownGenericMultiConditionQueryBuilder;
 	}
+
+	public void setEnumSortOrderCache(final CollateEnumSortOrderCache enumSortOrderCache)
+	{
+		this.enumSortOrderCache = enumSortOrderCache;
+	}
+
+	public void setSortMetadataCache(final CollateSortMetadataCache sortMetadataCache)
+	{
+		this.sortMetadataCache = sortMetadataCache;
+	}
+
+	public void setStatementRegistry(final CollateStatementRegistry statementRegistry)
+	{
+		this.statementRegistry = statementRegistry;
+	}
+
+	public void setResultCache(final CollateSearchResultCache resultCache)
+	{
+		this.resultCache = resultCache;
+	}
+
+	public void setOwnUserService(final UserService ownUserService)
+	{
+		this.ownUserService = ownUserService;
+	}
+
+	public void setSearchMonitor(final CollateSearchMonitor searchMonitor)
+	{
+		this.searchMonitor = searchMonitor;
+	}
+
+	public void setConditionExecutor(final ExecutorService conditionExecutor)
+	{
+		this.conditionExecutor = conditionExecutor;
+	}
+
+	public void setSearchIndexService(final CollateSearchIndexService searchIndexService)
+	{
+		this.searchIndexService = searchIndexService;
+	}
+
+	public void setSessionService(final SessionService sessionService)
+	{
+		this.sessionService = sessionService;
+	}
 }
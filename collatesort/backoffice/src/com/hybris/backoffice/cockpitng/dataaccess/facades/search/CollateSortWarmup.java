@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.cockpitng.dataaccess.facades.search;
+
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.TenantAwareThreadFactory;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.core.model.type.AttributeDescriptorModel;
+import de.hybris.platform.core.model.type.ComposedTypeModel;
+import de.hybris.platform.servicelayer.exceptions.UnknownIdentifierException;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.session.Session;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.util.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+import com.hybris.backoffice.core.CollateCollators;
+import com.hybris.backoffice.core.CollateEnumSortOrderCache;
+import com.hybris.backoffice.core.CollateSortMetadata;
+import com.hybris.backoffice.core.CollateStatementRegistry;
+
+
+/**
+ * Preloads the sort metadata used by {@link CollatePlatformFieldSearchFacadeStrategy} after the Backoffice started, so
+ * that the first sorted grids do not pay for it: sort metadata of all attributes of the types configured with
+ * <code>collatesort.warmup.types</code>, and the enumeration rankings and collators of the languages configured with
+ * <code>collatesort.warmup.languages</code>. It runs on its own thread, one type after the other, and never delays the
+ * start of the node.
+ */
+public class CollateSortWarmup
+{
+	private static final Logger LOG = Logger.getLogger(CollateSortWarmup.class);
+
+	public enum State
+	{
+		IDLE, RUNNING, DONE, FAILED
+	}
+
+	private volatile State state = State.IDLE;
+
+	private volatile int typeCount;
+
+	private volatile int warmedTypeCount;
+
+	private ScheduledExecutorService executor;
+
+	private CollatePlatformFieldSearchFacadeStrategy strategy;
+
+	private CollateEnumSortOrderCache enumSortOrderCache;
+
+	private CollateStatementRegistry statementRegistry;
+
+	private TypeService typeService;
+
+	private CommonI18NService commonI18NService;
+
+	private SessionService sessionService;
+
+	private UserService userService;
+
+	public void start()
+	{
+		if (!Config.getBoolean(CollatesortConstants.WARMUP_ENABLED, true))
+		{
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new TenantAwareThreadFactory(Registry.getCurrentTenant()));
+		executor.schedule(this::run, Config.getLong(CollatesortConstants.WARMUP_DELAY, 30), TimeUnit.SECONDS);
+		// runs the scheduled warm-up and lets the thread end afterwards
+		executor.shutdown();
+	}
+
+	public void stop()
+	{
+		if (executor != null)
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	protected void run()
+	{
+		final List<String> typeCodes = split(Config.getParameter(CollatesortConstants.WARMUP_TYPES));
+		typeCount = typeCodes.size();
+		warmedTypeCount = 0;
+		state = State.RUNNING;
+		final long start = System.currentTimeMillis();
+		try
+		{
+			runAsAdmin(() -> {
+				final List<LanguageModel> languages = getLanguages();
+				for (final String typeCode : typeCodes)
+				{
+					if (Thread.currentThread().isInterrupted())
+					{
+						return;
+					}
+					warmUp(typeCode, languages);
+					warmedTypeCount++;
+					LOG.info(String.format("Warmed up collated sorting of %s (%d of %d types)", typeCode,
+							Integer.valueOf(warmedTypeCount), Integer.valueOf(typeCount)));
+				}
+			});
+			state = State.DONE;
+			LOG.info(String.format("Warm-up of collated sorting finished in %d ms",
+					Long.valueOf(System.currentTimeMillis() - start)));
+		}
+		catch (final RuntimeException e)
+		{
+			state = State.FAILED;
+			LOG.warn("Warm-up of collated sorting failed, the remaining metadata is loaded on demand", e);
+		}
+	}
+
+	protected void warmUp(final String typeCode, final List<LanguageModel> languages)
+	{
+		final ComposedTypeModel composedType;
+		try
+		{
+			composedType = typeService.getComposedTypeForCode(typeCode);
+		}
+		catch (final UnknownIdentifierException e)
+		{
+			LOG.warn("Unknown warm-up type " + typeCode + ", skipping it");
+			return;
+		}
+
+		for (final AttributeDescriptorModel attribute : typeService.getAttributeDescriptorsForType(composedType))
+		{
+			final CollateSortMetadata metadata = strategy.getSortMetadata(typeCode, attribute.getQualifier());
+			if (metadata.getSortKind() == CollateSortMetadata.SortKind.ENUM)
+			{
+				languages.forEach(language -> enumSortOrderCache.getRanking(metadata.getEnumTypeCode(), language));
+			}
+		}
+	}
+
+	private List<LanguageModel> getLanguages()
+	{
+		final List<LanguageModel> languages = new ArrayList<>();
+		for (final String isocode : split(Config.getParameter(CollatesortConstants.WARMUP_LANGUAGES)))
+		{
+			try
+			{
+				final LanguageModel language = commonI18NService.getLanguage(isocode);
+				final String collateType = Config.getParameter(CollatesortConstants.COLLATE_PREFIX + isocode);
+				CollateCollators.getCollator(collateType, commonI18NService.getLocaleForLanguage(language));
+				statementRegistry.canonicalCollation(collateType);
+				languages.add(language);
+			}
+			catch (final UnknownIdentifierException e)
+			{
+				LOG.warn("Unknown warm-up language " + isocode + ", skipping it");
+			}
+		}
+		return languages;
+	}
+
+	private void runAsAdmin(final Runnable task)
+	{
+		final Session session = sessionService.createNewSession();
+		try
+		{
+			sessionService.executeInLocalView(new SessionExecutionBody()
+			{
+				@Override
+				public void executeWithoutResult()
+				{
+					task.run();
+				}
+			}, userService.getAdminUser());
+		}
+		finally
+		{
+			sessionService.closeSession(session);
+		}
+	}
+
+	private static List<String> split(final String value)
+	{
+		final List<String> values = new ArrayList<>();
+		for (final String part : StringUtils.split(StringUtils.defaultString(value), ','))
+		{
+			if (StringUtils.isNotBlank(part))
+			{
+				values.add(part.trim());
+			}
+		}
+		return values;
+	}
+
+	public State getState()
+	{
+		return state;
+	}
+
+	public int getTypeCount()
+	{
+		return typeCount;
+	}
+
+	public int getWarmedTypeCount()
+	{
+		return warmedTypeCount;
+	}
+
+	@Required
+	public void setStrategy(final CollatePlatformFieldSearchFacadeStrategy strategy)
+	{
+		this.strategy = strategy;
+	}
+
+	@Required
+	public void setEnumSortOrderCache(final CollateEnumSortOrderCache enumSortOrderCache)
+	{
+		this.enumSortOrderCache = enumSortOrderCache;
+	}
+
+	@Required
+	public void setStatementRegistry(final CollateStatementRegistry statementRegistry)
+	{
+		this.statementRegistry = statementRegistry;
+	}
+
+	@Required
+	public void setTypeService(final TypeService typeService)
+	{
+		this.typeService = typeService;
+	}
+
+	@Required
+	public void setCommonI18NService(final CommonI18NService commonI18NService)
+	{
+		this.commonI18NService = commonI18NService;
+	}
+
+	@Required
+	public void setSessionService(final SessionService sessionService)
+	{
+		this.sessionService = sessionService;
+	}
+
+	@Required
+	public void setUserService(final UserService userService)
+	{
+		this.userService = userService;
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved
+ */
+package com.hybris.backoffice.services;
+
+import de.hybris.platform.core.GenericSearchOrderBy;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.ItemModel;
+import de.hybris.platform.core.model.type.AtomicTypeModel;
+import de.hybris.platform.core.model.type.AttributeDescriptorModel;
+import de.hybris.platform.core.model.type.CollectionTypeModel;
+import de.hybris.platform.core.model.type.MapTypeModel;
+import de.hybris.platform.core.model.type.RelationDescriptorModel;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.util.Config;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.cockpitng.dataaccess.facades.search.CollatePlatformFieldSearchFacadeStrategy;
+import com.hybris.backoffice.constants.CollatesortConstants;
+import com.hybris.backoffice.core.CollateEnumSortOrderBy;
+import com.hybris.backoffice.core.CollateQuery;
+import com.hybris.backoffice.core.CollateSearchOrderBy;
+import com.hybris.cockpitng.search.data.SearchQueryData;
+
+
+/**
+ * Exports the complete result of a collated Backoffice search as CSV in constant memory. The search is built by
+ * {@link CollatePlatformFieldSearchFacadeStrategy#buildExportQuery(SearchQueryData)} and read with flexible searches in
+ * keyset chunks of <code>collatesort.export.chunksize</code> rows: each chunk selects the exported attributes of the
+ * items of the search which sort after the last row of the chunk before. Only one chunk is held at a time, and items
+ * are never loaded as models.
+ * <p>
+ * The export is ordered by the sort attribute of the search, with its collation, and then by pk. Items without a value
+ * come first in ascending and last in descending order, like on SQL Server. Secondary sort keys are not applied;
+ * enumeration rankings and sort attributes of other than string, number or date type fall back to pk order.
+ */
+public class CollateSearchExportService
+{
+	private static final char SEPARATOR = ';';
+
+	private static final String ALIAS = "e";
+	private static final String PK_COLUMN = "{" + ALIAS + "." + ItemModel.PK + "}";
+	private static final String LAST_PK = "lastPk";
+	private static final String LAST_VALUE = "lastValue";
+
+	private CollatePlatformFieldSearchFacadeStrategy strategy;
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private TypeService typeService;
+
+	/**
+	 * @param searchQueryData
+	 *           the search, including its sort
+	 * @param attributes
+	 *           qualifiers of the exported attributes of the searched type; localized attributes are exported in the
+	 *           current language, references as pk
+	 * @param out
+	 *           stream the UTF-8 encoded CSV is written to, it is flushed but not closed
+	 * @return number of exported items
+	 * @throws IllegalArgumentException
+	 *            if an attribute is not stored in a column of the searched type, e.g. a relation
+	 */
+	public long exportCsv(final SearchQueryData searchQueryData, final List<String> attributes, final OutputStream out)
+			throws IOException
+	{
+		final String typeCode = searchQueryData.getSearchType();
+		attributes.forEach(attribute -> checkExportable(typeCode, attribute));
+
+		final CollateQuery query = strategy.buildExportQuery(searchQueryData);
+		final Map<String, Object> values = new HashMap<>();
+		final String items = query.toUnsortedFlexibleSearch(values);
+		final ExportOrder order = getExportOrder(typeCode, query);
+
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		writeRow(writer, attributes);
+		long exported = 0;
+		if (order == null)
+		{
+			exported += exportChunks(writer, typeCode, items, values, attributes, null, false);
+		}
+		else
+		{
+			// on SQL Server null is the lowest value
+			exported += exportChunks(writer, typeCode, items, values, attributes, order, order.ascending);
+			exported += exportChunks(writer, typeCode, items, values, attributes, order, !order.ascending);
+		}
+		writer.flush();
+		return exported;
+	}
+
+	/**
+	 * Writes the items in the given order, chunk by chunk.
+	 *
+	 * @param order
+	 *           sort attribute of the export, <code>null</code> for pk order
+	 * @param nullValues
+	 *           whether the items without or the items with a value of the sort attribute are written
+	 */
+	private long exportChunks(final Writer writer, final String typeCode, final String items, final Map<String, Object> values,
+			final List<String> attributes, final ExportOrder order, final boolean nullValues) throws IOException
+	{
+		final int chunkSize = getChunkSize();
+		final int firstAttribute = order == null ? 1 : 2;
+		final List<Class<?>> resultClasses = new ArrayList<>();
+		resultClasses.add(PK.class);
+		if (order != null)
+		{
+			resultClasses.add(order.valueClass);
+		}
+		attributes.forEach(attribute -> resultClasses.add(String.class));
+
+		long exported = 0;
+		PK lastPk = null;
+		Object lastValue = null;
+		List<List<Object>> rows;
+		do
+		{
+			final FlexibleSearchQuery chunk = new FlexibleSearchQuery(
+					chunkStatement(typeCode, items, attributes, order, nullValues, lastPk != null), values);
+			if (lastPk != null)
+			{
+				chunk.addQueryParameter(LAST_PK, lastPk);
+				if (order != null && !nullValues)
+				{
+					chunk.addQueryParameter(LAST_VALUE, lastValue);
+				}
+			}
+			chunk.setResultClassList(resultClasses);
+			chunk.setCount(chunkSize);
+			chunk.setNeedTotal(false);
+			rows = flexibleSearchService.<List<Object>> search(chunk).getResult();
+			for (final List<Object> row : rows)
+			{
+				final List<String> cells = new ArrayList<>(attributes.size());
+				row.subList(firstAttribute, row.size()).forEach(value -> cells.add(value == null ? "" : value.toString()));
+				writeRow(writer, cells);
+			}
+			if (!rows.isEmpty())
+			{
+				final List<Object> last = rows.get(rows.size() - 1);
+				lastPk = (PK) last.get(0);
+				lastValue = order == null ? null : last.get(1);
+			}
+			exported += rows.size();
+		}
+		while (rows.size() == chunkSize && !Thread.currentThread().isInterrupted());
+		return exported;
+	}
+
+	/**
+	 * Selects the next chunk of the items of the search, the keyset condition compares with the collation of the sort so
+	 * that the chunks follow each other in the order of the search.
+	 */
+	protected String chunkStatement(final String typeCode, final String items, final List<String> attributes,
+			final ExportOrder order, final boolean nullValues, final boolean afterLast)
+	{
+		final StringBuilder statement = new StringBuilder("SELECT ").append(PK_COLUMN);
+		if (order != null)
+		{
+			statement.append(", ").append(column(order.attribute));
+		}
+		attributes.forEach(attribute -> statement.append(", ").append(column(attribute)));
+		statement.append(" FROM {").append(typeCode).append(" AS ").append(ALIAS).append("} WHERE ").append(PK_COLUMN)
+				.append(" IN ({{ ").append(items).append(" }})");
+
+		if (order == null)
+		{
+			if (afterLast)
+			{
+				statement.append(" AND ").append(PK_COLUMN).append(" > ?").append(LAST_PK);
+			}
+			return statement.append(" ORDER BY ").append(PK_COLUMN).append(" ASC").toString();
+		}
+
+		final String sortColumn = column(order.attribute);
+		final String collated = StringUtils.isEmpty(order.collateType) ? sortColumn
+				: sortColumn + " COLLATE " + order.collateType;
+		if (nullValues)
+		{
+			statement.append(" AND ").append(sortColumn).append(" IS NULL");
+			if (afterLast)
+			{
+				statement.append(" AND ").append(PK_COLUMN).append(" > ?").append(LAST_PK);
+			}
+			return statement.append(" ORDER BY ").append(PK_COLUMN).append(" ASC").toString();
+		}
+
+		statement.append(" AND ").append(sortColumn).append(" IS NOT NULL");
+		if (afterLast)
+		{
+			statement.append(" AND (").append(collated).append(order.ascending ? " > ?" : " < ?").append(LAST_VALUE)
+					.append(" OR (").append(collated).append(" = ?").append(LAST_VALUE).append(" AND ").append(PK_COLUMN)
+					.append(" > ?").append(LAST_PK).append("))");
+		}
+		return statement.append(" ORDER BY ").append(collated).append(order.ascending ? " ASC, " : " DESC, ")
+				.append(PK_COLUMN).append(" ASC").toString();
+	}
+
+	private static String column(final String attribute)
+	{
+		return "{" + ALIAS + "." + attribute + "}";
+	}
+
+	/**
+	 * @return the sort attribute of the export, <code>null</code> if the export is ordered by pk
+	 */
+	protected ExportOrder getExportOrder(final String typeCode, final CollateQuery query)
+	{
+		final List<GenericSearchOrderBy> orderBys = query.getOrderByList();
+		final GenericSearchOrderBy orderBy = orderBys.isEmpty() ? null : orderBys.get(0);
+		if (orderBy == null || orderBy instanceof CollateEnumSortOrderBy
+				|| ItemModel.PK.equals(orderBy.getField().getQualifier()))
+		{
+			return null;
+		}
+		final String attribute = orderBy.getField().getQualifier();
+		final Class<?> valueClass = getValueClass(typeService.getAttributeDescriptor(typeCode, attribute));
+		if (valueClass == null)
+		{
+			return null;
+		}
+		final String collateType = orderBy instanceof CollateSearchOrderBy ? ((CollateSearchOrderBy) orderBy).getCollateType()
+				: null;
+		return new ExportOrder(attribute, orderBy.isAscending(), collateType, valueClass);
+	}
+
+	/**
+	 * @return the class the values of the sort attribute are read as, <code>null</code> if the keyset cannot compare them
+	 */
+	private static Class<?> getValueClass(final AttributeDescriptorModel descriptor)
+	{
+		if (Boolean.TRUE.equals(descriptor.getLocalized()))
+		{
+			return String.class;
+		}
+		if (descriptor.getAttributeType() instanceof AtomicTypeModel)
+		{
+			final Class<?> javaClass = ((AtomicTypeModel) descriptor.getAttributeType()).getJavaClass();
+			if (String.class.equals(javaClass) || Number.class.isAssignableFrom(javaClass)
+					|| Date.class.isAssignableFrom(javaClass))
+			{
+				return javaClass;
+			}
+		}
+		return null;
+	}
+
+	private void checkExportable(final String typeCode, final String attribute)
+	{
+		final AttributeDescriptorModel descriptor = typeService.getAttributeDescriptor(typeCode, attribute);
+		if (descriptor instanceof RelationDescriptorModel || !Boolean.TRUE.equals(descriptor.getLocalized())
+				&& (descriptor.getAttributeType() instanceof CollectionTypeModel
+						|| descriptor.getAttributeType() instanceof MapTypeModel))
+		{
+			throw new IllegalArgumentException("Attribute " + attribute + " of " + typeCode + " cannot be exported");
+		}
+	}
+
+	protected int getChunkSize()
+	{
+		return Math.max(1, Config.getInt(CollatesortConstants.EXPORT_CHUNK_SIZE, 1000));
+	}
+
+	private static void writeRow(final Writer writer, final List<String> row) throws IOException
+	{
+		for (int i = 0; i < row.size(); i++)
+		{
+			if (i > 0)
+			{
+				writer.write(SEPARATOR);
+			}
+			writeCell(writer, row.get(i));
+		}
+		writer.write("\r\n");
+	}
+
+	private static void writeCell(final Writer writer, final String cell) throws IOException
+	{
+		if (cell.indexOf(SEPARATOR) < 0 && cell.indexOf('"') < 0 && cell.indexOf('\n') < 0 && cell.indexOf('\r') < 0)
+		{
+			writer.write(cell);
+			return;
+		}
+		writer.write('"');
+		writer.write(cell.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+	@Required
+	public void setStrategy(final CollatePlatformFieldSearchFacadeStrategy strategy)
+	{
+		this.strategy = strategy;
+	}
+
+	@Required
+	public void setFlexibleSearchService(final FlexibleSearchService flexibleSearchService)
+	{
+		this.flexibleSearchService = flexibleSearchService;
+	}
+
+	@Required
+	public void setTypeService(final TypeService typeService)
+	{
+		this.typeService = typeService;
+	}
+
+	/**
+	 * Sort attribute of an export with its direction, collation and the class its values are read as.
+	 */
+	protected static final class ExportOrder
+	{
+		private final String attribute;
+		private final boolean ascending;
+		private final String collateType;
+		private final Class<?> valueClass;
+
+		ExportOrder(final String attribute, final boolean ascending, final String collateType, final Class<?> valueClass)
+		{
+			this.attribute = attribute;
+			this.ascending = ascending;
+			this.collateType = collateType;
+			this.valueClass = valueClass;
+		}
+	}
+}
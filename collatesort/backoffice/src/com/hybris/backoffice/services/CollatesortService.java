@@ -3,13 +3,310 @@
  */
 package com.hybris.backoffice.services;
 
+import de.hybris.platform.util.Config;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.cockpitng.dataaccess.facades.search.CollateSortWarmup;
+import com.hybris.backoffice.constants.CollatesortConstants;
+import com.hybris.backoffice.core.CollateEnumSortOrderCache;
+import com.hybris.backoffice.core.CollateSearchListener;
+import com.hybris.backoffice.core.CollateSearchMonitor;
+import com.hybris.backoffice.core.CollateSearchResultCache;
+import com.hybris.backoffice.core.CollateSearchTrace;
+import com.hybris.backoffice.core.CollateSortMetadataCache;
+import com.hybris.backoffice.core.CollateStatementRegistry;
+
+
 /**
- * Hello World CollatesortService
+ * In-memory statistics of the collated searches of this node, shown by the collatesort dashboard widget. Searches are
+ * recorded lock free with {@link LongAdder}s and a fixed bucket latency histogram; reading the statistics never touches
+ * the database.
  */
-public class CollatesortService
+public class CollatesortService implements CollateSearchListener
 {
-	public String getHello()
+	/**
+	 * Upper bounds in milliseconds of the latency histogram buckets, the last bucket is unbounded.
+	 */
+	static final long[] LATENCY_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, Long.MAX_VALUE };
+
+	private static final String OTHER = "*";
+
+	private final LongAdder searches = new LongAdder();
+
+	private final LongAdder slowSearches = new LongAdder();
+
+	private final LongAdder inMemorySorted = new LongAdder();
+
+	private final LongAdder cached = new LongAdder();
+
+	private final LongAdder polyglotBypassed = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	private final LongAdder[] latencyHistogram = newHistogram();
+
+	private final ConcurrentMap<String, SortAttributeCollector> sortAttributes = new ConcurrentHashMap<>();
+
+	private CollateSearchMonitor searchMonitor;
+
+	private CollateSortMetadataCache sortMetadataCache;
+
+	private CollateSearchResultCache resultCache;
+
+	private CollateEnumSortOrderCache enumSortOrderCache;
+
+	private CollateStatementRegistry statementRegistry;
+
+	private CollateSortWarmup sortWarmup;
+
+	public void init()
+	{
+		searchMonitor.addListener(this);
+	}
+
+	public void destroy()
 	{
-		return "Hello";
+		searchMonitor.removeListener(this);
+	}
+
+	@Override
+	public void onSearch(final CollateSearchTrace trace)
+	{
+		final long nanos = trace.getBuildNanos() + trace.getExecutionNanos();
+		final boolean slow = searchMonitor.isSlow(trace);
+		searches.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+		latencyHistogram[bucketOf(nanos / 1_000_000L)].increment();
+		if (slow)
+		{
+			slowSearches.increment();
+		}
+		if (trace.isInMemorySorted())
+		{
+			inMemorySorted.increment();
+		}
+		if (trace.isCached())
+		{
+			cached.increment();
+		}
+		if (trace.isPolyglotBypassed())
+		{
+			polyglotBypassed.increment();
+		}
+		getSortAttributeCollector(trace).record(nanos, slow);
+	}
+
+	protected SortAttributeCollector getSortAttributeCollector(final CollateSearchTrace trace)
+	{
+		final String key = trace.getTypeCode() + '|' + trace.getLanguage() + '|' + trace.getSortAttribute();
+		final SortAttributeCollector collector = sortAttributes.get(key);
+		if (collector != null)
+		{
+			return collector;
+		}
+		if (sortAttributes.size() >= Config.getInt(CollatesortConstants.STATISTICS_MAX_KEYS, 1000))
+		{
+			return sortAttributes.computeIfAbsent(OTHER, k -> new SortAttributeCollector(OTHER, OTHER, OTHER));
+		}
+		return sortAttributes.computeIfAbsent(key,
+				k -> new SortAttributeCollector(trace.getTypeCode(), trace.getLanguage(), trace.getSortAttribute()));
+	}
+
+	/**
+	 * @param topSlowCount
+	 *           number of sort attributes to include, ordered by their number of slow searches
+	 * @return snapshot of the current statistics
+	 */
+	public CollatesortStatistics getStatistics(final int topSlowCount)
+	{
+		final long[] histogram = new long[latencyHistogram.length];
+		for (int i = 0; i < histogram.length; i++)
+		{
+			histogram[i] = latencyHistogram[i].sum();
+		}
+
+		final List<CollatesortStatistics.SortAttributeStatistics> slowest = new ArrayList<>(sortAttributes.size());
+		sortAttributes.values().forEach(collector -> slowest.add(collector.snapshot()));
+		slowest.sort(Comparator.comparingLong(CollatesortStatistics.SortAttributeStatistics::getSlowCount)
+				.thenComparingLong(CollatesortStatistics.SortAttributeStatistics::getTotalMillis).reversed());
+
+		final CollatesortStatistics statistics = new CollatesortStatistics();
+		statistics.setSearchCount(searches.sum());
+		statistics.setSlowSearchCount(slowSearches.sum());
+		statistics.setInMemorySortedCount(inMemorySorted.sum());
+		statistics.setCachedCount(cached.sum());
+		statistics.setPolyglotBypassedCount(polyglotBypassed.sum());
+		statistics.setTotalMillis(totalNanos.sum() / 1_000_000L);
+		statistics.setMaxMillis(maxNanos.get() / 1_000_000L);
+		statistics.setMedianMillis(percentile(histogram, 0.5));
+		statistics.setP95Millis(percentile(histogram, 0.95));
+		statistics.setP99Millis(percentile(histogram, 0.99));
+		statistics.setSortMetadataCacheHitRatio(ratio(sortMetadataCache.getHits(), sortMetadataCache.getMisses()));
+		statistics.setResultCacheHitRatio(ratio(resultCache.getHits(), resultCache.getMisses()));
+		statistics.setEnumCacheHitRatio(ratio(enumSortOrderCache.getHits(), enumSortOrderCache.getMisses()));
+		statistics.setDistinctStatementCount(statementRegistry.getDistinctStatementCount());
+		statistics.setCachedStatementCount(statementRegistry.getCachedStatementCount());
+		if (sortWarmup != null)
+		{
+			statistics.setWarmupState(sortWarmup.getState().name());
+			statistics.setWarmedTypeCount(sortWarmup.getWarmedTypeCount());
+			statistics.setWarmupTypeCount(sortWarmup.getTypeCount());
+		}
+		statistics.setSlowestSortAttributes(slowest.subList(0, Math.min(topSlowCount, slowest.size())));
+		return statistics;
+	}
+
+	/**
+	 * Clears the search statistics, cache and statement counters are left untouched.
+	 */
+	public void reset()
+	{
+		searches.reset();
+		slowSearches.reset();
+		inMemorySorted.reset();
+		cached.reset();
+		polyglotBypassed.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+		for (final LongAdder bucket : latencyHistogram)
+		{
+			bucket.reset();
+		}
+		sortAttributes.clear();
+	}
+
+	/**
+	 * @return upper bound of the bucket containing the given percentile, or the maximum for the unbounded bucket
+	 */
+	protected long percentile(final long[] histogram, final double percentile)
+	{
+		long total = 0;
+		for (final long count : histogram)
+		{
+			total += count;
+		}
+		if (total == 0)
+		{
+			return 0;
+		}
+		final long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < histogram.length; i++)
+		{
+			seen += histogram[i];
+			if (seen >= rank)
+			{
+				return LATENCY_BUCKETS[i] == Long.MAX_VALUE ? maxNanos.get() / 1_000_000L : LATENCY_BUCKETS[i];
+			}
+		}
+		return maxNanos.get() / 1_000_000L;
+	}
+
+	static int bucketOf(final long millis)
+	{
+		int bucket = 0;
+		while (millis > LATENCY_BUCKETS[bucket])
+		{
+			bucket++;
+		}
+		return bucket;
+	}
+
+	private static double ratio(final long hits, final long misses)
+	{
+		final long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	private static LongAdder[] newHistogram()
+	{
+		final LongAdder[] histogram = new LongAdder[LATENCY_BUCKETS.length];
+		for (int i = 0; i < histogram.length; i++)
+		{
+			histogram[i] = new LongAdder();
+		}
+		return histogram;
+	}
+
+	@Required
+	public void setSearchMonitor(final CollateSearchMonitor searchMonitor)
+	{
+		this.searchMonitor = searchMonitor;
+	}
+
+	@Required
+	public void setSortMetadataCache(final CollateSortMetadataCache sortMetadataCache)
+	{
+		this.sortMetadataCache = sortMetadataCache;
+	}
+
+	@Required
+	public void setResultCache(final CollateSearchResultCache resultCache)
+	{
+		this.resultCache = resultCache;
+	}
+
+	@Required
+	public void setEnumSortOrderCache(final CollateEnumSortOrderCache enumSortOrderCache)
+	{
+		this.enumSortOrderCache = enumSortOrderCache;
+	}
+
+	@Required
+	public void setStatementRegistry(final CollateStatementRegistry statementRegistry)
+	{
+		this.statementRegistry = statementRegistry;
+	}
+
+	public void setSortWarmup(final CollateSortWarmup sortWarmup)
+	{
+		this.sortWarmup = sortWarmup;
+	}
+
+	protected static class SortAttributeCollector
+	{
+		private final String typeCode;
+		private final String language;
+		private final String sortAttribute;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder slowCount = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		protected SortAttributeCollector(final String typeCode, final String language, final String sortAttribute)
+		{
+			this.typeCode = typeCode;
+			this.language = language;
+			this.sortAttribute = sortAttribute;
+		}
+
+		protected void record(final long nanos, final boolean slow)
+		{
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			if (slow)
+			{
+				slowCount.increment();
+			}
+		}
+
+		protected CollatesortStatistics.SortAttributeStatistics snapshot()
+		{
+			return new CollatesortStatistics.SortAttributeStatistics(typeCode, language, sortAttribute, count.sum(),
+					slowCount.sum(), totalNanos.sum() / 1_000_000L, maxNanos.get() / 1_000_000L);
+		}
 	}
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved
+ */
+package com.hybris.backoffice.services;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Snapshot of the statistics collected by {@link CollatesortService}. Latencies are the build plus execution time of a
+ * search in milliseconds, percentiles are the upper bounds of the histogram buckets they fall into.
+ */
+public class CollatesortStatistics
+{
+	private long searchCount;
+	private long slowSearchCount;
+	private long inMemorySortedCount;
+	private long cachedCount;
+	private long polyglotBypassedCount;
+	private long totalMillis;
+	private long maxMillis;
+	private long medianMillis;
+	private long p95Millis;
+	private long p99Millis;
+	private double sortMetadataCacheHitRatio;
+	private double resultCacheHitRatio;
+	private double enumCacheHitRatio;
+	private long distinctStatementCount;
+	private int cachedStatementCount;
+	private String warmupState;
+	private int warmedTypeCount;
+	private int warmupTypeCount;
+	private List<SortAttributeStatistics> slowestSortAttributes = Collections.emptyList();
+
+	public long getSearchCount()
+	{
+		return searchCount;
+	}
+
+	public void setSearchCount(final long searchCount)
+	{
+		this.searchCount = searchCount;
+	}
+
+	public long getSlowSearchCount()
+	{
+		return slowSearchCount;
+	}
+
+	public void setSlowSearchCount(final long slowSearchCount)
+	{
+		this.slowSearchCount = slowSearchCount;
+	}
+
+	public long getInMemorySortedCount()
+	{
+		return inMemorySortedCount;
+	}
+
+	public void setInMemorySortedCount(final long inMemorySortedCount)
+	{
+		this.inMemorySortedCount = inMemorySortedCount;
+	}
+
+	public long getCachedCount()
+	{
+		return cachedCount;
+	}
+
+	public void setCachedCount(final long cachedCount)
+	{
+		this.cachedCount = cachedCount;
+	}
+
+	public long getPolyglotBypassedCount()
+	{
+		return polyglotBypassedCount;
+	}
+
+	public void setPolyglotBypassedCount(final long polyglotBypassedCount)
+	{
+		this.polyglotBypassedCount = polyglotBypassedCount;
+	}
+
+	public long getTotalMillis()
+	{
+		return totalMillis;
+	}
+
+	public void setTotalMillis(final long totalMillis)
+	{
+		this.totalMillis = totalMillis;
+	}
+
+	public long getAverageMillis()
+	{
+		return searchCount == 0 ? 0 : totalMillis / searchCount;
+	}
+
+	public long getMaxMillis()
+	{
+		return maxMillis;
+	}
+
+	public void setMaxMillis(final long maxMillis)
+	{
+		this.maxMillis = maxMillis;
+	}
+
+	public long getMedianMillis()
+	{
+		return medianMillis;
+	}
+
+	public void setMedianMillis(final long medianMillis)
+	{
+		this.medianMillis = medianMillis;
+	}
+
+	public long getP95Millis()
+	{
+		return p95Millis;
+	}
+
+	public void setP95Millis(final long p95Millis)
+	{
+		this.p95Millis = p95Millis;
+	}
+
+	public long getP99Millis()
+	{
+		return p99Millis;
+	}
+
+	public void setP99Millis(final long p99Millis)
+	{
+		this.p99Millis = p99Millis;
+	}
+
+	public double getSortMetadataCacheHitRatio()
+	{
+		return sortMetadataCacheHitRatio;
+	}
+
+	public void setSortMetadataCacheHitRatio(final double sortMetadataCacheHitRatio)
+	{
+		this.sortMetadataCacheHitRatio = sortMetadataCacheHitRatio;
+	}
+
+	public double getResultCacheHitRatio()
+	{
+		return resultCacheHitRatio;
+	}
+
+	public void setResultCacheHitRatio(final double resultCacheHitRatio)
+	{
+		this.resultCacheHitRatio = resultCacheHitRatio;
+	}
+
+	public double getEnumCacheHitRatio()
+	{
+		return enumCacheHitRatio;
+	}
+
+	public void setEnumCacheHitRatio(final double enumCacheHitRatio)
+	{
+		this.enumCacheHitRatio = enumCacheHitRatio;
+	}
+
+	public long getDistinctStatementCount()
+	{
+		return distinctStatementCount;
+	}
+
+	public void setDistinctStatementCount(final long distinctStatementCount)
+	{
+		this.distinctStatementCount = distinctStatementCount;
+	}
+
+	public int getCachedStatementCount()
+	{
+		return cachedStatementCount;
+	}
+
+	public void setCachedStatementCount(final int cachedStatementCount)
+	{
+		this.cachedStatementCount = cachedStatementCount;
+	}
+
+	/**
+	 * @return state of the sort metadata warm-up, <code>null</code> if there is none
+	 */
+	public String getWarmupState()
+	{
+		return warmupState;
+	}
+
+	public void setWarmupState(final String warmupState)
+	{
+		this.warmupState = warmupState;
+	}
+
+	public int getWarmedTypeCount()
+	{
+		return warmedTypeCount;
+	}
+
+	public void setWarmedTypeCount(final int warmedTypeCount)
+	{
+		this.warmedTypeCount = warmedTypeCount;
+	}
+
+	public int getWarmupTypeCount()
+	{
+		return warmupTypeCount;
+	}
+
+	public void setWarmupTypeCount(final int warmupTypeCount)
+	{
+		this.warmupTypeCount = warmupTypeCount;
+	}
+
+	public List<SortAttributeStatistics> getSlowestSortAttributes()
+	{
+		return slowestSortAttributes;
+	}
+
+	public void setSlowestSortAttributes(final List<SortAttributeStatistics> slowestSortAttributes)
+	{
+		this.slowestSortAttributes = Collections.unmodifiableList(slowestSortAttributes);
+	}
+
+	/**
+	 * Statistics of the searches of one type sorted by one attribute in one language.
+	 */
+	public static class SortAttributeStatistics
+	{
+		private final String typeCode;
+		private final String language;
+		private final String sortAttribute;
+		private final long count;
+		private final long slowCount;
+		private final long totalMillis;
+		private final long maxMillis;
+
+		public SortAttributeStatistics(final String typeCode, final String language, final String sortAttribute,
+				final long count, final long slowCount, final long totalMillis, final long maxMillis)
+		{
+			this.typeCode = typeCode;
+			this.language = language;
+			this.sortAttribute = sortAttribute;
+			this.count = count;
+			this.slowCount = slowCount;
+			this.totalMillis = totalMillis;
+			this.maxMillis = maxMillis;
+		}
+
+		public String getTypeCode()
+		{
+			return typeCode;
+		}
+
+		public String getLanguage()
+		{
+			return language;
+		}
+
+		public String getSortAttribute()
+		{
+			return sortAttribute;
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		public long getSlowCount()
+		{
+			return slowCount;
+		}
+
+		public long getTotalMillis()
+		{
+			return totalMillis;
+		}
+
+		public long getAverageMillis()
+		{
+			return count == 0 ? 0 : totalMillis / count;
+		}
+
+		public long getMaxMillis()
+		{
+			return maxMillis;
+		}
+	}
+}
@@ -3,27 +3,188 @@
  */
 package com.hybris.backoffice.widgets;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.zkoss.zk.ui.Component;
+import org.zkoss.zk.ui.event.Events;
 import org.zkoss.zk.ui.select.annotation.WireVariable;
+import org.zkoss.zul.Checkbox;
+import org.zkoss.zul.Filedownload;
 import org.zkoss.zul.Label;
+import org.zkoss.zul.Listbox;
+import org.zkoss.zul.Listcell;
+import org.zkoss.zul.Listitem;
+import org.zkoss.zul.Messagebox;
+import org.zkoss.zul.Textbox;
+import org.zkoss.zul.Timer;
 
+import com.hybris.cockpitng.annotations.ViewEvent;
+import com.hybris.cockpitng.search.data.SearchQueryData;
+import com.hybris.cockpitng.search.data.SortData;
 import com.hybris.cockpitng.util.DefaultWidgetController;
 
+import com.hybris.backoffice.services.CollateSearchExportService;
 import com.hybris.backoffice.services.CollatesortService;
+import com.hybris.backoffice.services.CollatesortStatistics;
+import com.hybris.backoffice.widgets.advancedsearch.impl.AdvancedSearchQueryData;
 
 
+/**
+ * Dashboard of the collated searches of this node. The statistics are read from {@link CollatesortService} on every
+ * refresh, which does not cause any database access. The export panel downloads the sorted result of a search over a
+ * type as CSV, see {@link CollateSearchExportService}.
+ */
 public class CollatesortController extends DefaultWidgetController
 {
 	private static final long serialVersionUID = 1L;
-	private Label label;
+
+	private static final Logger LOG = Logger.getLogger(CollatesortController.class);
+
+	protected static final String SETTING_REFRESH_INTERVAL = "refreshInterval";
+	protected static final String SETTING_TOP_SLOW_COUNT = "topSlowCount";
+
+	private Timer refreshTimer;
+	private Label searchCount;
+	private Label slowSearchCount;
+	private Label inMemorySortedCount;
+	private Label cachedCount;
+	private Label polyglotBypassedCount;
+	private Label averageMillis;
+	private Label medianMillis;
+	private Label p95Millis;
+	private Label p99Millis;
+	private Label maxMillis;
+	private Label sortMetadataCacheHitRatio;
+	private Label resultCacheHitRatio;
+	private Label enumCacheHitRatio;
+	private Label distinctStatementCount;
+	private Label cachedStatementCount;
+	private Label warmup;
+	private Listbox slowestSortAttributes;
+	private Textbox exportType;
+	private Textbox exportSortAttribute;
+	private Checkbox exportAscending;
+	private Textbox exportAttributes;
 
 	@WireVariable
 	private transient CollatesortService collatesortService;
 
+	@WireVariable
+	private transient CollateSearchExportService collateSearchExportService;
+
 	@Override
 	public void initialize(final Component comp)
 	{
 		super.initialize(comp);
-		label.setValue(collatesortService.getHello() + " CollatesortController");
+		final int refreshInterval = getWidgetSettings().getInt(SETTING_REFRESH_INTERVAL);
+		if (refreshInterval > 0)
+		{
+			refreshTimer.setDelay(refreshInterval);
+			refreshTimer.start();
+		}
+		refresh();
+	}
+
+	@ViewEvent(componentID = "refreshTimer", eventName = Events.ON_TIMER)
+	public void onRefreshTimer()
+	{
+		refresh();
+	}
+
+	@ViewEvent(componentID = "refreshButton", eventName = Events.ON_CLICK)
+	public void onRefresh()
+	{
+		refresh();
+	}
+
+	@ViewEvent(componentID = "resetButton", eventName = Events.ON_CLICK)
+	public void onReset()
+	{
+		collatesortService.reset();
+		refresh();
+	}
+
+	@ViewEvent(componentID = "exportButton", eventName = Events.ON_CLICK)
+	public void onExport()
+	{
+		final String typeCode = StringUtils.trim(exportType.getValue());
+		final List<String> attributes = Arrays.stream(StringUtils.split(exportAttributes.getValue(), ','))
+				.map(StringUtils::trim).filter(StringUtils::isNotEmpty).collect(Collectors.toList());
+		final SearchQueryData searchQueryData = new AdvancedSearchQueryData.Builder(typeCode)
+				.sortData(new SortData(StringUtils.trim(exportSortAttribute.getValue()), exportAscending.isChecked())).build();
+		try
+		{
+			// the export is spooled to a file, so that only one chunk of the result is held in memory at a time
+			final File file = File.createTempFile("collateexport", ".csv");
+			file.deleteOnExit();
+			try (final OutputStream out = Files.newOutputStream(file.toPath()))
+			{
+				collateSearchExportService.exportCsv(searchQueryData, attributes, out);
+			}
+			Filedownload.save(file, "text/csv");
+		}
+		catch (final IOException | RuntimeException e)
+		{
+			LOG.warn("Export of " + typeCode + " failed", e);
+			Messagebox.show(getLabel("exportFailed", new Object[]
+			{ e.getMessage() }));
+		}
+	}
+
+	protected void refresh()
+	{
+		final CollatesortStatistics statistics = collatesortService
+				.getStatistics(getWidgetSettings().getInt(SETTING_TOP_SLOW_COUNT));
+		searchCount.setValue(String.valueOf(statistics.getSearchCount()));
+		slowSearchCount.setValue(String.valueOf(statistics.getSlowSearchCount()));
+		inMemorySortedCount.setValue(String.valueOf(statistics.getInMemorySortedCount()));
+		cachedCount.setValue(String.valueOf(statistics.getCachedCount()));
+		polyglotBypassedCount.setValue(String.valueOf(statistics.getPolyglotBypassedCount()));
+		averageMillis.setValue(millis(statistics.getAverageMillis()));
+		medianMillis.setValue(millis(statistics.getMedianMillis()));
+		p95Millis.setValue(millis(statistics.getP95Millis()));
+		p99Millis.setValue(millis(statistics.getP99Millis()));
+		maxMillis.setValue(millis(statistics.getMaxMillis()));
+		sortMetadataCacheHitRatio.setValue(percent(statistics.getSortMetadataCacheHitRatio()));
+		resultCacheHitRatio.setValue(percent(statistics.getResultCacheHitRatio()));
+		enumCacheHitRatio.setValue(percent(statistics.getEnumCacheHitRatio()));
+		distinctStatementCount.setValue(String.valueOf(statistics.getDistinctStatementCount()));
+		cachedStatementCount.setValue(String.valueOf(statistics.getCachedStatementCount()));
+		warmup.setValue(statistics.getWarmupState() == null ? "-"
+				: String.format("%s (%d / %d)", statistics.getWarmupState(), Integer.valueOf(statistics.getWarmedTypeCount()),
+						Integer.valueOf(statistics.getWarmupTypeCount())));
+
+		slowestSortAttributes.getItems().clear();
+		for (final CollatesortStatistics.SortAttributeStatistics sortAttribute : statistics.getSlowestSortAttributes())
+		{
+			final Listitem item = new Listitem();
+			item.appendChild(new Listcell(sortAttribute.getTypeCode()));
+			item.appendChild(new Listcell(sortAttribute.getLanguage()));
+			item.appendChild(new Listcell(sortAttribute.getSortAttribute()));
+			item.appendChild(new Listcell(String.valueOf(sortAttribute.getCount())));
+			item.appendChild(new Listcell(String.valueOf(sortAttribute.getSlowCount())));
+			item.appendChild(new Listcell(millis(sortAttribute.getAverageMillis())));
+			item.appendChild(new Listcell(millis(sortAttribute.getMaxMillis())));
+			slowestSortAttributes.appendChild(item);
+		}
+	}
+
+	private static String millis(final long millis)
+	{
+		return millis + " ms";
+	}
+
+	private static String percent(final double ratio)
+	{
+		return String.format(Locale.ROOT, "%.1f %%", Double.valueOf(ratio * 100));
 	}
 }
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.cockpitng.dataaccess.facades.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.GenericCondition;
+import de.hybris.platform.core.GenericQuery;
+import de.hybris.platform.core.GenericSearchField;
+import de.hybris.platform.core.GenericSearchOrderBy;
+import de.hybris.platform.core.model.ItemModel;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hybris.backoffice.cockpitng.search.builder.ConditionQueryBuilder;
+import com.hybris.backoffice.core.CollateQuery;
+import com.hybris.backoffice.core.CollateSortKey;
+import com.hybris.backoffice.core.CollateSortMetadata;
+import com.hybris.cockpitng.search.data.SearchAttributeDescriptor;
+import com.hybris.cockpitng.search.data.SearchQueryCondition;
+import com.hybris.cockpitng.search.data.SearchQueryData;
+import com.hybris.cockpitng.search.data.SortData;
+
+
+/**
+ * Checks the sort keys and the concurrent building of search conditions of
+ * {@link CollatePlatformFieldSearchFacadeStrategy}.
+ */
+@UnitTest
+public class CollatePlatformFieldSearchFacadeStrategyTest
+{
+	private static final String TYPE_CODE = "Product";
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	private final Set<Thread> builderThreads = ConcurrentHashMap.newKeySet();
+
+	private final TestStrategy strategy = new TestStrategy();
+
+	private ConditionQueryBuilder builder;
+
+	private UserService userService;
+
+	private CommonI18NService commonI18NService;
+
+	private SessionService sessionService;
+
+	private SearchQueryData searchQueryData;
+
+	@Before
+	public void setUp()
+	{
+		builder = mock(ConditionQueryBuilder.class);
+		userService = mock(UserService.class);
+		commonI18NService = mock(CommonI18NService.class);
+		sessionService = mock(SessionService.class);
+		searchQueryData = mock(SearchQueryData.class);
+
+		strategy.setOwnGenericMultiConditionQueryBuilder(builder);
+		strategy.setOwnUserService(userService);
+		strategy.setOwnCommonI18NService(commonI18NService);
+		strategy.setSessionService(sessionService);
+		strategy.setConditionExecutor(executor);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void shouldBuildConditionsConcurrentlyInSearchOrder()
+	{
+		final List<SearchQueryCondition> searchConditions = new ArrayList<>();
+		final List<List<GenericCondition>> expected = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+		{
+			final SearchQueryCondition searchCondition = mock(SearchQueryCondition.class);
+			final List<GenericCondition> conditions = Collections.singletonList(condition("code" + i));
+			givenBuilt(searchCondition, conditions);
+			searchConditions.add(searchCondition);
+			expected.add(conditions);
+		}
+		when(searchQueryData.getConditions()).thenReturn(searchConditions);
+		final CollateQuery query = new CollateQuery(TYPE_CODE);
+
+		assertEquals(expected, strategy.buildConditions(query, TYPE_CODE, searchQueryData));
+		assertFalse(builderThreads.contains(Thread.currentThread()));
+		verify(builder, never()).buildQuery(same(query), eq(TYPE_CODE), any(SearchQueryCondition.class),
+				any(SearchQueryData.class));
+	}
+
+	@Test
+	public void shouldBuildJoiningConditionOnTheRealQuery()
+	{
+		final SearchQueryCondition plain = mock(SearchQueryCondition.class);
+		final List<GenericCondition> plainConditions = Collections.singletonList(condition("code"));
+		givenBuilt(plain, plainConditions);
+		final SearchQueryCondition joining = mock(SearchQueryCondition.class);
+		final List<GenericCondition> joiningConditions = Collections.singletonList(condition("catalogVersion"));
+		when(builder.buildQuery(any(GenericQuery.class), eq(TYPE_CODE), same(joining), same(searchQueryData)))
+				.thenAnswer(invocation -> {
+					((GenericQuery) invocation.getArguments()[0]).addOuterJoin("CatalogVersion", "cv",
+							GenericCondition.createJoinCondition(new GenericSearchField(TYPE_CODE, "catalogVersion"),
+									new GenericSearchField("cv", ItemModel.PK)));
+					return joiningConditions;
+				});
+		when(searchQueryData.getConditions()).thenReturn(Arrays.asList(plain, joining));
+		final CollateQuery query = new CollateQuery(TYPE_CODE);
+
+		assertEquals(Arrays.asList(plainConditions, joiningConditions),
+				strategy.buildConditions(query, TYPE_CODE, searchQueryData));
+		assertTrue(query.hasJoins());
+		verify(builder).buildQuery(same(query), eq(TYPE_CODE), same(joining), same(searchQueryData));
+		verify(builder, never()).buildQuery(same(query), eq(TYPE_CODE), same(plain), same(searchQueryData));
+	}
+
+	@Test
+	public void shouldBuildKnownJoiningConditionOnlyOnTheRealQuery()
+	{
+		final SearchQueryCondition plain = searchCondition("code", Collections.singletonList(condition("code")));
+		final SearchQueryCondition joining = mock(SearchQueryCondition.class);
+		givenDescriptor(joining, "catalogVersion");
+		when(builder.buildQuery(any(GenericQuery.class), eq(TYPE_CODE), same(joining), same(searchQueryData)))
+				.thenAnswer(invocation -> {
+					((GenericQuery) invocation.getArguments()[0]).addOuterJoin("CatalogVersion", "cv",
+							GenericCondition.createJoinCondition(new GenericSearchField(TYPE_CODE, "catalogVersion"),
+									new GenericSearchField("cv", ItemModel.PK)));
+					return Collections.singletonList(condition("catalogVersion"));
+				});
+		when(searchQueryData.getConditions()).thenReturn(Arrays.asList(plain, joining));
+
+		strategy.buildConditions(new CollateQuery(TYPE_CODE), TYPE_CODE, searchQueryData);
+		final CollateQuery query = new CollateQuery(TYPE_CODE);
+		strategy.buildConditions(query, TYPE_CODE, searchQueryData);
+
+		verify(builder, times(3)).buildQuery(any(GenericQuery.class), eq(TYPE_CODE), same(joining), same(searchQueryData));
+		verify(builder).buildQuery(same(query), eq(TYPE_CODE), same(joining), same(searchQueryData));
+		verify(builder, never()).buildQuery(same(query), eq(TYPE_CODE), same(plain), same(searchQueryData));
+	}
+
+	@Test
+	public void shouldBuildTimedOutConditionOnTheCallingThread() throws InterruptedException
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final SearchQueryCondition slow = mock(SearchQueryCondition.class);
+		final List<GenericCondition> slowConditions = Collections.singletonList(condition("name"));
+		when(builder.buildQuery(any(GenericQuery.class), eq(TYPE_CODE), same(slow), same(searchQueryData)))
+				.thenAnswer(invocation -> {
+					if (invocation.getArguments()[0] instanceof CollateQuery
+							&& invocation.getArguments()[0] != strategy.realQuery)
+					{
+						release.await(10, TimeUnit.SECONDS);
+					}
+					return slowConditions;
+				});
+		when(searchQueryData.getConditions()).thenReturn(Collections.singletonList(slow));
+		strategy.timeout = 50;
+		strategy.realQuery = new CollateQuery(TYPE_CODE);
+
+		try
+		{
+			assertEquals(Collections.singletonList(slowConditions),
+					strategy.buildConditions(strategy.realQuery, TYPE_CODE, searchQueryData));
+			verify(builder).buildQuery(same(strategy.realQuery), eq(TYPE_CODE), same(slow), same(searchQueryData));
+		}
+		finally
+		{
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void shouldApplyCallerContextToWorkerSession()
+	{
+		final UserModel user = mock(UserModel.class);
+		final LanguageModel language = mock(LanguageModel.class);
+		final Object catalogVersions = Collections.emptyList();
+		when(userService.getCurrentUser()).thenReturn(user);
+		when(commonI18NService.getCurrentLanguage()).thenReturn(language);
+		when(sessionService.getAttribute("catalogversions")).thenReturn(catalogVersions);
+
+		strategy.captureCallerContext().run();
+
+		verify(userService).setCurrentUser(user);
+		verify(commonI18NService).setCurrentLanguage(language);
+		verify(sessionService).setAttribute("catalogversions", catalogVersions);
+	}
+
+	@Test
+	public void shouldOrderBySortAttributeThenSecondaryKeysThenPk()
+	{
+		when(searchQueryData.getSortData()).thenReturn(new SortData("name", false));
+		strategy.secondarySortKeys = CollateSortKey.parseList("code:asc,name:asc,pk:desc,thumbnail,ean:desc");
+
+		assertEquals(Arrays.asList(new CollateSortKey("name", false, null), new CollateSortKey("code", true, null),
+				new CollateSortKey("thumbnail", true, null), new CollateSortKey("ean", false, null)),
+				strategy.getSortKeys(TYPE_CODE, searchQueryData));
+		assertEquals(Arrays.asList("name:false", "code:true", "ean:false", "pk:true"),
+				orderBys(strategy.createSortConditions(new CollateQuery(TYPE_CODE), TYPE_CODE, searchQueryData)));
+	}
+
+	@Test
+	public void shouldOrderBySecondaryKeysWithoutSortAttribute()
+	{
+		when(searchQueryData.getSortData()).thenReturn(new SortData(" ", true));
+		strategy.secondarySortKeys = CollateSortKey.parseList("code:desc");
+
+		assertEquals(Arrays.asList("code:false", "pk:true"),
+				orderBys(strategy.createSortConditions(new CollateQuery(TYPE_CODE), TYPE_CODE, searchQueryData)));
+	}
+
+	private static List<String> orderBys(final List<GenericSearchOrderBy> orderBys)
+	{
+		final List<String> rendered = new ArrayList<>();
+		orderBys.forEach(orderBy -> rendered.add(orderBy.getField().getQualifier() + ':' + orderBy.isAscending()));
+		return rendered;
+	}
+
+	private void givenBuilt(final SearchQueryCondition searchCondition, final List<GenericCondition> conditions)
+	{
+		when(builder.buildQuery(any(GenericQuery.class), eq(TYPE_CODE), same(searchCondition), same(searchQueryData)))
+				.thenAnswer(invocation -> {
+					builderThreads.add(Thread.currentThread());
+					return conditions;
+				});
+	}
+
+	private SearchQueryCondition searchCondition(final String attributeName, final List<GenericCondition> conditions)
+	{
+		final SearchQueryCondition searchCondition = mock(SearchQueryCondition.class);
+		givenDescriptor(searchCondition, attributeName);
+		givenBuilt(searchCondition, conditions);
+		return searchCondition;
+	}
+
+	private static void givenDescriptor(final SearchQueryCondition searchCondition, final String attributeName)
+	{
+		final SearchAttributeDescriptor descriptor = mock(SearchAttributeDescriptor.class);
+		when(descriptor.getAttributeName()).thenReturn(attributeName);
+		when(searchCondition.getDescriptor()).thenReturn(descriptor);
+	}
+
+	private static GenericCondition condition(final String qualifier)
+	{
+		return GenericCondition.createIsNullCondition(new GenericSearchField(TYPE_CODE, qualifier));
+	}
+
+	private static class TestStrategy extends CollatePlatformFieldSearchFacadeStrategy
+	{
+		private long timeout = 5000;
+		private CollateQuery realQuery;
+		private List<CollateSortKey> secondarySortKeys = Collections.emptyList();
+
+		@Override
+		protected List<CollateSortKey> getSecondarySortKeys(final String typeCode)
+		{
+			return secondarySortKeys;
+		}
+
+		@Override
+		protected CollateSortMetadata getSortMetadata(final String typeCode, final String qualifier)
+		{
+			return "thumbnail".equals(qualifier) ? CollateSortMetadata.unsortable() : CollateSortMetadata.plain();
+		}
+
+		@Override
+		protected boolean isParallelConditionBuildingApplicable(final int conditionCount)
+		{
+			return true;
+		}
+
+		@Override
+		protected long getParallelConditionTimeout()
+		{
+			return timeout;
+		}
+	}
+}
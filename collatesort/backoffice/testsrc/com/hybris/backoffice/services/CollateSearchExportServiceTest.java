@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.GenericSearchField;
+import de.hybris.platform.core.GenericSearchOrderBy;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.type.AtomicTypeModel;
+import de.hybris.platform.core.model.type.AttributeDescriptorModel;
+import de.hybris.platform.core.model.type.RelationDescriptorModel;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.search.impl.SearchResultImpl;
+import de.hybris.platform.servicelayer.type.TypeService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.hybris.backoffice.cockpitng.dataaccess.facades.search.CollatePlatformFieldSearchFacadeStrategy;
+import com.hybris.backoffice.core.CollateQuery;
+import com.hybris.backoffice.core.CollateSearchOrderBy;
+import com.hybris.cockpitng.search.data.SearchQueryData;
+
+
+/**
+ * Checks that {@link CollateSearchExportService} reads the search in keyset chunks in the collated order of the search
+ * and writes them as CSV.
+ */
+@UnitTest
+public class CollateSearchExportServiceTest
+{
+	private static final String UNSORTED = "SELECT {pk} FROM {Product} WHERE {code} LIKE ?code";
+
+	private static final List<String> ATTRIBUTES = Arrays.asList("code", "name");
+
+	private final CollateSearchExportService service = new CollateSearchExportService()
+	{
+		@Override
+		protected int getChunkSize()
+		{
+			return 2;
+		}
+	};
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private TypeService typeService;
+
+	private SearchQueryData searchQueryData;
+
+	private CollateQuery query;
+
+	@Before
+	public void setUp()
+	{
+		flexibleSearchService = mock(FlexibleSearchService.class);
+		service.setFlexibleSearchService(flexibleSearchService);
+		typeService = mock(TypeService.class);
+		service.setTypeService(typeService);
+		final CollatePlatformFieldSearchFacadeStrategy strategy = mock(CollatePlatformFieldSearchFacadeStrategy.class);
+		service.setStrategy(strategy);
+
+		searchQueryData = mock(SearchQueryData.class);
+		when(searchQueryData.getSearchType()).thenReturn("Product");
+		query = mock(CollateQuery.class);
+		when(strategy.buildExportQuery(searchQueryData)).thenReturn(query);
+		when(query.toUnsortedFlexibleSearch(anyMap())).thenAnswer(invocation -> {
+			((Map<String, Object>) invocation.getArguments()[0]).put("code", "P%");
+			return UNSORTED;
+		});
+
+		givenAttribute("code", false);
+		givenAttribute("name", true);
+	}
+
+	@Test
+	public void shouldReadNullsFirstAndThenTheValuesInCollatedKeysetChunks() throws IOException
+	{
+		givenOrderBy(new CollateSearchOrderBy(new GenericSearchField("Product", "name"), true, "Latin1_General_CI_AI"));
+		givenChunks(Collections.singletonList(row(1, null, "P1", null)), //
+				Arrays.asList(row(2, "apple", "P2", "apple"), row(3, "Banana", "P3", "Banana")), //
+				Collections.singletonList(row(4, "cherry", "P;4", "say \"cherry\"")));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(4, service.exportCsv(searchQueryData, ATTRIBUTES, out));
+
+		assertEquals("code;name\r\nP1;\r\nP2;apple\r\nP3;Banana\r\n\"P;4\";\"say \"\"cherry\"\"\"\r\n",
+				new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+		final List<FlexibleSearchQuery> chunks = capturedChunks(3);
+		final String select = "SELECT {e.pk}, {e.name}, {e.code}, {e.name} FROM {Product AS e} WHERE {e.pk} IN ({{ " + UNSORTED
+				+ " }})";
+		assertEquals(select + " AND {e.name} IS NULL ORDER BY {e.pk} ASC", chunks.get(0).getQuery());
+		assertEquals(select + " AND {e.name} IS NOT NULL ORDER BY {e.name} COLLATE Latin1_General_CI_AI ASC, {e.pk} ASC",
+				chunks.get(1).getQuery());
+		assertEquals(select + " AND {e.name} IS NOT NULL AND ({e.name} COLLATE Latin1_General_CI_AI > ?lastValue"
+				+ " OR ({e.name} COLLATE Latin1_General_CI_AI = ?lastValue AND {e.pk} > ?lastPk))"
+				+ " ORDER BY {e.name} COLLATE Latin1_General_CI_AI ASC, {e.pk} ASC", chunks.get(2).getQuery());
+
+		assertEquals("P%", chunks.get(2).getQueryParameters().get("code"));
+		assertEquals("Banana", chunks.get(2).getQueryParameters().get("lastValue"));
+		assertEquals(PK.fromLong(3), chunks.get(2).getQueryParameters().get("lastPk"));
+		assertFalse(chunks.get(1).getQueryParameters().containsKey("lastPk"));
+		assertEquals(2, chunks.get(2).getCount());
+	}
+
+	@Test
+	public void shouldReadTheValuesBeforeTheNullsInDescendingOrder() throws IOException
+	{
+		givenOrderBy(new CollateSearchOrderBy(new GenericSearchField("Product", "name"), false, "Latin1_General_CI_AI"));
+		givenChunks(Arrays.asList(row(2, "b", "P2", "b"), row(1, "a", "P1", "a")), Collections.emptyList(),
+				Collections.singletonList(row(3, null, "P3", null)));
+
+		assertEquals(3, service.exportCsv(searchQueryData, ATTRIBUTES, new ByteArrayOutputStream()));
+
+		final List<FlexibleSearchQuery> chunks = capturedChunks(3);
+		assertTrue(chunks.get(1).getQuery().contains("{e.name} COLLATE Latin1_General_CI_AI < ?lastValue"));
+		assertEquals("a", chunks.get(1).getQueryParameters().get("lastValue"));
+		assertTrue(chunks.get(2).getQuery().contains("{e.name} IS NULL"));
+	}
+
+	@Test
+	public void shouldFallBackToPkOrderWithoutSortAttribute() throws IOException
+	{
+		givenOrderBy(new GenericSearchOrderBy(new GenericSearchField("Product", "pk"), true));
+		givenChunks(Arrays.asList(pkRow(1, "P1", "a"), pkRow(2, "P2", "b")), Collections.emptyList());
+
+		assertEquals(2, service.exportCsv(searchQueryData, ATTRIBUTES, new ByteArrayOutputStream()));
+
+		final List<FlexibleSearchQuery> chunks = capturedChunks(2);
+		assertEquals("SELECT {e.pk}, {e.code}, {e.name} FROM {Product AS e} WHERE {e.pk} IN ({{ " + UNSORTED
+				+ " }}) AND {e.pk} > ?lastPk ORDER BY {e.pk} ASC", chunks.get(1).getQuery());
+		assertEquals(PK.fromLong(2), chunks.get(1).getQueryParameters().get("lastPk"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectRelations() throws IOException
+	{
+		when(typeService.getAttributeDescriptor("Product", "supercategories")).thenReturn(mock(RelationDescriptorModel.class));
+		try
+		{
+			service.exportCsv(searchQueryData, Collections.singletonList("supercategories"), new ByteArrayOutputStream());
+		}
+		finally
+		{
+			verify(flexibleSearchService, never()).search(any(FlexibleSearchQuery.class));
+		}
+	}
+
+	private void givenAttribute(final String qualifier, final boolean localized)
+	{
+		final AtomicTypeModel type = mock(AtomicTypeModel.class);
+		when(type.getJavaClass()).thenReturn((Class) String.class);
+		final AttributeDescriptorModel descriptor = mock(AttributeDescriptorModel.class);
+		when(descriptor.getLocalized()).thenReturn(Boolean.valueOf(localized));
+		when(descriptor.getAttributeType()).thenReturn(type);
+		when(typeService.getAttributeDescriptor("Product", qualifier)).thenReturn(descriptor);
+	}
+
+	private void givenOrderBy(final GenericSearchOrderBy orderBy)
+	{
+		when(query.getOrderByList()).thenReturn(Collections.singletonList(orderBy));
+	}
+
+	private void givenChunks(final List<Object> first, final List<Object>... next)
+	{
+		final SearchResultImpl[] results = new SearchResultImpl[next.length];
+		for (int i = 0; i < next.length; i++)
+		{
+			results[i] = result(next[i]);
+		}
+		when(flexibleSearchService.search(any(FlexibleSearchQuery.class))).thenReturn(result(first), results);
+	}
+
+	private List<FlexibleSearchQuery> capturedChunks(final int count)
+	{
+		final ArgumentCaptor<FlexibleSearchQuery> captor = ArgumentCaptor.forClass(FlexibleSearchQuery.class);
+		verify(flexibleSearchService, times(count)).search(captor.capture());
+		return captor.getAllValues();
+	}
+
+	private static SearchResultImpl<Object> result(final List<Object> rows)
+	{
+		return new SearchResultImpl<>(new ArrayList<>(rows), rows.size(), -1, 0);
+	}
+
+	private static Object row(final long pk, final Object sortValue, final String code, final String name)
+	{
+		return Arrays.asList(PK.fromLong(pk), sortValue, code, name);
+	}
+
+	private static Object pkRow(final long pk, final String code, final String name)
+	{
+		return Arrays.asList(PK.fromLong(pk), code, name);
+	}
+}
@@ -10,6 +10,57 @@ public final class CollatesortConstants extends GeneratedCollatesortConstants
 {
 	public static final String EXTENSIONNAME = "collatesort";
 
+	/** Prefix of the properties mapping a language isocode to a SQL Server collation, e.g. collate.zh. */
+	public static final String COLLATE_PREFIX = "collate.";
+
+	public static final String ENUM_SORT_IN_MEMORY = "collatesort.enum.sort.inmemory";
+	public static final String ENUM_SORT_MAX_VALUES = "collatesort.enum.sort.maxvalues";
+	public static final String ENUM_SORT_TTL = "collatesort.enum.sort.ttl";
+
+
+	public static final String IN_MEMORY_SORT_LIMIT = "collatesort.inmemory.sort.limit";
+
+	/** Prefix of the properties listing the secondary sort keys of a type, e.g. collatesort.sort.secondary.Product. */
+	public static final String SORT_SECONDARY_PREFIX = "collatesort.sort.secondary.";
+
+	public static final String SORT_METADATA_CACHE_MAX_SIZE = "collatesort.sortmetadata.cache.maxsize";
+
+	public static final String RESULT_CACHE_ENABLED = "collatesort.result.cache.enabled";
+	public static final String RESULT_CACHE_TTL = "collatesort.result.cache.ttl";
+	public static final String RESULT_CACHE_MAX_SIZE = "collatesort.result.cache.maxsize";
+
+	public static final String INSTRUMENTATION_ENABLED = "collatesort.instrumentation.enabled";
+	public static final String SLOW_QUERY_THRESHOLD = "collatesort.slowquery.threshold";
+	public static final String STATISTICS_MAX_KEYS = "collatesort.statistics.maxkeys";
+
+	public static final String PARALLEL_CONDITIONS_ENABLED = "collatesort.parallel.conditions.enabled";
+	public static final String PARALLEL_CONDITIONS_THRESHOLD = "collatesort.parallel.conditions.threshold";
+	public static final String PARALLEL_CONDITIONS_TIMEOUT = "collatesort.parallel.conditions.timeout";
+
+	public static final String INDEX_ENABLED = "collatesort.index.enabled";
+	public static final String INDEX_ATTRIBUTES = "collatesort.index.attributes";
+	public static final String INDEX_LANGUAGES = "collatesort.index.languages";
+	public static final String INDEX_DIR = "collatesort.index.dir";
+	public static final String INDEX_MAX_AGE = "collatesort.index.maxage";
+	public static final String INDEX_BATCH_SIZE = "collatesort.index.batchsize";
+	public static final String INDEX_SHUTDOWN_TIMEOUT = "collatesort.index.shutdowntimeout";
+
+	public static final String COUNT_SPLIT_ENABLED = "collatesort.count.split.enabled";
+	public static final String COUNT_MODE = "collatesort.count.mode";
+	public static final String COUNT_ESTIMATE_THRESHOLD = "collatesort.count.estimate.threshold";
+	public static final String COUNT_ESTIMATE_TTL = "collatesort.count.estimate.ttl";
+
+	public static final String WARMUP_ENABLED = "collatesort.warmup.enabled";
+	public static final String WARMUP_TYPES = "collatesort.warmup.types";
+	public static final String WARMUP_LANGUAGES = "collatesort.warmup.languages";
+	public static final String WARMUP_DELAY = "collatesort.warmup.delay";
+
+	public static final String EXPORT_CHUNK_SIZE = "collatesort.export.chunksize";
+
+	public static final String STATEMENT_TRACKING_ENABLED = "collatesort.statement.tracking.enabled";
+	public static final String STATEMENT_TRACKING_SAMPLE_RATE = "collatesort.statement.tracking.samplerate";
+	public static final String STATEMENT_REGISTRY_MAX_SIZE = "collatesort.statement.registry.maxsize";
+
 	private CollatesortConstants()
 	{
 		//empty to avoid instantiating this constant class
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import java.text.Collator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+
+
+/**
+ * Maps the SQL Server collation names configured with <code>collate.&lt;isocode&gt;</code> to {@link Collator}s, so
+ * that values sorted in memory follow the same order as values sorted by the database.
+ */
+public final class CollateCollators
+{
+	private static final ConcurrentMap<String, Collator> PROTOTYPES = new ConcurrentHashMap<>();
+
+	private CollateCollators()
+	{
+		//empty to avoid instantiating this utility class
+	}
+
+	/**
+	 * Returns a collator for the given collation. {@link Collator} instances are not thread safe, therefore every call
+	 * returns a fresh clone of a cached prototype.
+	 *
+	 * @param collateType
+	 *           the SQL Server collation name, e.g. <code>Chinese_PRC_CI_AI</code>
+	 * @param fallbackLocale
+	 *           locale used when the collation name does not imply one, usually the locale of the current language
+	 * @return collator matching the collation
+	 */
+	public static Collator getCollator(final String collateType, final Locale fallbackLocale)
+	{
+		final String key = StringUtils.defaultString(collateType) + '|' + fallbackLocale;
+		return (Collator) PROTOTYPES.computeIfAbsent(key, k -> createCollator(collateType, fallbackLocale)).clone();
+	}
+
+	/**
+	 * Returns the collation key of the value as lowercase hex string. Hex strings of keys of the same collator compare
+	 * like the keys themselves, so they can be sorted by engines that know nothing about collations, e.g. as string
+	 * field of a Solr index.
+	 *
+	 * @return the hex key, <code>null</code> for a <code>null</code> value
+	 */
+	public static String sortKey(final Collator collator, final String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		final byte[] key = collator.getCollationKey(value).toByteArray();
+		final char[] hex = new char[key.length * 2];
+		for (int i = 0; i < key.length; i++)
+		{
+			hex[i * 2] = Character.forDigit((key[i] >> 4) & 0xf, 16);
+			hex[i * 2 + 1] = Character.forDigit(key[i] & 0xf, 16);
+		}
+		return new String(hex);
+	}
+
+	private static Collator createCollator(final String collateType, final Locale fallbackLocale)
+	{
+		final Collator collator = Collator.getInstance(localeOf(collateType, fallbackLocale));
+		collator.setStrength(strengthOf(collateType));
+		return collator;
+	}
+
+	static Locale localeOf(final String collateType, final Locale fallbackLocale)
+	{
+		final String name = StringUtils.upperCase(StringUtils.defaultString(collateType));
+		if (name.startsWith("CHINESE_PRC"))
+		{
+			return Locale.SIMPLIFIED_CHINESE;
+		}
+		if (name.startsWith("CHINESE_TAIWAN") || name.startsWith("CHINESE_HONG_KONG"))
+		{
+			return Locale.TRADITIONAL_CHINESE;
+		}
+		if (name.startsWith("JAPANESE"))
+		{
+			return Locale.JAPANESE;
+		}
+		if (name.startsWith("KOREAN"))
+		{
+			return Locale.KOREAN;
+		}
+		return fallbackLocale == null ? Locale.ROOT : fallbackLocale;
+	}
+
+	/**
+	 * @return <code>true</code> if the collation ignores accents, which is the default of SQL Server collations unless
+	 *         they are accent sensitive (<code>_AS</code>) or binary
+	 */
+	public static boolean isAccentInsensitive(final String collateType)
+	{
+		final String name = StringUtils.upperCase(StringUtils.defaultString(collateType));
+		return !name.contains("_AS") && !name.contains("_BIN");
+	}
+
+	static int strengthOf(final String collateType)
+	{
+		final String name = StringUtils.upperCase(StringUtils.defaultString(collateType));
+		if (name.contains("_BIN"))
+		{
+			return Collator.IDENTICAL;
+		}
+		if (name.contains("_CS"))
+		{
+			return Collator.TERTIARY;
+		}
+		if (name.contains("_AS"))
+		{
+			return Collator.SECONDARY;
+		}
+		return Collator.PRIMARY;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.util.Config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * Counts the matches of collated searches separately from their sorted page. The count runs the page query rendered
+ * without its order by, see {@link CollateQuery#toUnsortedFlexibleSearch(Map)}, so the database neither sorts nor
+ * collates the matches just to count them.
+ * <p>
+ * With <code>collatesort.count.mode=estimated</code>, searches without conditions on types with at least
+ * <code>collatesort.count.estimate.threshold</code> items report a per type count cached for
+ * <code>collatesort.count.estimate.ttl</code> seconds instead. Type counts run under the search restrictions of the
+ * current user, so they are cached per user, and searches of users with active restrictions on the type are always
+ * counted exactly, see {@link CollateSearchIndexService#hasActiveRestrictions(String)}.
+ */
+public class CollateCountService
+{
+	public static final String MODE_ESTIMATED = "estimated";
+
+	private static final String SELECT_COUNT = "SELECT COUNT(*) FROM ({{ %s }}) x";
+
+	private static final String SELECT_TYPE_COUNT = "SELECT COUNT({pk}) FROM {%s%s}";
+
+	private final ConcurrentMap<String, TypeCount> typeCounts = new ConcurrentHashMap<>();
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private UserService userService;
+
+	private CollateSearchIndexService searchIndexService;
+
+	/**
+	 * @return <code>true</code> if the total of the query is counted by this service
+	 */
+	public boolean isApplicable(final CollateQuery query)
+	{
+		return query.isSeparateCount() && (query.hasCollateSearchOrderBy() || query.hasEnumSortOrderBy());
+	}
+
+	public int count(final CollateQuery query)
+	{
+		if (isEstimated() && !query.hasConditions() && !searchIndexService.hasActiveRestrictions(query.getSearchTypeCode()))
+		{
+			final int estimate = getTypeCount(query.getSearchTypeCode(), !query.isTypeExclusive());
+			if (estimate >= getEstimateThreshold())
+			{
+				return estimate;
+			}
+		}
+
+		return countUnsorted(query);
+	}
+
+	/**
+	 * Counts the matches of the query itself, rendered without its order by.
+	 */
+	public int countUnsorted(final CollateQuery query)
+	{
+		final Map<String, Object> values = new HashMap<>();
+		return execute(new FlexibleSearchQuery(String.format(SELECT_COUNT, query.toUnsortedFlexibleSearch(values)), values));
+	}
+
+	/**
+	 * @return the number of items of the type the current user can see, cached per user for
+	 *         <code>collatesort.count.estimate.ttl</code> seconds
+	 */
+	public int getTypeCount(final String typeCode, final boolean includeSubtypes)
+	{
+		final String key = userService.getCurrentUser().getPk() + "|" + typeCode + '|' + includeSubtypes;
+		final TypeCount cached = typeCounts.get(key);
+		if (cached != null && !cached.isExpired())
+		{
+			return cached.count;
+		}
+		final int count = execute(
+				new FlexibleSearchQuery(String.format(SELECT_TYPE_COUNT, typeCode, includeSubtypes ? "" : "!")));
+		typeCounts.put(key, new TypeCount(count, System.currentTimeMillis() + getTimeToLive()));
+		return count;
+	}
+
+	protected boolean isEstimated()
+	{
+		return MODE_ESTIMATED.equals(Config.getParameter(CollatesortConstants.COUNT_MODE));
+	}
+
+	protected int getEstimateThreshold()
+	{
+		return Config.getInt(CollatesortConstants.COUNT_ESTIMATE_THRESHOLD, 100000);
+	}
+
+	protected long getTimeToLive()
+	{
+		return TimeUnit.SECONDS.toMillis(Config.getLong(CollatesortConstants.COUNT_ESTIMATE_TTL, 300));
+	}
+
+	private int execute(final FlexibleSearchQuery query)
+	{
+		query.setResultClassList(Collections.singletonList(Integer.class));
+		final List<Integer> result = flexibleSearchService.<Integer> search(query).getResult();
+		return result.isEmpty() || result.get(0) == null ? 0 : result.get(0).intValue();
+	}
+
+	public void invalidate()
+	{
+		typeCounts.clear();
+	}
+
+	@Required
+	public void setFlexibleSearchService(final FlexibleSearchService flexibleSearchService)
+	{
+		this.flexibleSearchService = flexibleSearchService;
+	}
+
+	@Required
+	public void setUserService(final UserService userService)
+	{
+		this.userService = userService;
+	}
+
+	@Required
+	public void setSearchIndexService(final CollateSearchIndexService searchIndexService)
+	{
+		this.searchIndexService = searchIndexService;
+	}
+
+	private static final class TypeCount
+	{
+		private final int count;
+		private final long expiresAt;
+
+		private TypeCount(final int count, final long expiresAt)
+		{
+			this.count = count;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired()
+		{
+			return System.currentTimeMillis() > expiresAt;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.PK;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Immutable ordinal table of the values of one enumeration type in one language, ordered by their localized names.
+ */
+public final class CollateEnumRanking
+{
+	private final Map<PK, Integer> ranks;
+
+	private final List<PK> values;
+
+	/**
+	 * @param sortedValues
+	 *           enumeration value pks already sorted by their localized name
+	 */
+	public CollateEnumRanking(final List<PK> sortedValues)
+	{
+		final Map<PK, Integer> tmp = new LinkedHashMap<>(sortedValues.size() * 2);
+		for (final PK pk : sortedValues)
+		{
+			tmp.putIfAbsent(pk, Integer.valueOf(tmp.size()));
+		}
+		this.ranks = Collections.unmodifiableMap(tmp);
+		this.values = Collections.unmodifiableList(new ArrayList<>(tmp.keySet()));
+	}
+
+	/**
+	 * @return the rank of the given enumeration value, values unknown to this table are ranked last
+	 */
+	public int getRank(final PK pk)
+	{
+		final Integer rank = ranks.get(pk);
+		return rank == null ? ranks.size() : rank.intValue();
+	}
+
+	public int size()
+	{
+		return ranks.size();
+	}
+
+	/**
+	 * @return the enumeration value pks in rank order
+	 */
+	public List<PK> getValues()
+	{
+		return values;
+	}
+}
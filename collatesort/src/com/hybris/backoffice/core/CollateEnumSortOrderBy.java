@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.GenericSearchField;
+import de.hybris.platform.core.GenericSearchOrderBy;
+import de.hybris.platform.core.PK;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.logging.log4j.util.Chars;
+
+
+/**
+ * Orders by an enumeration attribute using a precomputed {@link CollateEnumRanking}, which renders as a
+ * <code>CASE</code> expression and therefore needs no join to the enumeration value table.
+ * <p>
+ * The value pks are bound as parameters, so the statement text only depends on the attribute and the number of values
+ * and is shared by all languages. The expression has no <code>ELSE</code>: items without a value get <code>NULL</code>
+ * and keep the position the database gives to <code>NULL</code>s, as with the outer join to the enumeration values.
+ */
+public class CollateEnumSortOrderBy extends GenericSearchOrderBy
+{
+	private static final String CASE = "CASE";
+	private static final String WHEN = " WHEN ?";
+	private static final String THEN = " THEN ";
+	private static final String END = " END";
+
+	private static final String PARAMETER_PREFIX = "collateEnumRank_";
+
+	private static final String ASC = "ASC";
+	private static final String DESC = "DESC";
+
+	private final CollateEnumRanking ranking;
+
+	public CollateEnumSortOrderBy(final GenericSearchField field, final boolean ascendingOrder, final CollateEnumRanking ranking)
+	{
+		super(field, ascendingOrder);
+		this.ranking = ranking;
+	}
+
+	@Override
+	public void toFlexibleSearch(final StringBuilder queryBuffer, final Map<String, String> typeIndexMap,
+	                             final Map<String, Object> valueMap)
+	{
+		queryBuffer.append(CASE);
+		queryBuffer.append(Chars.SPACE);
+		getField().toFlexibleSearch(queryBuffer, typeIndexMap, valueMap);
+		final String prefix = PARAMETER_PREFIX + getField().getQualifier() + '_';
+		final List<PK> values = ranking.getValues();
+		for (int rank = 0; rank < values.size(); rank++)
+		{
+			final String parameter = prefix + rank;
+			valueMap.put(parameter, values.get(rank));
+			queryBuffer.append(WHEN).append(parameter).append(THEN).append(rank);
+		}
+		queryBuffer.append(END);
+		queryBuffer.append(Chars.SPACE);
+		queryBuffer.append(isAscending() ? ASC : DESC);
+	}
+
+	public CollateEnumRanking getRanking()
+	{
+		return ranking;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CESOB(" + getField() + "," + isAscending() + "," + ranking.size() + ")";
+	}
+
+	@Override
+	public boolean equals(final Object o)
+	{
+		if (this == o) return true;
+		if (!(o instanceof CollateEnumSortOrderBy)) return false;
+		if (!super.equals(o)) return false;
+		final CollateEnumSortOrderBy that = (CollateEnumSortOrderBy) o;
+		return Objects.equals(ranking, that.ranking);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(super.hashCode(), ranking);
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.core.model.enumeration.EnumerationValueModel;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+import de.hybris.platform.util.Config;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * Keeps one {@link CollateEnumRanking} per enumeration type and language. Enumeration value sets are small and rarely
+ * change, so ordering them once in memory is cheaper than joining the enumeration value table on every sorted query.
+ * The whole cache is dropped as soon as any enumeration value is saved or removed on this node. Saves on other nodes
+ * are not seen here, so every ranking also expires after <code>collatesort.enum.sort.ttl</code> seconds.
+ */
+public class CollateEnumSortOrderCache implements AfterSaveListener
+{
+	private static final Logger LOG = Logger.getLogger(CollateEnumSortOrderCache.class);
+
+	private static final String SELECT_ENUM_VALUES = "SELECT {" + EnumerationValueModel.PK + "} FROM {%s}";
+
+	private final ConcurrentMap<String, CachedRanking> rankings = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private CommonI18NService commonI18NService;
+
+	/**
+	 * @param enumTypeCode
+	 *           code of the enumeration type
+	 * @param language
+	 *           language the localized names are taken from
+	 * @return ranking of the enumeration values or empty if the type has too many values to be ranked in memory
+	 */
+	public Optional<CollateEnumRanking> getRanking(final String enumTypeCode, final LanguageModel language)
+	{
+		final String key = enumTypeCode + '|' + language.getIsocode();
+		final CachedRanking cached = rankings.get(key);
+		if (cached != null && !cached.isExpired())
+		{
+			hits.incrementAndGet();
+			return cached.ranking;
+		}
+		misses.incrementAndGet();
+		// ranked outside of the map, a query inside computeIfAbsent would block other keys of the same bin
+		final Optional<CollateEnumRanking> ranking = createRanking(enumTypeCode, language);
+		rankings.put(key, new CachedRanking(ranking, System.currentTimeMillis() + getTimeToLive()));
+		return ranking;
+	}
+
+	protected Optional<CollateEnumRanking> createRanking(final String enumTypeCode, final LanguageModel language)
+	{
+		final FlexibleSearchQuery query = new FlexibleSearchQuery(String.format(SELECT_ENUM_VALUES, enumTypeCode));
+		final int maxValues = Config.getInt(CollatesortConstants.ENUM_SORT_MAX_VALUES, 100);
+		query.setCount(maxValues + 1);
+		final List<EnumerationValueModel> values = flexibleSearchService.<EnumerationValueModel> search(query).getResult();
+		if (values.size() > maxValues)
+		{
+			LOG.debug(String.format("Enumeration %s has more than %d values, it is sorted by the database", enumTypeCode,
+					Integer.valueOf(maxValues)));
+			return Optional.empty();
+		}
+
+		final Locale locale = commonI18NService.getLocaleForLanguage(language);
+		final Collator collator = CollateCollators
+				.getCollator(Config.getParameter(CollatesortConstants.COLLATE_PREFIX + language.getIsocode()), locale);
+
+		final List<RankedValue> ranked = new ArrayList<>(values.size());
+		for (final EnumerationValueModel value : values)
+		{
+			final String name = value.getName(locale);
+			ranked.add(new RankedValue(value.getPk(), name == null ? null : collator.getCollationKey(name), value.getCode()));
+		}
+		ranked.sort(RankedValue.ORDER);
+
+		final List<PK> sorted = new ArrayList<>(ranked.size());
+		ranked.forEach(rankedValue -> sorted.add(rankedValue.pk));
+		return Optional.of(new CollateEnumRanking(sorted));
+	}
+
+	@Override
+	public void afterSave(final Collection<AfterSaveEvent> events)
+	{
+		if (!rankings.isEmpty() && events.stream().anyMatch(this::isEnumerationValueEvent))
+		{
+			invalidate();
+		}
+	}
+
+	private boolean isEnumerationValueEvent(final AfterSaveEvent event)
+	{
+		return event.getPk() != null && event.getPk().getTypeCode() == Constants.TC.EnumerationValue;
+	}
+
+	protected long getTimeToLive()
+	{
+		return TimeUnit.SECONDS.toMillis(Config.getLong(CollatesortConstants.ENUM_SORT_TTL, 300));
+	}
+
+	public void invalidate()
+	{
+		rankings.clear();
+	}
+
+	public int size()
+	{
+		return rankings.size();
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	@Required
+	public void setFlexibleSearchService(final FlexibleSearchService flexibleSearchService)
+	{
+		this.flexibleSearchService = flexibleSearchService;
+	}
+
+	@Required
+	public void setCommonI18NService(final CommonI18NService commonI18NService)
+	{
+		this.commonI18NService = commonI18NService;
+	}
+
+	private static final class CachedRanking
+	{
+		private final Optional<CollateEnumRanking> ranking;
+		private final long expiresAt;
+
+		private CachedRanking(final Optional<CollateEnumRanking> ranking, final long expiresAt)
+		{
+			this.ranking = ranking;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired()
+		{
+			return System.currentTimeMillis() > expiresAt;
+		}
+	}
+
+	/**
+	 * Values without a name come first, like <code>NULL</code>s do in an ascending SQL Server sort.
+	 */
+	private static final class RankedValue
+	{
+		private static final Comparator<RankedValue> ORDER = Comparator
+				.comparing((RankedValue value) -> value.name, Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparing(value -> StringUtils.defaultString(value.code));
+
+		private final PK pk;
+		private final CollationKey name;
+		private final String code;
+
+		private RankedValue(final PK pk, final CollationKey name, final String code)
+		{
+			this.pk = pk;
+			this.name = name;
+			this.code = code;
+		}
+	}
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.GenericQuery;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.ItemModel;
+import de.hybris.platform.genericsearch.GenericSearchQuery;
+import de.hybris.platform.genericsearch.GenericSearchService;
+import de.hybris.platform.servicelayer.exceptions.ModelLoadingException;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.search.SearchResult;
+import de.hybris.platform.servicelayer.search.impl.SearchResultImpl;
+import de.hybris.platform.util.Config;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * {@link GenericSearchService} used by the collatesort field search strategy. Queries carrying a
+ * {@link CollateInMemorySort} are sorted in memory when their result is small enough, all other queries are passed to
+ * the platform service unchanged. Pages of queries carrying a result cache key are kept in the
+ * {@link CollateSearchResultCache}, queries carrying a {@link CollateIndexedSearch} are answered from the
+ * {@link CollateSearchIndexService} once its indexes are ready. Executions of queries carrying a
+ * {@link CollateSearchTrace} are reported to the {@link CollateSearchMonitor}.
+ */
+public class CollateGenericSearchService implements GenericSearchService
+{
+	private static final Logger LOG = Logger.getLogger(CollateGenericSearchService.class);
+
+	private static final String SELECT_PAGE = "SELECT {pk} FROM {%s} WHERE {pk} IN (?pks)";
+
+	/** <code>NULL</code>s first, like an ascending SQL Server sort */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static final Comparator<Comparable> KEY_ORDER = Comparator.nullsFirst((a, b) -> a.compareTo(b));
+
+	private static final Comparator<SortEntry> PK_ORDER = Comparator.comparing(entry -> entry.item.getPk());
+
+	private GenericSearchService genericSearchService;
+
+	private ModelService modelService;
+
+	private CollateStatementRegistry statementRegistry;
+
+	private CollateSearchResultCache resultCache;
+
+	private CollateSearchMonitor searchMonitor;
+
+	private CollateSearchIndexService searchIndexService;
+
+	private CollateCountService countService;
+
+	private FlexibleSearchService flexibleSearchService;
+
+	@Override
+	public <T> SearchResult<T> search(final GenericQuery query)
+	{
+		return search(new GenericSearchQuery(query));
+	}
+
+	@Override
+	public <T> SearchResult<T> search(final GenericSearchQuery searchQuery)
+	{
+		final GenericQuery query = searchQuery.getQuery();
+		if (searchMonitor == null || !(query instanceof CollateQuery) || ((CollateQuery) query).getTrace() == null)
+		{
+			return searchUntraced(searchQuery);
+		}
+
+		final CollateQuery collateQuery = (CollateQuery) query;
+		final long start = System.nanoTime();
+		final SearchResult<T> result = searchUntraced(searchQuery);
+		final long executionNanos = System.nanoTime() - start;
+
+		final CollateInMemorySort inMemorySort = collateQuery.getInMemorySort();
+		final boolean inMemorySorted = inMemorySort != null && !inMemorySort.isExceeded();
+		searchMonitor.record(collateQuery.getTrace().executed(executionNanos, result.getResult().size(), result.getTotalCount(),
+				collateQuery.isPolyglotBypassed(), inMemorySorted, result instanceof CachedSearchResult), query);
+		return result;
+	}
+
+	protected <T> SearchResult<T> searchUntraced(final GenericSearchQuery searchQuery)
+	{
+		final GenericQuery query = searchQuery.getQuery();
+		if (query instanceof CollateQuery && ((CollateQuery) query).getResultCacheKey() != null && resultCache != null
+				&& resultCache.isEnabled())
+		{
+			return searchCached(searchQuery, (CollateQuery) query);
+		}
+		return searchUncached(searchQuery);
+	}
+
+	protected <T> SearchResult<T> searchUncached(final GenericSearchQuery searchQuery)
+	{
+		final GenericQuery query = searchQuery.getQuery();
+		if (query instanceof CollateQuery && ((CollateQuery) query).getIndexedSearch() != null && searchIndexService != null)
+		{
+			final SearchResult<T> result = searchIndexed(searchQuery, ((CollateQuery) query).getIndexedSearch());
+			if (result != null)
+			{
+				return result;
+			}
+		}
+		if (query instanceof CollateQuery && ((CollateQuery) query).getInMemorySort() != null)
+		{
+			return searchInMemory(searchQuery, (CollateQuery) query);
+		}
+		return execute(searchQuery);
+	}
+
+	/**
+	 * Serves the page from {@link CollateSearchResultCache} if possible, otherwise searches and caches the pks of the
+	 * page.
+	 */
+	protected <T> SearchResult<T> searchCached(final GenericSearchQuery searchQuery, final CollateQuery query)
+	{
+		final String pageKey = CollateSearchResultCache.pageKey(query.getResultCacheKey(), searchQuery.getStart(),
+				searchQuery.getCount(), searchQuery.isNeedTotal());
+		final CollateSearchResultCache.CachedPage page = resultCache.get(pageKey);
+		if (page != null)
+		{
+			try
+			{
+				final List<T> items = new ArrayList<>(page.getPks().size());
+				page.getPks().forEach(pk -> items.add(modelService.get(pk)));
+				return new CachedSearchResult<>(items, page.getTotalCount(), searchQuery.getCount(), searchQuery.getStart());
+			}
+			catch (final ModelLoadingException e)
+			{
+				LOG.debug("Cached search result refers to a removed item, searching again", e);
+			}
+		}
+
+		final SearchResult<T> result = searchUncached(searchQuery);
+		final List<PK> pks = new ArrayList<>(result.getResult().size());
+		for (final T item : result.getResult())
+		{
+			if (!(item instanceof ItemModel))
+			{
+				return result;
+			}
+			pks.add(((ItemModel) item).getPk());
+		}
+		resultCache.put(pageKey, query.getSearchTypeCode(), !query.isTypeExclusive(), pks, result.getTotalCount());
+		return result;
+	}
+
+	/**
+	 * Takes the matches of the search from the {@link CollateSearchIndexService} and loads only the requested page from
+	 * the database. The indexes ignore search restrictions, so searches of users with active restrictions on the type
+	 * are left to the database, which keeps total and pages consistent with what the user may see.
+	 *
+	 * @return the page, or <code>null</code> if the indexes are not ready or restrictions apply and the database has to
+	 *         run the query
+	 */
+	protected <T> SearchResult<T> searchIndexed(final GenericSearchQuery searchQuery, final CollateIndexedSearch indexedSearch)
+	{
+		if (searchIndexService.hasActiveRestrictions(indexedSearch.getTypeCode()))
+		{
+			return null;
+		}
+
+		final List<PK> matches;
+		synchronized (indexedSearch)
+		{
+			if (indexedSearch.getResult() == null)
+			{
+				searchIndexService.search(indexedSearch).ifPresent(indexedSearch::setResult);
+			}
+			matches = indexedSearch.getResult();
+		}
+		if (matches == null)
+		{
+			return null;
+		}
+
+		final int start = Math.min(Math.max(searchQuery.getStart(), 0), matches.size());
+		final int end = searchQuery.getCount() < 0 ? matches.size() : Math.min(start + searchQuery.getCount(), matches.size());
+		final List<PK> page = matches.subList(start, end);
+		final List<T> items = new ArrayList<>(page.size());
+		if (!page.isEmpty())
+		{
+			final FlexibleSearchQuery pageQuery = new FlexibleSearchQuery(
+					String.format(SELECT_PAGE, indexedSearch.getTypeCode()), Collections.singletonMap("pks", page));
+			final Map<PK, T> loaded = new HashMap<>();
+			flexibleSearchService.<T> search(pageQuery).getResult()
+					.forEach(item -> loaded.put(((ItemModel) item).getPk(), item));
+			page.stream().map(loaded::get).filter(Objects::nonNull).forEach(items::add);
+		}
+		return new SearchResultImpl<>(items, matches.size(), searchQuery.getCount(), searchQuery.getStart());
+	}
+
+	/**
+	 * Runs the query on the platform service and records its statement text.
+	 */
+	protected <T> SearchResult<T> execute(final GenericSearchQuery searchQuery)
+	{
+		final GenericQuery query = searchQuery.getQuery();
+		if (searchQuery.isNeedTotal() && query instanceof CollateQuery && (getMatchCount((CollateQuery) query) >= 0
+				|| countService != null && countService.isApplicable((CollateQuery) query)))
+		{
+			return executeWithSeparateCount(searchQuery, (CollateQuery) query);
+		}
+		return executeQuery(searchQuery);
+	}
+
+	/**
+	 * Runs the sorted query for the page only and counts the matches with the {@link CollateCountService}, unless they
+	 * were already counted for the in-memory sort.
+	 */
+	protected <T> SearchResult<T> executeWithSeparateCount(final GenericSearchQuery searchQuery, final CollateQuery query)
+	{
+		final GenericSearchQuery pageQuery = new GenericSearchQuery(query);
+		pageQuery.setStart(searchQuery.getStart());
+		pageQuery.setCount(searchQuery.getCount());
+		pageQuery.setNeedTotal(false);
+		final SearchResult<T> page = executeQuery(pageQuery);
+		final int matchCount = getMatchCount(query);
+		return new SearchResultImpl<>(page.getResult(), matchCount >= 0 ? matchCount : countService.count(query),
+				searchQuery.getCount(), searchQuery.getStart());
+	}
+
+	private static int getMatchCount(final CollateQuery query)
+	{
+		return query.getInMemorySort() == null ? -1 : query.getInMemorySort().getMatchCount();
+	}
+
+	protected <T> SearchResult<T> executeQuery(final GenericSearchQuery searchQuery)
+	{
+		if (statementRegistry != null && searchQuery.getQuery() instanceof CollateQuery && isStatementSampled())
+		{
+			statementRegistry.register(searchQuery.getQuery().toFlexibleSearch(new HashMap<>()));
+		}
+		return genericSearchService.search(searchQuery);
+	}
+
+	/**
+	 * The platform renders the statement again when it runs the query, so tracking renders it twice. Only one in
+	 * <code>collatesort.statement.tracking.samplerate</code> executions is registered to keep that off the hot path.
+	 */
+	protected boolean isStatementSampled()
+	{
+		if (!Config.getBoolean(CollatesortConstants.STATEMENT_TRACKING_ENABLED, false))
+		{
+			return false;
+		}
+		final int sampleRate = Config.getInt(CollatesortConstants.STATEMENT_TRACKING_SAMPLE_RATE, 100);
+		return sampleRate <= 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected <T> SearchResult<T> searchInMemory(final GenericSearchQuery searchQuery, final CollateQuery query)
+	{
+		final CollateInMemorySort inMemorySort = query.getInMemorySort();
+		final List<T> sorted;
+		synchronized (inMemorySort)
+		{
+			if (inMemorySort.getSortedResult() == null && !inMemorySort.isExceeded())
+			{
+				sortOrFallback(query, inMemorySort);
+			}
+			if (inMemorySort.isExceeded())
+			{
+				return execute(searchQuery);
+			}
+			sorted = (List<T>) inMemorySort.getSortedResult();
+		}
+
+		final int start = Math.min(Math.max(searchQuery.getStart(), 0), sorted.size());
+		final int end = searchQuery.getCount() < 0 ? sorted.size() : Math.min(start + searchQuery.getCount(), sorted.size());
+		return new SearchResultImpl<>(new ArrayList<>(sorted.subList(start, end)), sorted.size(), searchQuery.getCount(),
+				searchQuery.getStart());
+	}
+
+	/**
+	 * Decides about the in-memory sort without fetching rows of large results. Queries on types with at most
+	 * {@link CollateInMemorySort#getLimit()} items qualify by the cached type count of the {@link CollateCountService};
+	 * on larger types only queries with conditions whose unsorted count stays within the limit qualify. Qualifying
+	 * queries are fetched once without their order by and sorted in memory, all others are sorted by the database.
+	 */
+	protected void sortOrFallback(final CollateQuery query, final CollateInMemorySort inMemorySort)
+	{
+		final int limit = inMemorySort.getLimit();
+		if (countService == null || flexibleSearchService == null)
+		{
+			inMemorySort.setExceeded(true);
+			return;
+		}
+		if (countService.getTypeCount(query.getSearchTypeCode(), !query.isTypeExclusive()) > limit)
+		{
+			if (!query.hasConditions())
+			{
+				inMemorySort.setExceeded(true);
+				return;
+			}
+			inMemorySort.setMatchCount(countService.countUnsorted(query));
+			if (inMemorySort.getMatchCount() > limit)
+			{
+				inMemorySort.setExceeded(true);
+				return;
+			}
+		}
+
+		final Map<String, Object> values = new HashMap<>();
+		final FlexibleSearchQuery unsorted = new FlexibleSearchQuery(query.toUnsortedFlexibleSearch(values), values);
+		unsorted.setCount(limit + 1);
+		final List<ItemModel> items = flexibleSearchService.<ItemModel> search(unsorted).getResult();
+		if (items.size() > limit)
+		{
+			// the type grew since it was counted
+			inMemorySort.setExceeded(true);
+		}
+		else
+		{
+			inMemorySort.setSortedResult(sortInMemory(items, inMemorySort));
+		}
+	}
+
+	protected List<ItemModel> sortInMemory(final List<ItemModel> items, final CollateInMemorySort inMemorySort)
+	{
+		final List<CollateInMemorySort.Key> keys = inMemorySort.getKeys();
+		final Collator[] collators = new Collator[keys.size()];
+		Comparator<SortEntry> order = null;
+		for (int i = 0; i < keys.size(); i++)
+		{
+			final CollateInMemorySort.Key key = keys.get(i);
+			if (key.isLocalized())
+			{
+				collators[i] = CollateCollators.getCollator(key.getCollateType(), inMemorySort.getLocale());
+			}
+			final int index = i;
+			Comparator<SortEntry> keyOrder = Comparator.comparing(entry -> entry.keys[index], KEY_ORDER);
+			if (!key.isAscending())
+			{
+				keyOrder = keyOrder.reversed();
+			}
+			order = order == null ? keyOrder : order.thenComparing(keyOrder);
+		}
+
+		final List<SortEntry> entries = new ArrayList<>(items.size());
+		for (final ItemModel item : items)
+		{
+			final Comparable[] values = new Comparable[keys.size()];
+			for (int i = 0; i < keys.size(); i++)
+			{
+				values[i] = sortValue(item, keys.get(i), collators[i], inMemorySort.getLocale());
+			}
+			entries.add(new SortEntry(item, values));
+		}
+		entries.sort(order == null ? PK_ORDER : order.thenComparing(PK_ORDER));
+
+		final List<ItemModel> sorted = new ArrayList<>(entries.size());
+		entries.forEach(entry -> sorted.add(entry.item));
+		return Collections.unmodifiableList(sorted);
+	}
+
+	/**
+	 * @return collation key of a localized value, the value itself if it is comparable, otherwise its string form
+	 */
+	private Comparable sortValue(final ItemModel item, final CollateInMemorySort.Key key, final Collator collator,
+			final Locale locale)
+	{
+		final Object value = key.isLocalized() ? modelService.getAttributeValue(item, key.getQualifier(), locale)
+				: modelService.getAttributeValue(item, key.getQualifier());
+		if (value == null)
+		{
+			return null;
+		}
+		if (collator != null)
+		{
+			return collator.getCollationKey(value.toString());
+		}
+		return value instanceof Comparable ? (Comparable) value : value.toString();
+	}
+
+	@Required
+	public void setGenericSearchService(final GenericSearchService genericSearchService)
+	{
+		this.genericSearchService = genericSearchService;
+	}
+
+	@Required
+	public void setModelService(final ModelService modelService)
+	{
+		this.modelService = modelService;
+	}
+
+	public void setStatementRegistry(final CollateStatementRegistry statementRegistry)
+	{
+		this.statementRegistry = statementRegistry;
+	}
+
+	public void setResultCache(final CollateSearchResultCache resultCache)
+	{
+		this.resultCache = resultCache;
+	}
+
+	public void setSearchMonitor(final CollateSearchMonitor searchMonitor)
+	{
+		this.searchMonitor = searchMonitor;
+	}
+
+	public void setSearchIndexService(final CollateSearchIndexService searchIndexService)
+	{
+		this.searchIndexService = searchIndexService;
+	}
+
+	public void setCountService(final CollateCountService countService)
+	{
+		this.countService = countService;
+	}
+
+	public void setFlexibleSearchService(final FlexibleSearchService flexibleSearchService)
+	{
+		this.flexibleSearchService = flexibleSearchService;
+	}
+
+	private static final class CachedSearchResult<T> extends SearchResultImpl<T>
+	{
+		private CachedSearchResult(final List<T> result, final int totalCount, final int requestedCount, final int requestedStart)
+		{
+			super(result, totalCount, requestedCount, requestedStart);
+		}
+	}
+
+	private static final class SortEntry
+	{
+		private final ItemModel item;
+		private final Comparable[] keys;
+
+		private SortEntry(final ItemModel item, final Comparable[] keys)
+		{
+			this.item = item;
+			this.keys = keys;
+		}
+	}
+}
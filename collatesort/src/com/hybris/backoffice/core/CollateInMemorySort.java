@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Optional in-memory sort of a {@link CollateQuery} by a localized attribute, optionally followed by further keys. If
+ * the query matches at most {@link #getLimit()} items they are fetched without order by and sorted in memory, localized
+ * keys with a {@link java.text.Collator} and ties by pk, otherwise the database sorts them by the order bys of the
+ * query.
+ */
+public class CollateInMemorySort
+{
+	private final List<Key> keys;
+
+	private final Locale locale;
+
+	private final int limit;
+
+	private List<?> sortedResult;
+
+	private boolean exceeded;
+
+	private int matchCount = -1;
+
+	/**
+	 * @param keys
+	 *           the sort keys, the first one localized
+	 * @param locale
+	 *           locale the localized values are read in
+	 * @param limit
+	 *           maximal number of items sorted in memory
+	 */
+	public CollateInMemorySort(final List<Key> keys, final Locale locale, final int limit)
+	{
+		this.keys = Collections.unmodifiableList(keys);
+		this.locale = locale;
+		this.limit = limit;
+	}
+
+	public List<Key> getKeys()
+	{
+		return keys;
+	}
+
+	public Locale getLocale()
+	{
+		return locale;
+	}
+
+	public int getLimit()
+	{
+		return limit;
+	}
+
+	/**
+	 * @return the complete result in collated order, or <code>null</code> if it has not been sorted yet
+	 */
+	public List<?> getSortedResult()
+	{
+		return sortedResult;
+	}
+
+	public void setSortedResult(final List<?> sortedResult)
+	{
+		this.sortedResult = sortedResult;
+	}
+
+	/**
+	 * @return <code>true</code> once the query turned out to match more than {@link #getLimit()} items
+	 */
+	public boolean isExceeded()
+	{
+		return exceeded;
+	}
+
+	public void setExceeded(final boolean exceeded)
+	{
+		this.exceeded = exceeded;
+	}
+
+	/**
+	 * @return the number of matches counted to decide about the in-memory sort, or <code>-1</code> if they were not
+	 *         counted
+	 */
+	public int getMatchCount()
+	{
+		return matchCount;
+	}
+
+	public void setMatchCount(final int matchCount)
+	{
+		this.matchCount = matchCount;
+	}
+
+	/**
+	 * One key of the in-memory sort.
+	 */
+	public static final class Key
+	{
+		private final String qualifier;
+		private final boolean ascending;
+		private final boolean localized;
+		private final String collateType;
+
+		/**
+		 * @param qualifier
+		 *           the sort attribute
+		 * @param ascending
+		 *           direction of the key
+		 * @param localized
+		 *           whether the attribute is localized, its values are compared with the collator of the collation then
+		 * @param collateType
+		 *           configured SQL Server collation, may be <code>null</code> on other databases
+		 */
+		public Key(final String qualifier, final boolean ascending, final boolean localized, final String collateType)
+		{
+			this.qualifier = qualifier;
+			this.ascending = ascending;
+			this.localized = localized;
+			this.collateType = collateType;
+		}
+
+		public String getQualifier()
+		{
+			return qualifier;
+		}
+
+		public boolean isAscending()
+		{
+			return ascending;
+		}
+
+		public boolean isLocalized()
+		{
+			return localized;
+		}
+
+		public String getCollateType()
+		{
+			return collateType;
+		}
+	}
+}
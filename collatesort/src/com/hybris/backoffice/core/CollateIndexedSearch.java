@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.PK;
+
+import java.util.List;
+
+
+/**
+ * A search of a {@link CollateQuery} which the {@link CollateSearchIndexService} can answer: one <code>contains</code>
+ * condition on an indexed localized attribute, optionally sorted by an indexed localized attribute. The query itself
+ * remains complete, it is run by the database whenever the index cannot be used.
+ */
+public class CollateIndexedSearch
+{
+	private final String typeCode;
+
+	private final String conditionAttribute;
+
+	private final String term;
+
+	private final String sortAttribute;
+
+	private final boolean ascending;
+
+	private final String isocode;
+
+	private List<PK> result;
+
+	/**
+	 * @param typeCode
+	 *           searched type, including its subtypes
+	 * @param conditionAttribute
+	 *           localized attribute of the <code>contains</code> condition
+	 * @param term
+	 *           the searched text
+	 * @param sortAttribute
+	 *           localized sort attribute, <code>null</code> to sort by pk
+	 * @param ascending
+	 *           sort direction
+	 * @param isocode
+	 *           language of the condition and the sort
+	 */
+	public CollateIndexedSearch(final String typeCode, final String conditionAttribute, final String term,
+			final String sortAttribute, final boolean ascending, final String isocode)
+	{
+		this.typeCode = typeCode;
+		this.conditionAttribute = conditionAttribute;
+		this.term = term;
+		this.sortAttribute = sortAttribute;
+		this.ascending = ascending;
+		this.isocode = isocode;
+	}
+
+	public String getTypeCode()
+	{
+		return typeCode;
+	}
+
+	public String getConditionAttribute()
+	{
+		return conditionAttribute;
+	}
+
+	public String getTerm()
+	{
+		return term;
+	}
+
+	public String getSortAttribute()
+	{
+		return sortAttribute;
+	}
+
+	public boolean isAscending()
+	{
+		return ascending;
+	}
+
+	public String getIsocode()
+	{
+		return isocode;
+	}
+
+	/**
+	 * @return pks of all matches in result order, <code>null</code> until the index answered the search
+	 */
+	public List<PK> getResult()
+	{
+		return result;
+	}
+
+	public void setResult(final List<PK> result)
+	{
+		this.result = result;
+	}
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.PK;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Local index of the values of one localized attribute in one language. Values are indexed by their character
+ * unigrams and bigrams, which answers <code>contains</code> searches in CJK texts without word boundaries, and carry
+ * the {@link CollationKey} of the configured collation, which orders the matches like the database would. Values and
+ * search terms are folded to lower case and, for accent insensitive collations, stripped of their accents, so the index
+ * matches the same values as the database does.
+ * <p>
+ * Updates append a new document and mark the old one as deleted. Once more than a quarter of the documents are
+ * deleted, the index is compacted: deleted documents are dropped and the postings are built again, so stale postings
+ * do not accumulate. Only pks and values are persisted, collation keys are derived again when the index is read.
+ */
+public class CollateNgramIndex
+{
+	private static final int MAGIC = 0x43534e47;
+	private static final int VERSION = 1;
+
+	/** indexes with fewer deleted documents are never compacted */
+	private static final int MIN_COMPACT_DELETED = 1024;
+
+	private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+	private static final Comparator<CollationKey> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Locale locale;
+
+	private final Collator collator;
+
+	private final boolean accentInsensitive;
+
+	private final long createdAt;
+
+	private final List<Document> documents = new ArrayList<>();
+
+	private final Map<PK, Integer> documentIds = new HashMap<>();
+
+	private final Map<String, Postings> postings = new HashMap<>();
+
+	private int deletedCount;
+
+	private volatile boolean dirty;
+
+	/**
+	 * @param locale
+	 *           locale of the indexed language, used to fold the case of values and search terms
+	 * @param collator
+	 *           collator of the configured collation, see {@link CollateCollators}
+	 * @param createdAt
+	 *           time the indexed values were read from the database
+	 */
+	public CollateNgramIndex(final Locale locale, final Collator collator, final long createdAt)
+	{
+		this(locale, collator, false, createdAt);
+	}
+
+	/**
+	 * @param locale
+	 *           locale of the indexed language, used to fold the case of values and search terms
+	 * @param collator
+	 *           collator of the configured collation, see {@link CollateCollators}
+	 * @param accentInsensitive
+	 *           whether the configured collation ignores accents, see {@link CollateCollators#isAccentInsensitive(String)}
+	 * @param createdAt
+	 *           time the indexed values were read from the database
+	 */
+	public CollateNgramIndex(final Locale locale, final Collator collator, final boolean accentInsensitive,
+			final long createdAt)
+	{
+		this.locale = locale;
+		this.collator = collator;
+		this.accentInsensitive = accentInsensitive;
+		this.createdAt = createdAt;
+	}
+
+	/**
+	 * Adds or replaces the value of the given item. A <code>null</code> value removes the item.
+	 */
+	public void put(final PK pk, final String value)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(pk);
+			if (value != null)
+			{
+				final String normalized = normalize(value);
+				addDocument(new Document(pk, value, normalized, collator.getCollationKey(value)));
+			}
+			compactIfNeeded();
+			dirty = true;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(final PK pk)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			if (removeDocument(pk))
+			{
+				compactIfNeeded();
+				dirty = true;
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	private boolean removeDocument(final PK pk)
+	{
+		final Integer id = documentIds.remove(pk);
+		if (id != null)
+		{
+			documents.get(id.intValue()).deleted = true;
+			deletedCount++;
+			return true;
+		}
+		return false;
+	}
+
+	private void addDocument(final Document document)
+	{
+		final int id = documents.size();
+		documents.add(document);
+		documentIds.put(document.pk, Integer.valueOf(id));
+		for (final String gram : grams(document.normalized))
+		{
+			postings.computeIfAbsent(gram, key -> new Postings()).add(id);
+		}
+	}
+
+	/**
+	 * Drops the deleted documents and builds the postings of the remaining ones again. Callers hold the write lock.
+	 */
+	private void compactIfNeeded()
+	{
+		if (deletedCount < MIN_COMPACT_DELETED || deletedCount * 4 <= documents.size())
+		{
+			return;
+		}
+		final List<Document> live = new ArrayList<>(documents.size() - deletedCount);
+		documents.stream().filter(document -> !document.deleted).forEach(live::add);
+		documents.clear();
+		documentIds.clear();
+		postings.clear();
+		deletedCount = 0;
+		live.forEach(this::addDocument);
+	}
+
+	/**
+	 * @return number of documents including deleted ones, for monitoring
+	 */
+	public int documentCount()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documents.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param term
+	 *           the searched text, matched case insensitively
+	 * @return pks of the items whose value contains the term, in no particular order
+	 */
+	public List<PK> contains(final String term)
+	{
+		final String normalized = normalize(term);
+		lock.readLock().lock();
+		try
+		{
+			final List<PK> result = new ArrayList<>();
+			if (normalized.isEmpty())
+			{
+				documents.stream().filter(document -> !document.deleted).forEach(document -> result.add(document.pk));
+				return result;
+			}
+
+			final int[] candidates = candidates(normalized);
+			for (final int id : candidates)
+			{
+				final Document document = documents.get(id);
+				if (!document.deleted && document.normalized.contains(normalized))
+				{
+					result.add(document.pk);
+				}
+			}
+			return result;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Intersects the postings of the grams of the term, starting with the shortest one.
+	 */
+	private int[] candidates(final String normalized)
+	{
+		final List<Postings> termPostings = new ArrayList<>();
+		for (final String gram : normalized.length() == 1 ? Arrays.asList(normalized) : bigrams(normalized))
+		{
+			final Postings gramPostings = postings.get(gram);
+			if (gramPostings == null)
+			{
+				return new int[0];
+			}
+			termPostings.add(gramPostings);
+		}
+		termPostings.sort(Comparator.comparingInt(gramPostings -> gramPostings.size));
+
+		int[] result = Arrays.copyOf(termPostings.get(0).ids, termPostings.get(0).size);
+		for (int i = 1; i < termPostings.size() && result.length > 0; i++)
+		{
+			result = intersect(result, termPostings.get(i));
+		}
+		return result;
+	}
+
+	private static int[] intersect(final int[] ids, final Postings other)
+	{
+		final int[] result = new int[Math.min(ids.length, other.size)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < ids.length && j < other.size)
+		{
+			if (ids[i] == other.ids[j])
+			{
+				result[size++] = ids[i];
+				i++;
+				j++;
+			}
+			else if (ids[i] < other.ids[j])
+			{
+				i++;
+			}
+			else
+			{
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * @return collation key of the value of the given item, <code>null</code> if the item has no value
+	 */
+	public CollationKey getCollationKey(final PK pk)
+	{
+		lock.readLock().lock();
+		try
+		{
+			final Integer id = documentIds.get(pk);
+			return id == null ? null : documents.get(id.intValue()).key;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sorts the given pks by the collation keys of their values in this index. Items without a value come first, like
+	 * <code>NULL</code>s in an ascending SQL Server sort; ties are ordered by pk.
+	 */
+	public void sort(final List<PK> pks, final boolean ascending)
+	{
+		final Map<PK, CollationKey> keys = new HashMap<>(pks.size() * 2);
+		lock.readLock().lock();
+		try
+		{
+			for (final PK pk : pks)
+			{
+				final Integer id = documentIds.get(pk);
+				keys.put(pk, id == null ? null : documents.get(id.intValue()).key);
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		Comparator<PK> order = Comparator.comparing(keys::get, KEY_ORDER);
+		if (!ascending)
+		{
+			order = order.reversed();
+		}
+		pks.sort(order.thenComparing(Comparator.naturalOrder()));
+	}
+
+	public int size()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documentIds.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getCreatedAt()
+	{
+		return createdAt;
+	}
+
+	public boolean isDirty()
+	{
+		return dirty;
+	}
+
+	/**
+	 * Writes the pks and values to the given file. The file is replaced atomically, so a crash never leaves a partially
+	 * written index behind.
+	 */
+	public void writeTo(final File file) throws IOException
+	{
+		final File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create index directory " + directory);
+		}
+		final File temporary = new File(directory, file.getName() + ".tmp");
+		lock.readLock().lock();
+		try (final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporary)))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(createdAt);
+			out.writeInt(documentIds.size());
+			for (final Document document : documents)
+			{
+				if (!document.deleted)
+				{
+					out.writeLong(document.pk.getLongValue());
+					final byte[] value = document.value.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(value.length);
+					out.write(value);
+				}
+			}
+			dirty = false;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads an index written by {@link #writeTo(File)}.
+	 */
+	public static CollateNgramIndex readFrom(final File file, final Locale locale, final Collator collator,
+			final boolean accentInsensitive) throws IOException
+	{
+		try (final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Unsupported index file " + file);
+			}
+			final CollateNgramIndex index = new CollateNgramIndex(locale, collator, accentInsensitive, in.readLong());
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++)
+			{
+				final PK pk = PK.fromLong(in.readLong());
+				final byte[] value = new byte[in.readInt()];
+				in.readFully(value);
+				index.put(pk, new String(value, StandardCharsets.UTF_8));
+			}
+			index.dirty = false;
+			return index;
+		}
+	}
+
+	private String normalize(final String value)
+	{
+		if (value == null)
+		{
+			return "";
+		}
+		final String folded = value.trim().toLowerCase(locale);
+		if (!accentInsensitive)
+		{
+			return folded;
+		}
+		// decomposed accents are combining marks, composing again keeps e.g. Hangul syllables whole
+		final String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(folded, Normalizer.Form.NFD)).replaceAll("");
+		return Normalizer.normalize(stripped, Normalizer.Form.NFC);
+	}
+
+	private static Collection<String> grams(final String normalized)
+	{
+		final List<String> grams = new ArrayList<>(normalized.length() * 2);
+		for (int i = 0; i < normalized.length(); i++)
+		{
+			grams.add(normalized.substring(i, i + 1));
+		}
+		grams.addAll(bigrams(normalized));
+		return new LinkedHashSet<>(grams);
+	}
+
+	private static List<String> bigrams(final String normalized)
+	{
+		final List<String> bigrams = new ArrayList<>(Math.max(normalized.length() - 1, 0));
+		for (int i = 0; i + 2 <= normalized.length(); i++)
+		{
+			bigrams.add(normalized.substring(i, i + 2));
+		}
+		return bigrams;
+	}
+
+	private static final class Document
+	{
+		private final PK pk;
+		private final String value;
+		private final String normalized;
+		private final CollationKey key;
+		private boolean deleted;
+
+		private Document(final PK pk, final String value, final String normalized, final CollationKey key)
+		{
+			this.pk = pk;
+			this.value = value;
+			this.normalized = normalized;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Ascending document ids containing one gram. Ids are assigned in ascending order, so appending keeps them sorted.
+	 */
+	private static final class Postings
+	{
+		private int[] ids = new int[4];
+		private int size;
+
+		private void add(final int id)
+		{
+			if (size > 0 && ids[size - 1] == id)
+			{
+				return;
+			}
+			if (size == ids.length)
+			{
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+	}
+}
@@ -6,38 +6,247 @@ package com.hybris.backoffice.core;
 
 import de.hybris.platform.core.GenericCondition;
 import de.hybris.platform.core.GenericQuery;
+import de.hybris.platform.core.GenericSearchOrderBy;
+import de.hybris.platform.core.GenericTypeJoin;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
 
 public class CollateQuery extends GenericQuery
 {
+	private static final String ORDER_BY = " ORDER BY ";
+
+	private final String searchTypeCode;
+
+	private boolean sorted;
+
+	private boolean collateSearchOrderBy;
+
+	private boolean enumSortOrderBy;
+
+	private CollateInMemorySort inMemorySort;
+
+	private String resultCacheKey;
+
+	private CollateSearchTrace trace;
+
+	private CollateIndexedSearch indexedSearch;
+
+	private boolean conditioned;
+
+	private boolean joined;
+
+	private boolean separateCount;
+
 	public CollateQuery(final String typeCode, final GenericCondition condition, final boolean typeExclusive)
 	{
 		super(typeCode, condition, typeExclusive);
+		this.searchTypeCode = typeCode;
+		this.conditioned = condition != null;
 	}
 
 	public CollateQuery(final String typeCode, final GenericCondition condition)
 	{
 		super(typeCode, condition);
+		this.searchTypeCode = typeCode;
+		this.conditioned = condition != null;
 	}
 
 	public CollateQuery(final String typeCode)
 	{
 		super(typeCode);
+		this.searchTypeCode = typeCode;
 	}
 
 	public CollateQuery(final String typeCode, final boolean typeExclusive)
 	{
 		super(typeCode, typeExclusive);
+		this.searchTypeCode = typeCode;
+	}
+
+	@Override
+	public void addCondition(final GenericCondition condition)
+	{
+		super.addCondition(condition);
+		conditioned = true;
+	}
+
+	@Override
+	public void addOrderBy(final GenericSearchOrderBy orderBy)
+	{
+		super.addOrderBy(orderBy);
+		sorted = true;
+		collateSearchOrderBy |= orderBy instanceof CollateSearchOrderBy;
+		enumSortOrderBy |= orderBy instanceof CollateEnumSortOrderBy;
 	}
 
+	@Override
+	public GenericTypeJoin addInnerJoin(final String type, final GenericCondition joinCondition)
+	{
+		joined = true;
+		return super.addInnerJoin(type, joinCondition);
+	}
+
+	@Override
+	public GenericTypeJoin addInnerJoin(final String type, final String typeIdentifier, final GenericCondition joinCondition)
+	{
+		joined = true;
+		return super.addInnerJoin(type, typeIdentifier, joinCondition);
+	}
+
+	@Override
+	public GenericTypeJoin addOuterJoin(final String type, final GenericCondition joinCondition)
+	{
+		joined = true;
+		return super.addOuterJoin(type, joinCondition);
+	}
 
+	@Override
+	public GenericTypeJoin addOuterJoin(final String type, final String typeIdentifier, final GenericCondition joinCondition)
+	{
+		joined = true;
+		return super.addOuterJoin(type, typeIdentifier, joinCondition);
+	}
+
+	/**
+	 * A collated order by prevents the polyglot dialect, which has no collations. Enumeration rankings render as a
+	 * <code>CASE</code> expression which the polyglot dialect does not support either.
+	 */
 	@Override
 	public boolean isTranslatableToPolyglotDialect()
 	{
-		return super.isTranslatableToPolyglotDialect() && !hasCollateSearchOrderBy();
+		return super.isTranslatableToPolyglotDialect() && !enumSortOrderBy && !hasCollateSearchOrderBy();
+	}
+
+	/**
+	 * @return <code>true</code> if the query would be translatable to the polyglot dialect without its order by
+	 */
+	public boolean isPolyglotBypassed()
+	{
+		return super.isTranslatableToPolyglotDialect() && !isTranslatableToPolyglotDialect();
+	}
+
+	/**
+	 * Renders this query without its <code>ORDER BY</code>, keeping the conditions and joins it was built with. Values
+	 * only referenced by the order by, like the ranks of enumeration sorts, are removed from the given values again.
+	 */
+	public String toUnsortedFlexibleSearch(final Map<String, Object> values)
+	{
+		final String statement = toFlexibleSearch(values);
+		final int orderBy = sorted ? StringUtils.lastIndexOfIgnoreCase(statement, ORDER_BY) : -1;
+		if (orderBy < 0)
+		{
+			return statement;
+		}
+		final String unsorted = statement.substring(0, orderBy);
+		values.keySet().removeIf(key -> !unsorted.contains("?" + key));
+		return unsorted;
+	}
+
+	public boolean hasCollateSearchOrderBy()
+	{
+		return collateSearchOrderBy;
+	}
+
+	public boolean hasEnumSortOrderBy()
+	{
+		return enumSortOrderBy;
+	}
+
+	/**
+	 * @return <code>true</code> if the query has a condition
+	 */
+	public boolean hasConditions()
+	{
+		return conditioned;
+	}
+
+	/**
+	 * @return <code>true</code> if a type was joined to the query
+	 */
+	public boolean hasJoins()
+	{
+		return joined;
+	}
+
+	/**
+	 * @return <code>true</code> if nothing was added to the query since it was created
+	 */
+	public boolean isPristine()
+	{
+		return !conditioned && !joined && !sorted;
+	}
+
+	/**
+	 * @return the in-memory sort of this query, or <code>null</code> if only the database sorts it
+	 */
+	public CollateInMemorySort getInMemorySort()
+	{
+		return inMemorySort;
+	}
+
+	public void setInMemorySort(final CollateInMemorySort inMemorySort)
+	{
+		this.inMemorySort = inMemorySort;
+	}
+
+	public String getSearchTypeCode()
+	{
+		return searchTypeCode;
+	}
+
+	/**
+	 * @return key of the normalized search this query was built for, or <code>null</code> if its results must not be
+	 *         cached
+	 */
+	public String getResultCacheKey()
+	{
+		return resultCacheKey;
+	}
+
+	public void setResultCacheKey(final String resultCacheKey)
+	{
+		this.resultCacheKey = resultCacheKey;
+	}
+
+	/**
+	 * @return build figures of this query, or <code>null</code> if instrumentation is disabled
+	 */
+	public CollateSearchTrace getTrace()
+	{
+		return trace;
+	}
+
+	public void setTrace(final CollateSearchTrace trace)
+	{
+		this.trace = trace;
+	}
+
+	/**
+	 * @return the search to answer from the {@link CollateSearchIndexService}, or <code>null</code> if the query is only
+	 *         run by the database
+	 */
+	public CollateIndexedSearch getIndexedSearch()
+	{
+		return indexedSearch;
+	}
+
+	public void setIndexedSearch(final CollateIndexedSearch indexedSearch)
+	{
+		this.indexedSearch = indexedSearch;
+	}
+
+	/**
+	 * @return <code>true</code> if the total is counted separately from the page, see {@link CollateCountService}
+	 */
+	public boolean isSeparateCount()
+	{
+		return separateCount;
 	}
 
-	private boolean hasCollateSearchOrderBy()
+	public void setSeparateCount(final boolean separateCount)
 	{
-		return getOrderByList().stream().anyMatch(CollateSearchOrderBy.class::isInstance);
+		this.separateCount = separateCount;
 	}
 }
@@ -0,0 +1,542 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.TenantAwareThreadFactory;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.core.model.type.ComposedTypeModel;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.jalo.type.ComposedType;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.search.restriction.SearchRestrictionService;
+import de.hybris.platform.servicelayer.session.Session;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+import de.hybris.platform.util.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * Maintains the {@link CollateNgramIndex}es of the localized attributes configured with
+ * <code>collatesort.index.attributes</code> in the languages configured with <code>collatesort.index.languages</code>.
+ * Indexes are read from <code>collatesort.index.dir</code>, or built from the database, in the background on first use
+ * and are rebuilt once they are older than <code>collatesort.index.maxage</code> seconds. Saved and removed items are
+ * applied in the background as well. Until an index is ready, searches are answered by the database.
+ * <p>
+ * Indexes are local to the node. Changes made on other cluster nodes are only seen after the next rebuild. Indexes
+ * contain all items regardless of search restrictions, so they are not used for users with active restrictions on the
+ * searched types, see {@link #hasActiveRestrictions(String)}.
+ */
+public class CollateSearchIndexService implements AfterSaveListener
+{
+	private static final Logger LOG = Logger.getLogger(CollateSearchIndexService.class);
+
+	private static final String SELECT_VALUES = "SELECT {pk}, {%s[%s]} FROM {%s} WHERE {pk} > ?lastPk ORDER BY {pk}";
+
+	private static final String SELECT_CHANGED_VALUES = "SELECT {pk}, {%s[%s]} FROM {%s} WHERE {pk} IN (?pks)";
+
+	private static final int CHANGED_BATCH_SIZE = 1000;
+
+	private final ConcurrentMap<String, CollateNgramIndex> indexes = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Set<Integer>> indexTypeCodes = new ConcurrentHashMap<>();
+
+	private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+	private final Queue<AfterSaveEvent> changes = new ConcurrentLinkedQueue<>();
+
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+	private volatile Set<Integer> indexedTypeCodes = Collections.emptySet();
+
+	private ExecutorService executor;
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private CommonI18NService commonI18NService;
+
+	private TypeService typeService;
+
+	private ModelService modelService;
+
+	private SessionService sessionService;
+
+	private UserService userService;
+
+	private SearchRestrictionService searchRestrictionService;
+
+	public void init()
+	{
+		executor = createExecutor();
+	}
+
+	protected ExecutorService createExecutor()
+	{
+		return Executors.newSingleThreadExecutor(new TenantAwareThreadFactory(Registry.getCurrentTenant()));
+	}
+
+	/**
+	 * Stops the background work and writes the indexes changed since they were read or built. Nothing is written if a
+	 * build or an update does not stop within <code>collatesort.index.shutdowntimeout</code> milliseconds, the indexes
+	 * are then read or built again after the restart.
+	 */
+	public void destroy()
+	{
+		executor.shutdownNow();
+		try
+		{
+			if (!executor.awaitTermination(getShutdownTimeout(), TimeUnit.MILLISECONDS))
+			{
+				LOG.warn("Collatesort index tasks did not stop, the indexes are not written");
+				return;
+			}
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		indexes.forEach((key, index) -> {
+			if (index.isDirty())
+			{
+				write(key, index);
+			}
+		});
+	}
+
+	public boolean isEnabled()
+	{
+		return Config.getBoolean(CollatesortConstants.INDEX_ENABLED, false);
+	}
+
+	/**
+	 * @return <code>true</code> if the attribute of the type is configured to be indexed in the given language
+	 */
+	public boolean isIndexed(final String typeCode, final String attribute, final String isocode)
+	{
+		return isEnabled() && getIndexedAttributes().contains(typeCode + '.' + attribute) && getIndexedLanguages().contains(
+				isocode);
+	}
+
+	/**
+	 * Checks whether search restrictions of the current user apply to the type, one of its supertypes or one of its
+	 * subtypes. The indexes would count and page items the user cannot see, so such searches are run by the database.
+	 */
+	public boolean hasActiveRestrictions(final String typeCode)
+	{
+		final UserModel user = userService.getCurrentUser();
+		if (!searchRestrictionService.isSearchRestrictionsEnabled() || userService.isAdmin(user))
+		{
+			return false;
+		}
+		final ComposedTypeModel composedType = typeService.getComposedTypeForCode(typeCode);
+		final Set<ComposedTypeModel> types = new HashSet<>();
+		types.add(composedType);
+		types.addAll(composedType.getAllSuperTypes());
+		types.addAll(composedType.getAllSubTypes());
+		return !searchRestrictionService.getActiveSearchRestrictions(user, true, types).isEmpty();
+	}
+
+	/**
+	 * @return pks of all matches of the search in result order, empty if one of the needed indexes is not ready yet
+	 */
+	public Optional<List<PK>> search(final CollateIndexedSearch search)
+	{
+		final CollateNgramIndex conditionIndex = getIndex(search.getTypeCode(), search.getConditionAttribute(),
+				search.getIsocode());
+		final CollateNgramIndex sortIndex = search.getSortAttribute() == null ? null
+				: getIndex(search.getTypeCode(), search.getSortAttribute(), search.getIsocode());
+		if (conditionIndex == null || (search.getSortAttribute() != null && sortIndex == null))
+		{
+			return Optional.empty();
+		}
+
+		final List<PK> matches = conditionIndex.contains(search.getTerm());
+		if (sortIndex == null)
+		{
+			matches.sort(null);
+		}
+		else
+		{
+			sortIndex.sort(matches, search.isAscending());
+		}
+		return Optional.of(matches);
+	}
+
+	/**
+	 * @return the ready index, or <code>null</code> if it is still being read or built
+	 */
+	protected CollateNgramIndex getIndex(final String typeCode, final String attribute, final String isocode)
+	{
+		final String key = indexKey(typeCode, attribute, isocode);
+		final CollateNgramIndex index = indexes.get(key);
+		if (index == null || System.currentTimeMillis() - index.getCreatedAt() > getMaxAge())
+		{
+			schedule(key, () -> prepareIndex(key, typeCode, attribute, isocode, index == null));
+		}
+		return index;
+	}
+
+	private void schedule(final String key, final Runnable task)
+	{
+		if (scheduled.add(key))
+		{
+			execute(() -> {
+				try
+				{
+					runAsAdmin(task);
+				}
+				catch (final RuntimeException e)
+				{
+					LOG.warn("Preparing collatesort index " + key + " failed, searches keep using the database", e);
+				}
+				finally
+				{
+					scheduled.remove(key);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reads the index from disk if the file is recent enough, otherwise builds it from the database.
+	 */
+	protected void prepareIndex(final String key, final String typeCode, final String attribute, final String isocode,
+			final boolean readFile)
+	{
+		final LanguageModel language = commonI18NService.getLanguage(isocode);
+		final Locale locale = commonI18NService.getLocaleForLanguage(language);
+		final Collator collator = CollateCollators.getCollator(getCollation(isocode), locale);
+		final boolean accentInsensitive = CollateCollators.isAccentInsensitive(getCollation(isocode));
+		final long maxAge = getMaxAge();
+		registerTypeCodes(key, typeCode);
+
+		final File file = getIndexFile(key);
+		if (readFile && file.isFile())
+		{
+			try
+			{
+				final CollateNgramIndex index = CollateNgramIndex.readFrom(file, locale, collator, accentInsensitive);
+				if (System.currentTimeMillis() - index.getCreatedAt() <= maxAge)
+				{
+					indexes.put(key, index);
+					LOG.info(String.format("Read collatesort index %s with %d values", key, Integer.valueOf(index.size())));
+					return;
+				}
+			}
+			catch (final IOException e)
+			{
+				LOG.warn("Cannot read collatesort index " + file + ", building it again", e);
+			}
+		}
+
+		final CollateNgramIndex index = buildIndex(typeCode, attribute, isocode, locale, collator, accentInsensitive);
+		indexes.put(key, index);
+		write(key, index);
+		LOG.info(String.format("Built collatesort index %s with %d values", key, Integer.valueOf(index.size())));
+	}
+
+	/**
+	 * Reads all values in pk order, in batches of <code>collatesort.index.batchsize</code> rows.
+	 */
+	protected CollateNgramIndex buildIndex(final String typeCode, final String attribute, final String isocode,
+			final Locale locale, final Collator collator, final boolean accentInsensitive)
+	{
+		final CollateNgramIndex index = new CollateNgramIndex(locale, collator, accentInsensitive, System.currentTimeMillis());
+		final int batchSize = Config.getInt(CollatesortConstants.INDEX_BATCH_SIZE, 1000);
+		PK lastPk = PK.fromLong(0);
+		List<List<Object>> rows;
+		do
+		{
+			final FlexibleSearchQuery query = new FlexibleSearchQuery(String.format(SELECT_VALUES, attribute, isocode, typeCode));
+			query.addQueryParameter("lastPk", lastPk);
+			query.setResultClassList(Arrays.asList(PK.class, String.class));
+			query.setCount(batchSize);
+			rows = flexibleSearchService.<List<Object>> search(query).getResult();
+			for (final List<Object> row : rows)
+			{
+				lastPk = (PK) row.get(0);
+				index.put(lastPk, (String) row.get(1));
+			}
+		}
+		while (rows.size() == batchSize && !Thread.currentThread().isInterrupted());
+		return index;
+	}
+
+	@Override
+	public void afterSave(final Collection<AfterSaveEvent> events)
+	{
+		final Set<Integer> typeCodes = indexedTypeCodes;
+		if (typeCodes.isEmpty())
+		{
+			return;
+		}
+		boolean changed = false;
+		for (final AfterSaveEvent event : events)
+		{
+			if (event.getPk() != null && typeCodes.contains(Integer.valueOf(event.getPk().getTypeCode())))
+			{
+				changes.add(event);
+				changed = true;
+			}
+		}
+		if (changed && drainScheduled.compareAndSet(false, true))
+		{
+			execute(() -> {
+				drainScheduled.set(false);
+				try
+				{
+					runAsAdmin(this::applyChanges);
+				}
+				catch (final RuntimeException e)
+				{
+					LOG.warn("Applying changes to the collatesort indexes failed", e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Removes the removed items from the indexes and reads the current values of the saved ones.
+	 */
+	protected void applyChanges()
+	{
+		final Set<PK> removed = new HashSet<>();
+		final Set<PK> saved = new HashSet<>();
+		AfterSaveEvent event;
+		while ((event = changes.poll()) != null)
+		{
+			if (event.getType() == AfterSaveEvent.REMOVE)
+			{
+				removed.add(event.getPk());
+				saved.remove(event.getPk());
+			}
+			else
+			{
+				saved.add(event.getPk());
+				removed.remove(event.getPk());
+			}
+		}
+
+		indexes.forEach((key, index) -> {
+			final Set<Integer> typeCodes = indexTypeCodes.getOrDefault(key, Collections.emptySet());
+			removed.stream().filter(pk -> typeCodes.contains(Integer.valueOf(pk.getTypeCode()))).forEach(index::remove);
+			final List<PK> reload = new ArrayList<>();
+			saved.stream().filter(pk -> typeCodes.contains(Integer.valueOf(pk.getTypeCode()))).forEach(reload::add);
+			for (int start = 0; start < reload.size(); start += CHANGED_BATCH_SIZE)
+			{
+				reload(key, index, reload.subList(start, Math.min(start + CHANGED_BATCH_SIZE, reload.size())));
+			}
+		});
+	}
+
+	private void reload(final String key, final CollateNgramIndex index, final List<PK> pks)
+	{
+		final String[] parts = key.split("\\|");
+		final FlexibleSearchQuery query = new FlexibleSearchQuery(
+				String.format(SELECT_CHANGED_VALUES, parts[1], parts[2], parts[0]));
+		query.addQueryParameter("pks", pks);
+		query.setResultClassList(Arrays.asList(PK.class, String.class));
+		final Map<PK, String> values = new HashMap<>();
+		flexibleSearchService.<List<Object>> search(query).getResult()
+				.forEach(row -> values.put((PK) row.get(0), (String) row.get(1)));
+		pks.forEach(pk -> index.put(pk, values.get(pk)));
+	}
+
+	private void registerTypeCodes(final String key, final String typeCode)
+	{
+		final ComposedTypeModel composedType = typeService.getComposedTypeForCode(typeCode);
+		final Set<Integer> codes = new HashSet<>();
+		codes.add(Integer.valueOf(modelService.<ComposedType> getSource(composedType).getItemTypeCode()));
+		composedType.getAllSubTypes()
+				.forEach(subType -> codes.add(Integer.valueOf(modelService.<ComposedType> getSource(subType).getItemTypeCode())));
+		indexTypeCodes.put(key, Collections.unmodifiableSet(codes));
+
+		final Set<Integer> all = new HashSet<>();
+		indexTypeCodes.values().forEach(all::addAll);
+		indexedTypeCodes = Collections.unmodifiableSet(all);
+	}
+
+	private void execute(final Runnable task)
+	{
+		if (!executor.isShutdown())
+		{
+			executor.execute(task);
+		}
+	}
+
+	private void write(final String key, final CollateNgramIndex index)
+	{
+		try
+		{
+			index.writeTo(getIndexFile(key));
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Cannot write collatesort index " + key + ", it is built again after a restart", e);
+		}
+	}
+
+	protected long getMaxAge()
+	{
+		return TimeUnit.SECONDS.toMillis(Config.getLong(CollatesortConstants.INDEX_MAX_AGE, 86400));
+	}
+
+	protected long getShutdownTimeout()
+	{
+		return Config.getLong(CollatesortConstants.INDEX_SHUTDOWN_TIMEOUT, 10000);
+	}
+
+	protected String getCollation(final String isocode)
+	{
+		return Config.getParameter(CollatesortConstants.COLLATE_PREFIX + isocode);
+	}
+
+	protected File getIndexFile(final String key)
+	{
+		return new File(Config.getParameter(CollatesortConstants.INDEX_DIR), key.replace('|', '_') + ".idx");
+	}
+
+	/**
+	 * Indexing sees all items, search restrictions apply when the page of the found items is loaded.
+	 */
+	private void runAsAdmin(final Runnable task)
+	{
+		final Session session = sessionService.createNewSession();
+		try
+		{
+			sessionService.executeInLocalView(new SessionExecutionBody()
+			{
+				@Override
+				public void executeWithoutResult()
+				{
+					task.run();
+				}
+			}, userService.getAdminUser());
+		}
+		finally
+		{
+			sessionService.closeSession(session);
+		}
+	}
+
+	private static String indexKey(final String typeCode, final String attribute, final String isocode)
+	{
+		return typeCode + '|' + attribute + '|' + isocode;
+	}
+
+	private static Set<String> getIndexedAttributes()
+	{
+		return toSet(Config.getParameter(CollatesortConstants.INDEX_ATTRIBUTES));
+	}
+
+	private static Set<String> getIndexedLanguages()
+	{
+		return toSet(Config.getParameter(CollatesortConstants.INDEX_LANGUAGES));
+	}
+
+	private static Set<String> toSet(final String value)
+	{
+		final Set<String> values = new HashSet<>();
+		for (final String part : StringUtils.split(StringUtils.defaultString(value), ','))
+		{
+			if (StringUtils.isNotBlank(part))
+			{
+				values.add(part.trim());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return number of values per ready index, for monitoring
+	 */
+	public Map<String, Integer> getIndexSizes()
+	{
+		final Map<String, Integer> sizes = new LinkedHashMap<>();
+		indexes.forEach((key, index) -> sizes.put(key, Integer.valueOf(index.size())));
+		return sizes;
+	}
+
+	@Required
+	public void setFlexibleSearchService(final FlexibleSearchService flexibleSearchService)
+	{
+		this.flexibleSearchService = flexibleSearchService;
+	}
+
+	@Required
+	public void setCommonI18NService(final CommonI18NService commonI18NService)
+	{
+		this.commonI18NService = commonI18NService;
+	}
+
+	@Required
+	public void setTypeService(final TypeService typeService)
+	{
+		this.typeService = typeService;
+	}
+
+	@Required
+	public void setModelService(final ModelService modelService)
+	{
+		this.modelService = modelService;
+	}
+
+	@Required
+	public void setSessionService(final SessionService sessionService)
+	{
+		this.sessionService = sessionService;
+	}
+
+	@Required
+	public void setUserService(final UserService userService)
+	{
+		this.userService = userService;
+	}
+
+	@Required
+	public void setSearchRestrictionService(final SearchRestrictionService searchRestrictionService)
+	{
+		this.searchRestrictionService = searchRestrictionService;
+	}
+}
@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+/**
+ * Notified by the {@link CollateSearchMonitor} about every executed collated search. Called on the searching thread,
+ * so implementations must be fast and thread safe.
+ */
+public interface CollateSearchListener
+{
+	void onSearch(CollateSearchTrace trace);
+}
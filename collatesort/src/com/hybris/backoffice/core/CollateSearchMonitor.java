@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.GenericQuery;
+import de.hybris.platform.util.Config;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * Receives the {@link CollateSearchTrace} of every executed collated search. Searches slower than
+ * <code>collatesort.slowquery.threshold</code> milliseconds are logged as one <code>key=value</code> line together with
+ * their FlexibleSearch statement, so that grids in need of an index or precomputed sort keys can be found in the logs.
+ * Registered {@link CollateSearchListener}s receive every trace.
+ */
+public class CollateSearchMonitor
+{
+	private static final Logger LOG = Logger.getLogger(CollateSearchMonitor.class);
+
+	private final List<CollateSearchListener> listeners = new CopyOnWriteArrayList<>();
+
+	public boolean isEnabled()
+	{
+		return Config.getBoolean(CollatesortConstants.INSTRUMENTATION_ENABLED, true);
+	}
+
+	/**
+	 * @param trace
+	 *           trace of the execution
+	 * @param query
+	 *           the executed query, only rendered if the search was slow
+	 */
+	public void record(final CollateSearchTrace trace, final GenericQuery query)
+	{
+		for (final CollateSearchListener listener : listeners)
+		{
+			listener.onSearch(trace);
+		}
+		if (isSlow(trace))
+		{
+			LOG.warn(formatSlowQuery(trace, query));
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the trace took at least <code>collatesort.slowquery.threshold</code> milliseconds
+	 */
+	public boolean isSlow(final CollateSearchTrace trace)
+	{
+		final long threshold = Config.getLong(CollatesortConstants.SLOW_QUERY_THRESHOLD, 1000);
+		return threshold >= 0 && trace.getBuildMillis() + trace.getExecutionMillis() >= threshold;
+	}
+
+	public void addListener(final CollateSearchListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeListener(final CollateSearchListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	protected String formatSlowQuery(final CollateSearchTrace trace, final GenericQuery query)
+	{
+		return new StringBuilder(256).append("Slow collated search:")
+				.append(" type=").append(trace.getTypeCode())
+				.append(" sortAttribute=").append(trace.getSortAttribute())
+				.append(" sortKind=").append(trace.getSortKind())
+				.append(" language=").append(trace.getLanguage())
+				.append(" collation=").append(trace.getCollation())
+				.append(" buildMs=").append(trace.getBuildMillis())
+				.append(" executionMs=").append(trace.getExecutionMillis())
+				.append(" rows=").append(trace.getRowCount())
+				.append(" total=").append(trace.getTotalCount())
+				.append(" polyglotBypassed=").append(trace.isPolyglotBypassed())
+				.append(" inMemorySorted=").append(trace.isInMemorySorted())
+				.append(" cached=").append(trace.isCached())
+				.append(" statement=\"").append(query.toFlexibleSearch(new HashMap<>())).append('"')
+				.toString();
+	}
+}
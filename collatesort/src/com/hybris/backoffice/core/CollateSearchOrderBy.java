@@ -9,65 +9,75 @@ import de.hybris.platform.core.GenericSearchOrderBy;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.util.Chars;
 
 
+/**
+ * Order by with the <code>COLLATE</code> clause of a database collation. The polyglot dialect has no collations, so
+ * queries sorted with it always run on the database, see {@link CollateQuery#isTranslatableToPolyglotDialect()}.
+ */
 public class CollateSearchOrderBy extends GenericSearchOrderBy
 {
 	private static final String COLLATE = "collate";
 
-	private final String collateType;
-
 	private static final String ASC = "ASC";
 	private static final String DESC = "DESC";
 
+	private static final String ASC_SUFFIX = Chars.SPACE + ASC;
+	private static final String DESC_SUFFIX = Chars.SPACE + DESC;
 
+	private static final String[] PLAIN_SUFFIXES = { ASC_SUFFIX, DESC_SUFFIX };
+
+	/** shared immutable suffixes per collation, index 0 ascending and index 1 descending */
+	private static final ConcurrentMap<String, String[]> SUFFIXES = new ConcurrentHashMap<>();
+
+	private final String collateType;
+
+	private final String[] suffixes;
 
 	public CollateSearchOrderBy(final GenericSearchField field, final String collateType)
 	{
 		super(field);
 		this.collateType = collateType;
+		this.suffixes = suffixesOf(collateType);
 	}
 
 	public CollateSearchOrderBy(final GenericSearchField field, final boolean ascendingOrder, final String collateType)
 	{
 		super(field, ascendingOrder);
 		this.collateType = collateType;
+		this.suffixes = suffixesOf(collateType);
 	}
 
+	private static String[] suffixesOf(final String collateType)
+	{
+		if (StringUtils.isEmpty(collateType))
+		{
+			return PLAIN_SUFFIXES;
+		}
+		return SUFFIXES.computeIfAbsent(collateType, type -> new String[] {
+				(Chars.SPACE + COLLATE + Chars.SPACE + type + ASC_SUFFIX).intern(),
+				(Chars.SPACE + COLLATE + Chars.SPACE + type + DESC_SUFFIX).intern() });
+	}
 
 	@Override
 	public void toFlexibleSearch(final StringBuilder queryBuffer, final Map<String, String> typeIndexMap,
 	                             final Map<String, Object> valueMap)
 	{
 		getField().toFlexibleSearch(queryBuffer, typeIndexMap, valueMap);
-		queryBuffer.append(Chars.SPACE);
-		if (StringUtils.isNotEmpty(collateType))
-		{
-			queryBuffer.append(COLLATE);
-			queryBuffer.append(Chars.SPACE);
-			queryBuffer.append(collateType);
-			queryBuffer.append(Chars.SPACE);
-		}
-		queryBuffer.append(isAscending() ? ASC : DESC);
+		queryBuffer.append(suffixes[isAscending() ? 0 : 1]);
 	}
 
-	@Override
-	public void toPolyglotSearch(final StringBuilder queryBuffer, final Map<String, String> aliasTypeMap,
-	                             final Map<String, Object> valueMap)
+	/**
+	 * @return the collation of this order by, <code>null</code> or empty for the collation of the column
+	 */
+	public String getCollateType()
 	{
-		getField().toPolyglotSearch(queryBuffer, aliasTypeMap, valueMap);
-		queryBuffer.append(Chars.SPACE);
-		if (StringUtils.isNotEmpty(collateType))
-		{
-			queryBuffer.append(COLLATE);
-			queryBuffer.append(Chars.SPACE);
-			queryBuffer.append(collateType);
-			queryBuffer.append(Chars.SPACE);
-		}
-		queryBuffer.append(isAscending() ? ASC : DESC);
+		return collateType;
 	}
 
 	@Override
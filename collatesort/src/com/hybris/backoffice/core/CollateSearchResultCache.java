@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.type.ComposedTypeModel;
+import de.hybris.platform.jalo.type.ComposedType;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+import de.hybris.platform.util.Config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * Short lived, size bounded cache of result pages of collated Backoffice searches. A page is stored as the list of its
+ * pks, keyed by the normalized search, the page bounds, the language and the user. Pages are dropped when their time
+ * to live expires or when an item of the searched types, or of the types of the items on the page, is saved or removed
+ * on this node.
+ * <p>
+ * Changes of other types the search depends on, e.g. catalog versions or categories referenced by its conditions, and
+ * changes made on other nodes are only seen once the page expires. The cache is therefore disabled by default and
+ * should only be enabled with a short time to live where such staleness is acceptable.
+ */
+public class CollateSearchResultCache implements AfterSaveListener
+{
+	private final Map<String, CachedPage> pages = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** keys of the cached pages per covered type code, read without lock by {@link #afterSave(Collection)} */
+	private final ConcurrentMap<Integer, Set<String>> pageKeysByTypeCode = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Set<Integer>> typeCodes = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private TypeService typeService;
+
+	private ModelService modelService;
+
+	public boolean isEnabled()
+	{
+		return Config.getBoolean(CollatesortConstants.RESULT_CACHE_ENABLED, false);
+	}
+
+	/**
+	 * @return the cached page or <code>null</code> if it is not cached or expired
+	 */
+	public CachedPage get(final String pageKey)
+	{
+		final CachedPage page;
+		synchronized (pages)
+		{
+			page = pages.get(pageKey);
+			if (page != null && page.isExpired())
+			{
+				removePage(pageKey);
+			}
+		}
+		if (page == null || page.isExpired())
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return page;
+	}
+
+	/**
+	 * @param pageKey
+	 *           key of the page, see {@link #pageKey(String, int, int, boolean)}
+	 * @param searchTypeCode
+	 *           the searched type
+	 * @param includeSubtypes
+	 *           whether subtypes are searched as well
+	 * @param pks
+	 *           the pks of the page in result order
+	 * @param totalCount
+	 *           the total count reported with the page
+	 */
+	public void put(final String pageKey, final String searchTypeCode, final boolean includeSubtypes, final List<PK> pks,
+			final int totalCount)
+	{
+		final Set<Integer> pageTypeCodes = new HashSet<>(getTypeCodes(searchTypeCode, includeSubtypes));
+		pks.forEach(pk -> pageTypeCodes.add(Integer.valueOf(pk.getTypeCode())));
+		final CachedPage page = new CachedPage(pks, totalCount, pageTypeCodes, System.currentTimeMillis() + getTimeToLive());
+
+		final int maxSize = getMaxSize();
+		synchronized (pages)
+		{
+			removePage(pageKey);
+			pages.put(pageKey, page);
+			pageTypeCodes.forEach(
+					typeCode -> pageKeysByTypeCode.computeIfAbsent(typeCode, key -> new HashSet<>()).add(pageKey));
+			while (pages.size() > maxSize)
+			{
+				removePage(pages.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Removes the page and its entries in the type code index, callers hold the lock on {@link #pages}.
+	 */
+	private void removePage(final String pageKey)
+	{
+		final CachedPage page = pages.remove(pageKey);
+		if (page != null)
+		{
+			page.typeCodes.forEach(typeCode -> pageKeysByTypeCode.computeIfPresent(typeCode, (key, pageKeys) -> {
+				pageKeys.remove(pageKey);
+				return pageKeys.isEmpty() ? null : pageKeys;
+			}));
+		}
+	}
+
+	protected long getTimeToLive()
+	{
+		return TimeUnit.SECONDS.toMillis(Config.getLong(CollatesortConstants.RESULT_CACHE_TTL, 30));
+	}
+
+	protected int getMaxSize()
+	{
+		return Config.getInt(CollatesortConstants.RESULT_CACHE_MAX_SIZE, 1000);
+	}
+
+	public static String pageKey(final String searchKey, final int start, final int count, final boolean needTotal)
+	{
+		return searchKey + '#' + start + '#' + count + '#' + needTotal;
+	}
+
+	protected Set<Integer> getTypeCodes(final String searchTypeCode, final boolean includeSubtypes)
+	{
+		return typeCodes.computeIfAbsent(searchTypeCode + '|' + includeSubtypes, key -> {
+			final ComposedTypeModel composedType = typeService.getComposedTypeForCode(searchTypeCode);
+			final Set<Integer> codes = new HashSet<>();
+			codes.add(Integer.valueOf(modelService.<ComposedType> getSource(composedType).getItemTypeCode()));
+			if (includeSubtypes)
+			{
+				composedType.getAllSubTypes().forEach(
+						subType -> codes.add(Integer.valueOf(modelService.<ComposedType> getSource(subType).getItemTypeCode())));
+			}
+			return Collections.unmodifiableSet(codes);
+		});
+	}
+
+	/**
+	 * Checks the changed type codes against the type code index without lock; the lock is only taken when cached pages
+	 * are affected. A change of a composed type also drops the resolved subtypes of the searched types.
+	 */
+	@Override
+	public void afterSave(final Collection<AfterSaveEvent> events)
+	{
+		final Set<Integer> changed = new HashSet<>();
+		for (final AfterSaveEvent event : events)
+		{
+			if (event.getPk() != null)
+			{
+				changed.add(Integer.valueOf(event.getPk().getTypeCode()));
+			}
+		}
+		if (changed.contains(Integer.valueOf(Constants.TC.ComposedType)))
+		{
+			typeCodes.clear();
+		}
+		if (pageKeysByTypeCode.isEmpty() || changed.stream().noneMatch(pageKeysByTypeCode::containsKey))
+		{
+			return;
+		}
+
+		synchronized (pages)
+		{
+			for (final Integer typeCode : changed)
+			{
+				final Set<String> pageKeys = pageKeysByTypeCode.get(typeCode);
+				if (pageKeys != null)
+				{
+					for (final String pageKey : new ArrayList<>(pageKeys))
+					{
+						removePage(pageKey);
+						invalidations.incrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	public void invalidate()
+	{
+		synchronized (pages)
+		{
+			pages.clear();
+			pageKeysByTypeCode.clear();
+		}
+		typeCodes.clear();
+	}
+
+	public int size()
+	{
+		synchronized (pages)
+		{
+			return pages.size();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getInvalidations()
+	{
+		return invalidations.get();
+	}
+
+	@Required
+	public void setTypeService(final TypeService typeService)
+	{
+		this.typeService = typeService;
+	}
+
+	@Required
+	public void setModelService(final ModelService modelService)
+	{
+		this.modelService = modelService;
+	}
+
+	/**
+	 * One cached result page.
+	 */
+	public static final class CachedPage
+	{
+		private final List<PK> pks;
+		private final int totalCount;
+		private final Set<Integer> typeCodes;
+		private final long expiresAt;
+
+		private CachedPage(final List<PK> pks, final int totalCount, final Set<Integer> typeCodes, final long expiresAt)
+		{
+			this.pks = Collections.unmodifiableList(pks);
+			this.totalCount = totalCount;
+			this.typeCodes = typeCodes;
+			this.expiresAt = expiresAt;
+		}
+
+		public List<PK> getPks()
+		{
+			return pks;
+		}
+
+		public int getTotalCount()
+		{
+			return totalCount;
+		}
+
+		private boolean isExpired()
+		{
+			return System.currentTimeMillis() > expiresAt;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * What is known about one collated Backoffice search. The strategy creates it with the build figures when the query is
+ * built, {@link CollateGenericSearchService} derives a copy with the execution figures for every execution of the
+ * query.
+ */
+public final class CollateSearchTrace
+{
+	private final String typeCode;
+	private final String sortAttribute;
+	private final String sortKind;
+	private final String language;
+	private final String collation;
+	private final long buildNanos;
+
+	private final long executionNanos;
+	private final int rowCount;
+	private final int totalCount;
+	private final boolean polyglotBypassed;
+	private final boolean inMemorySorted;
+	private final boolean cached;
+
+	public CollateSearchTrace(final String typeCode, final String sortAttribute, final String sortKind, final String language,
+			final String collation, final long buildNanos)
+	{
+		this(typeCode, sortAttribute, sortKind, language, collation, buildNanos, -1, -1, -1, false, false, false);
+	}
+
+	private CollateSearchTrace(final String typeCode, final String sortAttribute, final String sortKind, final String language,
+			final String collation, final long buildNanos, final long executionNanos, final int rowCount, final int totalCount,
+			final boolean polyglotBypassed, final boolean inMemorySorted, final boolean cached)
+	{
+		this.typeCode = typeCode;
+		this.sortAttribute = sortAttribute;
+		this.sortKind = sortKind;
+		this.language = language;
+		this.collation = collation;
+		this.buildNanos = buildNanos;
+		this.executionNanos = executionNanos;
+		this.rowCount = rowCount;
+		this.totalCount = totalCount;
+		this.polyglotBypassed = polyglotBypassed;
+		this.inMemorySorted = inMemorySorted;
+		this.cached = cached;
+	}
+
+	/**
+	 * @return copy of this trace carrying the figures of one execution
+	 */
+	public CollateSearchTrace executed(final long executionNanos, final int rowCount, final int totalCount,
+			final boolean polyglotBypassed, final boolean inMemorySorted, final boolean cached)
+	{
+		return new CollateSearchTrace(typeCode, sortAttribute, sortKind, language, collation, buildNanos, executionNanos,
+				rowCount, totalCount, polyglotBypassed, inMemorySorted, cached);
+	}
+
+	public String getTypeCode()
+	{
+		return typeCode;
+	}
+
+	public String getSortAttribute()
+	{
+		return sortAttribute;
+	}
+
+	/**
+	 * @return name of the {@link CollateSortMetadata.SortKind} of the sort attribute, <code>null</code> if unsorted
+	 */
+	public String getSortKind()
+	{
+		return sortKind;
+	}
+
+	public String getLanguage()
+	{
+		return language;
+	}
+
+	public String getCollation()
+	{
+		return collation;
+	}
+
+	public long getBuildMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(buildNanos);
+	}
+
+	public long getBuildNanos()
+	{
+		return buildNanos;
+	}
+
+	public long getExecutionMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(executionNanos);
+	}
+
+	public long getExecutionNanos()
+	{
+		return executionNanos;
+	}
+
+	public int getRowCount()
+	{
+		return rowCount;
+	}
+
+	public int getTotalCount()
+	{
+		return totalCount;
+	}
+
+	/**
+	 * @return <code>true</code> if the query could have used the polyglot dialect but its order by prevented it
+	 */
+	public boolean isPolyglotBypassed()
+	{
+		return polyglotBypassed;
+	}
+
+	public boolean isInMemorySorted()
+	{
+		return inMemorySorted;
+	}
+
+	/**
+	 * @return <code>true</code> if the page was served by the {@link CollateSearchResultCache}
+	 */
+	public boolean isCached()
+	{
+		return cached;
+	}
+}
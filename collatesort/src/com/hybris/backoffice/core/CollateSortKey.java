@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.commons.lang.StringUtils;
+
+
+/**
+ * One key of a multi-attribute sort: the attribute, its direction and optionally its own collation. Keys are
+ * configured per type as <code>qualifier[:asc|desc[:collation]]</code>, separated by commas, e.g.
+ * <code>name:asc,code:desc:Latin1_General_CS_AS</code>.
+ */
+public final class CollateSortKey
+{
+	private final String qualifier;
+
+	private final boolean ascending;
+
+	private final String collateType;
+
+	/**
+	 * @param qualifier
+	 *           the sorted attribute
+	 * @param ascending
+	 *           direction of the key
+	 * @param collateType
+	 *           collation of the key, <code>null</code> for the collation of the current language
+	 */
+	public CollateSortKey(final String qualifier, final boolean ascending, final String collateType)
+	{
+		this.qualifier = qualifier;
+		this.ascending = ascending;
+		this.collateType = collateType;
+	}
+
+	/**
+	 * Parses a comma separated list of keys, blank entries are ignored.
+	 *
+	 * @throws IllegalArgumentException
+	 *            if a direction is neither <code>asc</code> nor <code>desc</code>
+	 */
+	public static List<CollateSortKey> parseList(final String value)
+	{
+		if (StringUtils.isBlank(value))
+		{
+			return Collections.emptyList();
+		}
+		final List<CollateSortKey> keys = new ArrayList<>();
+		for (final String entry : StringUtils.split(value, ','))
+		{
+			if (StringUtils.isBlank(entry))
+			{
+				continue;
+			}
+			final String[] parts = StringUtils.splitPreserveAllTokens(entry.trim(), ':');
+			final String direction = parts.length > 1 ? StringUtils.trimToEmpty(parts[1]) : "asc";
+			if (!"asc".equalsIgnoreCase(direction) && !"desc".equalsIgnoreCase(direction))
+			{
+				throw new IllegalArgumentException("Invalid sort direction '" + direction + "' in " + value);
+			}
+			keys.add(new CollateSortKey(parts[0].trim(), "asc".equalsIgnoreCase(direction),
+					parts.length > 2 ? StringUtils.trimToNull(parts[2]) : null));
+		}
+		return Collections.unmodifiableList(keys);
+	}
+
+	public String getQualifier()
+	{
+		return qualifier;
+	}
+
+	public boolean isAscending()
+	{
+		return ascending;
+	}
+
+	public String getCollateType()
+	{
+		return collateType;
+	}
+
+	@Override
+	public String toString()
+	{
+		return qualifier + ':' + (ascending ? "asc" : "desc") + (collateType == null ? "" : ":" + collateType);
+	}
+
+	@Override
+	public boolean equals(final Object o)
+	{
+		if (this == o) return true;
+		if (!(o instanceof CollateSortKey)) return false;
+		final CollateSortKey that = (CollateSortKey) o;
+		return ascending == that.ascending && qualifier.equals(that.qualifier) && Objects.equals(collateType, that.collateType);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(qualifier, Boolean.valueOf(ascending), collateType);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+/**
+ * Language independent sort metadata of one (type, sort attribute) pair: how the attribute is sorted and, for
+ * enumerations, which enumeration type ranks its values. The order by of each search is still built from it, with the
+ * sort direction and the collation of the current language.
+ */
+public final class CollateSortMetadata
+{
+	public enum SortKind
+	{
+		/** the attribute does not exist or cannot be sorted */
+		NONE,
+		/** sorted by the plain column */
+		PLAIN,
+		/** localized attribute, sorted with the collation of the current language if one is configured */
+		LOCALIZED,
+		/** enumeration attribute, sorted by the localized names of its values */
+		ENUM
+	}
+
+	private static final CollateSortMetadata UNSORTABLE = new CollateSortMetadata(SortKind.NONE, null);
+	private static final CollateSortMetadata PLAIN = new CollateSortMetadata(SortKind.PLAIN, null);
+	private static final CollateSortMetadata LOCALIZED = new CollateSortMetadata(SortKind.LOCALIZED, null);
+
+	private final SortKind sortKind;
+
+	private final String enumTypeCode;
+
+	private CollateSortMetadata(final SortKind sortKind, final String enumTypeCode)
+	{
+		this.sortKind = sortKind;
+		this.enumTypeCode = enumTypeCode;
+	}
+
+	public static CollateSortMetadata unsortable()
+	{
+		return UNSORTABLE;
+	}
+
+	public static CollateSortMetadata plain()
+	{
+		return PLAIN;
+	}
+
+	public static CollateSortMetadata localized()
+	{
+		return LOCALIZED;
+	}
+
+	public static CollateSortMetadata enumeration(final String enumTypeCode)
+	{
+		return new CollateSortMetadata(SortKind.ENUM, enumTypeCode);
+	}
+
+	public SortKind getSortKind()
+	{
+		return sortKind;
+	}
+
+	/**
+	 * @return code of the enumeration type for {@link SortKind#ENUM} attributes, <code>null</code> otherwise
+	 */
+	public String getEnumTypeCode()
+	{
+		return enumTypeCode;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SortMetadata(" + sortKind + (enumTypeCode == null ? "" : "," + enumTypeCode) + ")";
+	}
+}
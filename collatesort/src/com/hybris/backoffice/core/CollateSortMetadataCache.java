@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+import de.hybris.platform.util.Config;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * Bounded LRU cache of {@link CollateSortMetadata} keyed by type code and sort attribute, so that sorted searches do
+ * not look up the sort attribute in the type system each time. The cache is dropped when an attribute descriptor or a
+ * composed type is saved or removed; beyond <code>collatesort.sortmetadata.cache.maxsize</code> entries the least
+ * recently used entry is evicted.
+ */
+public class CollateSortMetadataCache implements AfterSaveListener
+{
+	private final Map<String, CollateSortMetadata> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param typeCode
+	 *           searched type
+	 * @param sortAttribute
+	 *           qualifier of the sort attribute
+	 * @param resolver
+	 *           looks up the sort metadata in the type system on a cache miss
+	 * @return cached or freshly resolved sort metadata
+	 */
+	public CollateSortMetadata get(final String typeCode, final String sortAttribute,
+			final BiFunction<String, String, CollateSortMetadata> resolver)
+	{
+		final String key = typeCode + '|' + sortAttribute;
+		synchronized (entries)
+		{
+			final CollateSortMetadata cached = entries.get(key);
+			if (cached != null)
+			{
+				hits.incrementAndGet();
+				return cached;
+			}
+		}
+
+		misses.incrementAndGet();
+		final CollateSortMetadata metadata = resolver.apply(typeCode, sortAttribute);
+		final int maxSize = getMaxSize();
+		synchronized (entries)
+		{
+			entries.put(key, metadata);
+			while (entries.size() > maxSize)
+			{
+				entries.remove(entries.keySet().iterator().next());
+			}
+		}
+		return metadata;
+	}
+
+	@Override
+	public void afterSave(final Collection<AfterSaveEvent> events)
+	{
+		if (size() > 0 && events.stream().anyMatch(this::isTypeSystemEvent))
+		{
+			invalidate();
+		}
+	}
+
+	private boolean isTypeSystemEvent(final AfterSaveEvent event)
+	{
+		final int typeCode = event.getPk() == null ? -1 : event.getPk().getTypeCode();
+		return typeCode == Constants.TC.AttributeDescriptor || typeCode == Constants.TC.ComposedType;
+	}
+
+	protected int getMaxSize()
+	{
+		return Math.max(1, Config.getInt(CollatesortConstants.SORT_METADATA_CACHE_MAX_SIZE, 1000));
+	}
+
+	public void invalidate()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	public int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+}
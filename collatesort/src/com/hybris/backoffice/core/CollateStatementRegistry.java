@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import de.hybris.platform.util.Config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+
+
+/**
+ * Bounded registry of the distinct FlexibleSearch statements produced by collated searches. Every distinct statement
+ * text is compiled and cached separately by the database, so the number of distinct statements is what decides whether
+ * the plan cache can be reused across languages and attributes.
+ * <p>
+ * Executions are registered as a sample, see {@link CollateGenericSearchService#isStatementSampled()}: execution counts
+ * are sampled counts, and rarely run statements may be missing.
+ */
+public class CollateStatementRegistry
+{
+	private final Map<String, AtomicLong> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final ConcurrentMap<String, String> collations = new ConcurrentHashMap<>();
+
+	private final AtomicLong registrations = new AtomicLong();
+
+	private final AtomicLong distinct = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Records one execution of the given statement.
+	 *
+	 * @param statement
+	 *           FlexibleSearch text of the statement, values are bound as parameters and are not part of it
+	 */
+	public void register(final String statement)
+	{
+		registrations.incrementAndGet();
+		final int maxSize = Config.getInt(CollatesortConstants.STATEMENT_REGISTRY_MAX_SIZE, 1000);
+		synchronized (statements)
+		{
+			final AtomicLong count = statements.get(statement);
+			if (count != null)
+			{
+				count.incrementAndGet();
+				return;
+			}
+			distinct.incrementAndGet();
+			statements.put(statement, new AtomicLong(1));
+			if (statements.size() > maxSize)
+			{
+				statements.remove(statements.keySet().iterator().next());
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Collation names are case insensitive in SQL Server. Mapping all spellings of a collation to the first one seen keeps
+	 * languages configured with the same collation on the same statement text; nothing else of the statement is
+	 * rewritten.
+	 *
+	 * @return canonical spelling of the given collation
+	 */
+	public String canonicalCollation(final String collateType)
+	{
+		if (StringUtils.isBlank(collateType))
+		{
+			return collateType;
+		}
+		final String trimmed = collateType.trim();
+		return collations.computeIfAbsent(trimmed.toUpperCase(Locale.ROOT), key -> trimmed);
+	}
+
+	/**
+	 * @return number of distinct statements currently held
+	 */
+	public int getCachedStatementCount()
+	{
+		synchronized (statements)
+		{
+			return statements.size();
+		}
+	}
+
+	/**
+	 * @return number of distinct statements seen since startup, including evicted ones that were registered again
+	 */
+	public long getDistinctStatementCount()
+	{
+		return distinct.get();
+	}
+
+	public long getRegistrationCount()
+	{
+		return registrations.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * @return copy of the held statements with their execution counts, least recently used first
+	 */
+	public Map<String, Long> getStatements()
+	{
+		final Map<String, Long> copy = new LinkedHashMap<>();
+		synchronized (statements)
+		{
+			statements.forEach((statement, count) -> copy.put(statement, Long.valueOf(count.get())));
+		}
+		return Collections.unmodifiableMap(copy);
+	}
+
+	public void clear()
+	{
+		synchronized (statements)
+		{
+			statements.clear();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+
+/**
+ * Checks that the hex sort keys indexed for Solr order values like the collators used for the database collations.
+ */
+@UnitTest
+public class CollateCollatorsTest
+{
+	private static final List<String> VALUES = Arrays.asList( //
+			"\u5f20\u4e09", "\u674e\u56db", "\u738b\u4e94", "\u8d75\u516d", "\u963f", "\u5b89", "\u4e2d\u56fd", //
+			"\u4e2d\u6587", "\u65e5\u672c\u8a9e", "\u306b\u307b\u3093", "\u30cb\u30db\u30f3", "\ud55c\uad6d\uc5b4", //
+			"\u00c4pfel", "apfel", "Apfel", "Zebra", "zebra", "\u00e9clair", "eclair", "Eclair", "", "123", "a b", "ab");
+
+	@Test
+	public void shouldOrderSortKeysLikeTheCollator()
+	{
+		for (final String collateType : Arrays.asList("Chinese_PRC_CI_AI", "Chinese_Taiwan_Stroke_CI_AS", "Japanese_CS_AS",
+				"Korean_Wansung_CI_AS", "Latin1_General_CI_AI", "Latin1_General_BIN"))
+		{
+			final Collator collator = CollateCollators.getCollator(collateType, Locale.GERMAN);
+
+			final List<String> byCollator = new ArrayList<>(VALUES);
+			byCollator.sort(collator::compare);
+			final List<String> byKey = new ArrayList<>(VALUES);
+			byKey.sort(Comparator.comparing((String value) -> CollateCollators.sortKey(collator, value)));
+
+			for (int i = 0; i < VALUES.size(); i++)
+			{
+				assertEquals(collateType + " at " + i, 0, collator.compare(byCollator.get(i), byKey.get(i)));
+			}
+		}
+	}
+
+	@Test
+	public void shouldKeepNullValuesUnset()
+	{
+		assertNull(CollateCollators.sortKey(CollateCollators.getCollator("Chinese_PRC_CI_AI", Locale.CHINESE), null));
+	}
+
+	@Test
+	public void shouldTellAccentInsensitiveCollations()
+	{
+		assertTrue(CollateCollators.isAccentInsensitive("Chinese_PRC_CI_AI"));
+		assertTrue(CollateCollators.isAccentInsensitive("Latin1_General_CS_AI"));
+		assertFalse(CollateCollators.isAccentInsensitive("Chinese_Taiwan_Stroke_CI_AS"));
+		assertFalse(CollateCollators.isAccentInsensitive("Latin1_General_BIN"));
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.search.impl.SearchResultImpl;
+import de.hybris.platform.servicelayer.user.UserService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+
+/**
+ * Checks that {@link CollateCountService} counts the page query itself, without its order by, and when it reports an
+ * estimate instead.
+ */
+@UnitTest
+public class CollateCountServiceTest
+{
+	private static final String UNSORTED = "SELECT {pk} FROM {Product} WHERE {code} = ?code";
+
+	private static final int THRESHOLD = 100;
+
+	private boolean estimated;
+
+	private final CollateCountService service = new CollateCountService()
+	{
+		@Override
+		protected boolean isEstimated()
+		{
+			return estimated;
+		}
+
+		@Override
+		protected int getEstimateThreshold()
+		{
+			return THRESHOLD;
+		}
+
+		@Override
+		protected long getTimeToLive()
+		{
+			return 60000;
+		}
+	};
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private UserService userService;
+
+	private CollateSearchIndexService searchIndexService;
+
+	private CollateQuery query;
+
+	@Before
+	public void setUp()
+	{
+		flexibleSearchService = mock(FlexibleSearchService.class);
+		service.setFlexibleSearchService(flexibleSearchService);
+		userService = mock(UserService.class);
+		service.setUserService(userService);
+		searchIndexService = mock(CollateSearchIndexService.class);
+		service.setSearchIndexService(searchIndexService);
+		givenCurrentUser(1);
+		when(flexibleSearchService.search(any(FlexibleSearchQuery.class)))
+				.thenReturn(new SearchResultImpl<>(new ArrayList<Object>(Collections.singletonList(Integer.valueOf(42))), 1, -1, 0));
+
+		query = mock(CollateQuery.class);
+		when(query.getSearchTypeCode()).thenReturn("Product");
+		when(query.toUnsortedFlexibleSearch(anyMap())).thenAnswer(invocation -> {
+			((Map<String, Object>) invocation.getArguments()[0]).put("code", "x");
+			return UNSORTED;
+		});
+	}
+
+	@Test
+	public void shouldCountTheUnsortedPageQuery()
+	{
+		assertEquals(42, service.countUnsorted(query));
+
+		final ArgumentCaptor<FlexibleSearchQuery> captor = ArgumentCaptor.forClass(FlexibleSearchQuery.class);
+		verify(flexibleSearchService).search(captor.capture());
+		assertEquals("SELECT COUNT(*) FROM ({{ " + UNSORTED + " }}) x", captor.getValue().getQuery());
+		assertEquals("x", captor.getValue().getQueryParameters().get("code"));
+	}
+
+	@Test
+	public void shouldOnlyCountQueriesMarkedForSeparateCount()
+	{
+		when(query.hasCollateSearchOrderBy()).thenReturn(Boolean.TRUE);
+		assertFalse(service.isApplicable(query));
+
+		when(query.isSeparateCount()).thenReturn(Boolean.TRUE);
+		assertTrue(service.isApplicable(query));
+
+		when(query.hasCollateSearchOrderBy()).thenReturn(Boolean.FALSE);
+		assertFalse(service.isApplicable(query));
+	}
+
+	@Test
+	public void shouldReportTheTypeCountOfLargeTypesInEstimatedMode()
+	{
+		estimated = true;
+		givenCounts(THRESHOLD);
+
+		assertEquals(THRESHOLD, service.count(query));
+		assertEquals(THRESHOLD, service.count(query));
+
+		verify(flexibleSearchService, times(1)).search(any(FlexibleSearchQuery.class));
+	}
+
+	@Test
+	public void shouldCacheTypeCountsPerUser()
+	{
+		givenCounts(THRESHOLD, 7);
+
+		assertEquals(THRESHOLD, service.getTypeCount("Product", true));
+		givenCurrentUser(2);
+
+		assertEquals(7, service.getTypeCount("Product", true));
+		verify(flexibleSearchService, times(2)).search(any(FlexibleSearchQuery.class));
+	}
+
+	@Test
+	public void shouldCountExactlyForUsersWithActiveRestrictions()
+	{
+		estimated = true;
+		when(searchIndexService.hasActiveRestrictions("Product")).thenReturn(Boolean.TRUE);
+		givenCounts(42);
+
+		assertEquals(42, service.count(query));
+
+		final ArgumentCaptor<FlexibleSearchQuery> captor = ArgumentCaptor.forClass(FlexibleSearchQuery.class);
+		verify(flexibleSearchService).search(captor.capture());
+		assertTrue(captor.getValue().getQuery().startsWith("SELECT COUNT(*) FROM ({{"));
+	}
+
+	private void givenCurrentUser(final long pk)
+	{
+		final UserModel user = mock(UserModel.class);
+		when(user.getPk()).thenReturn(PK.fromLong(pk));
+		when(userService.getCurrentUser()).thenReturn(user);
+	}
+
+	private void givenCounts(final int first, final int... next)
+	{
+		final List<SearchResultImpl<Object>> results = new ArrayList<>();
+		for (final int count : next)
+		{
+			results.add(countResult(count));
+		}
+		when(flexibleSearchService.search(any(FlexibleSearchQuery.class))).thenReturn(countResult(first),
+				results.toArray(new SearchResultImpl[results.size()]));
+	}
+
+	private static SearchResultImpl<Object> countResult(final int count)
+	{
+		return new SearchResultImpl<>(new ArrayList<Object>(Collections.singletonList(Integer.valueOf(count))), 1, -1, 0);
+	}
+}
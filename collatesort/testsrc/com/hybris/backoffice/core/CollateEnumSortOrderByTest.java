@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.GenericSearchField;
+import de.hybris.platform.core.PK;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+
+/**
+ * Checks the <code>CASE</code> expression rendered for enumeration sorts.
+ */
+@UnitTest
+public class CollateEnumSortOrderByTest
+{
+	private static final PK FIRST = PK.fromLong(8796093055067L);
+	private static final PK SECOND = PK.fromLong(8796093087835L);
+	private static final PK THIRD = PK.fromLong(8796093120603L);
+
+	@Test
+	public void shouldRankValuesInTheGivenOrder()
+	{
+		final Map<String, Object> values = new HashMap<>();
+		final String statement = render(new CollateEnumRanking(Arrays.asList(SECOND, THIRD, FIRST)), true, values);
+
+		assertEquals("CASE {approvalStatus} WHEN ?collateEnumRank_approvalStatus_0 THEN 0"
+				+ " WHEN ?collateEnumRank_approvalStatus_1 THEN 1 WHEN ?collateEnumRank_approvalStatus_2 THEN 2 END ASC", statement);
+		assertEquals(SECOND, values.get("collateEnumRank_approvalStatus_0"));
+		assertEquals(THIRD, values.get("collateEnumRank_approvalStatus_1"));
+		assertEquals(FIRST, values.get("collateEnumRank_approvalStatus_2"));
+	}
+
+	@Test
+	public void shouldLeaveItemsWithoutValueToTheNullOrderingOfTheDatabase()
+	{
+		final String statement = render(new CollateEnumRanking(Arrays.asList(FIRST, SECOND)), false, new HashMap<>());
+
+		assertFalse(statement.contains("ELSE"));
+		assertTrue(statement.endsWith(" END DESC"));
+	}
+
+	@Test
+	public void shouldRenderTheSameStatementForEveryLanguage()
+	{
+		final String english = render(new CollateEnumRanking(Arrays.asList(FIRST, SECOND, THIRD)), true, new HashMap<>());
+		final String chinese = render(new CollateEnumRanking(Arrays.asList(THIRD, FIRST, SECOND)), true, new HashMap<>());
+
+		assertEquals(english, chinese);
+	}
+
+	@Test
+	public void shouldRankDuplicatesOnce()
+	{
+		final CollateEnumRanking ranking = new CollateEnumRanking(Arrays.asList(FIRST, SECOND, FIRST));
+
+		assertEquals(Arrays.asList(FIRST, SECOND), ranking.getValues());
+		assertEquals(2, ranking.getRank(THIRD));
+	}
+
+	private static String render(final CollateEnumRanking ranking, final boolean ascending, final Map<String, Object> values)
+	{
+		final GenericSearchField field = mock(GenericSearchField.class);
+		when(field.getQualifier()).thenReturn("approvalStatus");
+		doAnswer(invocation -> ((StringBuilder) invocation.getArguments()[0]).append("{approvalStatus}")).when(field)
+				.toFlexibleSearch(any(StringBuilder.class), any(Map.class), any(Map.class));
+
+		final StringBuilder statement = new StringBuilder();
+		new CollateEnumSortOrderBy(field, ascending, ranking).toFlexibleSearch(statement, new HashMap<>(), values);
+		return statement.toString();
+	}
+}
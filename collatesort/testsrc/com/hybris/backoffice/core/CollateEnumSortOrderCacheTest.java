@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.tx.AfterSaveEvent;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks when {@link CollateEnumSortOrderCache} ranks an enumeration again.
+ */
+@UnitTest
+public class CollateEnumSortOrderCacheTest
+{
+	private final TestCache cache = new TestCache();
+
+	private LanguageModel language;
+
+	@Before
+	public void setUp()
+	{
+		language = mock(LanguageModel.class);
+		when(language.getIsocode()).thenReturn("zh");
+	}
+
+	@Test
+	public void shouldRankEachEnumerationOncePerLanguage()
+	{
+		final Optional<CollateEnumRanking> ranking = cache.getRanking("ArticleApprovalStatus", language);
+
+		assertSame(ranking, cache.getRanking("ArticleApprovalStatus", language));
+		assertEquals(1, cache.created);
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void shouldRankAgainAfterTheTimeToLive()
+	{
+		cache.timeToLive = -1;
+
+		cache.getRanking("ArticleApprovalStatus", language);
+		cache.getRanking("ArticleApprovalStatus", language);
+
+		assertEquals(2, cache.created);
+	}
+
+	@Test
+	public void shouldRankAgainAfterAnEnumerationValueWasSaved()
+	{
+		cache.getRanking("ArticleApprovalStatus", language);
+
+		cache.afterSave(Collections.singletonList(event(PK.createFixedCounterPK(Constants.TC.EnumerationValue, 1))));
+		cache.getRanking("ArticleApprovalStatus", language);
+
+		assertEquals(2, cache.created);
+	}
+
+	@Test
+	public void shouldKeepRankingsWhenOtherItemsAreSaved()
+	{
+		cache.getRanking("ArticleApprovalStatus", language);
+
+		cache.afterSave(Collections.singletonList(event(PK.createFixedCounterPK(1, 1))));
+		cache.getRanking("ArticleApprovalStatus", language);
+
+		assertEquals(1, cache.created);
+	}
+
+	private static AfterSaveEvent event(final PK pk)
+	{
+		final AfterSaveEvent event = mock(AfterSaveEvent.class);
+		when(event.getPk()).thenReturn(pk);
+		when(event.getType()).thenReturn(Integer.valueOf(AfterSaveEvent.UPDATE));
+		return event;
+	}
+
+	private static final class TestCache extends CollateEnumSortOrderCache
+	{
+		private long timeToLive = 60000;
+		private int created;
+
+		@Override
+		protected Optional<CollateEnumRanking> createRanking(final String enumTypeCode, final LanguageModel language)
+		{
+			created++;
+			return Optional.of(new CollateEnumRanking(Collections.singletonList(PK.fromLong(created))));
+		}
+
+		@Override
+		protected long getTimeToLive()
+		{
+			return timeToLive;
+		}
+	}
+}
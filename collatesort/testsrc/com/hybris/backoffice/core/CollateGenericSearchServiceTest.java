@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.ItemModel;
+import de.hybris.platform.genericsearch.GenericSearchQuery;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.search.SearchResult;
+import de.hybris.platform.servicelayer.search.impl.SearchResultImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks the in-memory sort of {@link CollateGenericSearchService} and how it decides about it.
+ */
+@UnitTest
+public class CollateGenericSearchServiceTest
+{
+	private static final String COLLATION = "Latin1_General_CI_AI";
+	private static final int LIMIT = 3;
+
+	private final CollateGenericSearchService service = new CollateGenericSearchService();
+
+	private ModelService modelService;
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private CollateCountService countService;
+
+	private CollateSearchIndexService searchIndexService;
+
+	private CollateQuery query;
+
+	@Before
+	public void setUp()
+	{
+		modelService = mock(ModelService.class);
+		flexibleSearchService = mock(FlexibleSearchService.class);
+		countService = mock(CollateCountService.class);
+		service.setModelService(modelService);
+		service.setFlexibleSearchService(flexibleSearchService);
+		service.setCountService(countService);
+		searchIndexService = mock(CollateSearchIndexService.class);
+		service.setSearchIndexService(searchIndexService);
+
+		query = mock(CollateQuery.class);
+		when(query.getSearchTypeCode()).thenReturn("Product");
+		when(query.toUnsortedFlexibleSearch(anyMap())).thenReturn("SELECT {pk} FROM {Product}");
+	}
+
+	@Test
+	public void shouldSortLocalizedValuesWithTheCollatorAndNullsFirst()
+	{
+		final List<ItemModel> items = Arrays.asList(item(1, "Zebra", null), item(2, "apfel", null), item(3, null, null),
+				item(4, "Birne", null));
+
+		assertEquals(Arrays.asList(pk(3), pk(2), pk(4), pk(1)), pks(service.sortInMemory(items, sort(true))));
+		assertEquals(Arrays.asList(pk(1), pk(4), pk(2), pk(3)), pks(service.sortInMemory(items, sort(false))));
+	}
+
+	@Test
+	public void shouldBreakTiesBySecondaryKeyAndPk()
+	{
+		final List<ItemModel> items = Arrays.asList(item(5, "Apfel", "b"), item(4, "apfel", "a"), item(3, "\u00e4pfel", "b"),
+				item(2, "Birne", "a"));
+		final CollateInMemorySort sort = new CollateInMemorySort(Arrays.asList(
+				new CollateInMemorySort.Key("name", true, true, COLLATION), new CollateInMemorySort.Key("code", false, false, null)),
+				Locale.GERMAN, LIMIT);
+
+		assertEquals(Arrays.asList(pk(3), pk(5), pk(4), pk(2)), pks(service.sortInMemory(items, sort)));
+	}
+
+	@Test
+	public void shouldSortSmallTypesWithoutCounting()
+	{
+		when(countService.getTypeCount("Product", true)).thenReturn(Integer.valueOf(LIMIT));
+		givenUnsortedResult(item(1, "b", null), item(2, "a", null));
+		final CollateInMemorySort sort = sort(true);
+
+		service.sortOrFallback(query, sort);
+
+		assertFalse(sort.isExceeded());
+		assertEquals(Arrays.asList(pk(2), pk(1)), pks(sort.getSortedResult()));
+		verify(countService, never()).countUnsorted(query);
+	}
+
+	@Test
+	public void shouldLeaveUnconditionedSearchesOnLargeTypesToTheDatabase()
+	{
+		when(countService.getTypeCount(anyString(), anyBoolean())).thenReturn(Integer.valueOf(LIMIT + 1));
+		final CollateInMemorySort sort = sort(true);
+
+		service.sortOrFallback(query, sort);
+
+		assertTrue(sort.isExceeded());
+		assertNull(sort.getSortedResult());
+		verify(countService, never()).countUnsorted(query);
+		verify(flexibleSearchService, never()).search(any(FlexibleSearchQuery.class));
+	}
+
+	@Test
+	public void shouldCountConditionedSearchesOnLargeTypes()
+	{
+		when(countService.getTypeCount(anyString(), anyBoolean())).thenReturn(Integer.valueOf(1000));
+		when(query.hasConditions()).thenReturn(Boolean.TRUE);
+		when(countService.countUnsorted(query)).thenReturn(Integer.valueOf(LIMIT + 1));
+		final CollateInMemorySort sort = sort(true);
+
+		service.sortOrFallback(query, sort);
+
+		assertTrue(sort.isExceeded());
+		assertEquals(LIMIT + 1, sort.getMatchCount());
+		verify(flexibleSearchService, never()).search(any(FlexibleSearchQuery.class));
+	}
+
+	@Test
+	public void shouldSortConditionedSearchesWithFewMatches()
+	{
+		when(countService.getTypeCount(anyString(), anyBoolean())).thenReturn(Integer.valueOf(1000));
+		when(query.hasConditions()).thenReturn(Boolean.TRUE);
+		when(countService.countUnsorted(query)).thenReturn(Integer.valueOf(2));
+		givenUnsortedResult(item(1, "b", null), item(2, "a", null));
+		final CollateInMemorySort sort = sort(true);
+
+		service.sortOrFallback(query, sort);
+
+		assertFalse(sort.isExceeded());
+		assertEquals(Arrays.asList(pk(2), pk(1)), pks(sort.getSortedResult()));
+	}
+
+	@Test
+	public void shouldFallBackWhenTheTypeGrewSinceItWasCounted()
+	{
+		when(countService.getTypeCount(anyString(), anyBoolean())).thenReturn(Integer.valueOf(1));
+		givenUnsortedResult(item(1, "d", null), item(2, "c", null), item(3, "b", null), item(4, "a", null));
+		final CollateInMemorySort sort = sort(true);
+
+		service.sortOrFallback(query, sort);
+
+		assertTrue(sort.isExceeded());
+		assertNull(sort.getSortedResult());
+	}
+
+	@Test
+	public void shouldLeaveRestrictedIndexedSearchesToTheDatabase()
+	{
+		final CollateIndexedSearch indexedSearch = new CollateIndexedSearch("Product", "name", "x", null, true, "zh");
+		when(searchIndexService.hasActiveRestrictions("Product")).thenReturn(Boolean.TRUE);
+
+		assertNull(service.searchIndexed(new GenericSearchQuery(query), indexedSearch));
+		verify(searchIndexService, never()).search(indexedSearch);
+	}
+
+	@Test
+	public void shouldLoadOnlyTheRequestedPageOfIndexedMatches()
+	{
+		final CollateIndexedSearch indexedSearch = new CollateIndexedSearch("Product", "name", "x", null, true, "zh");
+		when(searchIndexService.search(indexedSearch))
+				.thenReturn(Optional.of(new ArrayList<>(Arrays.asList(pk(1), pk(2), pk(3), pk(4)))));
+		givenUnsortedResult(item(3, null, null), item(2, null, null));
+		final GenericSearchQuery searchQuery = new GenericSearchQuery(query);
+		searchQuery.setStart(1);
+		searchQuery.setCount(2);
+
+		final SearchResult<ItemModel> result = service.searchIndexed(searchQuery, indexedSearch);
+
+		assertEquals(4, result.getTotalCount());
+		assertEquals(Arrays.asList(pk(2), pk(3)), pks(result.getResult()));
+	}
+
+	private void givenUnsortedResult(final ItemModel... items)
+	{
+		when(flexibleSearchService.search(any(FlexibleSearchQuery.class)))
+				.thenReturn(new SearchResultImpl<>(new ArrayList<Object>(Arrays.asList(items)), items.length, -1, 0));
+	}
+
+	private static CollateInMemorySort sort(final boolean ascending)
+	{
+		return new CollateInMemorySort(Collections.singletonList(new CollateInMemorySort.Key("name", ascending, true, COLLATION)),
+				Locale.GERMAN, LIMIT);
+	}
+
+	private ItemModel item(final long pk, final String name, final String code)
+	{
+		final ItemModel item = mock(ItemModel.class);
+		when(item.getPk()).thenReturn(pk(pk));
+		when(modelService.getAttributeValue(item, "name", Locale.GERMAN)).thenReturn(name);
+		when(modelService.getAttributeValue(item, "code")).thenReturn(code);
+		return item;
+	}
+
+	private static PK pk(final long pk)
+	{
+		return PK.fromLong(pk);
+	}
+
+	private static List<PK> pks(final List<?> items)
+	{
+		final List<PK> pks = new ArrayList<>();
+		items.forEach(item -> pks.add(((ItemModel) item).getPk()));
+		return pks;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Checks matching, sorting, updates and persistence of {@link CollateNgramIndex}.
+ */
+@UnitTest
+public class CollateNgramIndexTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CollateNgramIndex index = new CollateNgramIndex(Locale.CHINESE, Collator.getInstance(Locale.CHINESE),
+			System.currentTimeMillis());
+
+	@Test
+	public void shouldFindCjkSubstringsWithoutWordBoundaries()
+	{
+		index.put(pk(1), "\u4e2d\u6587\u624b\u673a");
+		index.put(pk(2), "\u82f1\u6587\u624b\u518c");
+		index.put(pk(3), "\u624b");
+
+		assertEquals(new HashSet<>(Arrays.asList(pk(1), pk(2))), new HashSet<>(index.contains("\u6587\u624b")));
+		assertEquals(new HashSet<>(Arrays.asList(pk(1), pk(2), pk(3))), new HashSet<>(index.contains("\u624b")));
+		assertEquals(Collections.singletonList(pk(1)), index.contains("\u4e2d\u6587\u624b\u673a"));
+		assertTrue(index.contains("\u624b\u6587").isEmpty());
+	}
+
+	@Test
+	public void shouldMatchCaseInsensitively()
+	{
+		index.put(pk(1), "Smart Phone");
+
+		assertEquals(Collections.singletonList(pk(1)), index.contains("PHONE"));
+		assertEquals(Collections.singletonList(pk(1)), index.contains(" smart "));
+	}
+
+	@Test
+	public void shouldIgnoreAccentsForAccentInsensitiveCollations()
+	{
+		final CollateNgramIndex insensitive = new CollateNgramIndex(Locale.FRENCH, Collator.getInstance(Locale.FRENCH), true,
+				System.currentTimeMillis());
+		insensitive.put(pk(1), "Caf\u00e9 cr\u00e8me");
+		insensitive.put(pk(2), "Cafe noir");
+		insensitive.put(pk(3), "The");
+
+		assertEquals(new HashSet<>(Arrays.asList(pk(1), pk(2))), new HashSet<>(insensitive.contains("cafe")));
+		assertEquals(new HashSet<>(Arrays.asList(pk(1), pk(2))), new HashSet<>(insensitive.contains("CAF\u00c9")));
+		assertEquals(Collections.singletonList(pk(1)), insensitive.contains("creme"));
+		// decomposed input folds the same way as precomposed input
+		assertEquals(Collections.singletonList(pk(1)), insensitive.contains("cre\u0300me"));
+	}
+
+	@Test
+	public void shouldKeepAccentsForAccentSensitiveCollations()
+	{
+		final CollateNgramIndex sensitive = new CollateNgramIndex(Locale.FRENCH, Collator.getInstance(Locale.FRENCH), false,
+				System.currentTimeMillis());
+		sensitive.put(pk(1), "Caf\u00e9");
+		sensitive.put(pk(2), "Cafe");
+
+		assertEquals(Collections.singletonList(pk(1)), sensitive.contains("caf\u00e9"));
+		assertEquals(Collections.singletonList(pk(2)), sensitive.contains("cafe"));
+	}
+
+	@Test
+	public void shouldKeepHangulSyllablesWhenFoldingAccents()
+	{
+		final CollateNgramIndex insensitive = new CollateNgramIndex(Locale.KOREAN, Collator.getInstance(Locale.KOREAN), true,
+				System.currentTimeMillis());
+		insensitive.put(pk(1), "\ud55c\uad6d\uc5b4");
+
+		assertEquals(Collections.singletonList(pk(1)), insensitive.contains("\uad6d\uc5b4"));
+		assertEquals(1, insensitive.size());
+	}
+
+	@Test
+	public void shouldReturnAllItemsForEmptyTerm()
+	{
+		index.put(pk(1), "a");
+		index.put(pk(2), "b");
+
+		assertEquals(2, index.contains("").size());
+	}
+
+	@Test
+	public void shouldReplaceValueOnUpdate()
+	{
+		index.put(pk(1), "\u624b\u673a");
+		index.put(pk(1), "\u7535\u8111");
+
+		assertTrue(index.contains("\u624b\u673a").isEmpty());
+		assertEquals(Collections.singletonList(pk(1)), index.contains("\u7535\u8111"));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void shouldRemoveItems()
+	{
+		index.put(pk(1), "\u624b\u673a");
+		index.put(pk(2), "\u624b\u673a");
+		index.remove(pk(1));
+		index.put(pk(2), null);
+
+		assertTrue(index.contains("\u624b\u673a").isEmpty());
+		assertEquals(0, index.size());
+		assertNull(index.getCollationKey(pk(1)));
+	}
+
+	@Test
+	public void shouldCompactDeletedDocuments()
+	{
+		final int count = 2000;
+		for (int i = 0; i < count; i++)
+		{
+			index.put(pk(i), "\u65e7" + i);
+		}
+		for (int i = 0; i < count; i++)
+		{
+			index.put(pk(i), "\u65b0" + i);
+		}
+
+		assertTrue(index.documentCount() < 2 * count);
+		assertEquals(count, index.size());
+		assertTrue(index.contains("\u65e7").isEmpty());
+		assertEquals(count, index.contains("\u65b0").size());
+		assertEquals(Collections.singletonList(pk(1234)), index.contains("\u65b01234"));
+	}
+
+	@Test
+	public void shouldSortByCollationWithNullsFirstAndTiesByPk()
+	{
+		final CollateNgramIndex german = new CollateNgramIndex(Locale.GERMAN, Collator.getInstance(Locale.GERMAN), 0);
+		german.put(pk(1), "Zebra");
+		german.put(pk(2), "\u00e4pfel");
+		german.put(pk(3), "Birne");
+		german.put(pk(5), "Birne");
+		final List<PK> pks = new ArrayList<>(Arrays.asList(pk(5), pk(1), pk(4), pk(3), pk(2)));
+
+		german.sort(pks, true);
+		assertEquals(Arrays.asList(pk(4), pk(2), pk(3), pk(5), pk(1)), pks);
+
+		german.sort(pks, false);
+		assertEquals(Arrays.asList(pk(1), pk(3), pk(5), pk(2), pk(4)), pks);
+	}
+
+	@Test
+	public void shouldReadWhatWasWritten() throws IOException
+	{
+		final CollateNgramIndex written = new CollateNgramIndex(Locale.CHINESE, Collator.getInstance(Locale.CHINESE), 42);
+		written.put(pk(1), "\u4e2d\u6587");
+		written.put(pk(2), "\u82f1\u6587");
+		written.remove(pk(2));
+		assertTrue(written.isDirty());
+		final File file = new File(folder.getRoot(), "index/Product_name_zh.idx");
+
+		written.writeTo(file);
+		final CollateNgramIndex read = CollateNgramIndex.readFrom(file, Locale.CHINESE, Collator.getInstance(Locale.CHINESE),
+				false);
+
+		assertFalse(written.isDirty());
+		assertFalse(read.isDirty());
+		assertEquals(42, read.getCreatedAt());
+		assertEquals(1, read.size());
+		assertEquals(Collections.singletonList(pk(1)), read.contains("\u6587"));
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectForeignFiles() throws IOException
+	{
+		final File file = folder.newFile("foreign.idx");
+		try (final GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file)))
+		{
+			out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		}
+
+		CollateNgramIndex.readFrom(file, Locale.CHINESE, Collator.getInstance(Locale.CHINESE), false);
+	}
+
+	private static PK pk(final long pk)
+	{
+		return PK.fromLong(pk + 1);
+	}
+}
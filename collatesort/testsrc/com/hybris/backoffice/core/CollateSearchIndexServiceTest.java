@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.core.model.type.ComposedTypeModel;
+import de.hybris.platform.core.model.type.SearchRestrictionModel;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.jalo.type.ComposedType;
+import de.hybris.platform.search.restriction.SearchRestrictionService;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.search.impl.SearchResultImpl;
+import de.hybris.platform.servicelayer.session.Session;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.tx.AfterSaveEvent;
+
+import java.io.File;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Checks searches, updates, shutdown and the restriction check of {@link CollateSearchIndexService}.
+ */
+@UnitTest
+public class CollateSearchIndexServiceTest
+{
+	private static final int PRODUCT = 1;
+	private static final int VARIANT = 2;
+	private static final String KEY = "Product|name|de";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Map<PK, String> values = new LinkedHashMap<>();
+
+	private final TestService service = new TestService();
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private UserService userService;
+
+	private SearchRestrictionService searchRestrictionService;
+
+	private ComposedTypeModel productType;
+
+	private ComposedTypeModel variantType;
+
+	@Before
+	public void setUp()
+	{
+		flexibleSearchService = mock(FlexibleSearchService.class);
+		userService = mock(UserService.class);
+		searchRestrictionService = mock(SearchRestrictionService.class);
+		final CommonI18NService commonI18NService = mock(CommonI18NService.class);
+		final TypeService typeService = mock(TypeService.class);
+		final ModelService modelService = mock(ModelService.class);
+		final SessionService sessionService = mock(SessionService.class);
+
+		final LanguageModel german = mock(LanguageModel.class);
+		when(commonI18NService.getLanguage("de")).thenReturn(german);
+		when(commonI18NService.getLocaleForLanguage(german)).thenReturn(Locale.GERMAN);
+
+		productType = mock(ComposedTypeModel.class);
+		variantType = mock(ComposedTypeModel.class);
+		when(typeService.getComposedTypeForCode("Product")).thenReturn(productType);
+		when(productType.getAllSubTypes()).thenReturn(Collections.singletonList(variantType));
+		when(productType.getAllSuperTypes()).thenReturn(Collections.emptyList());
+		when(modelService.<ComposedType> getSource(productType)).thenReturn(jaloType(PRODUCT));
+		when(modelService.<ComposedType> getSource(variantType)).thenReturn(jaloType(VARIANT));
+
+		when(sessionService.createNewSession()).thenReturn(mock(Session.class));
+		when(sessionService.executeInLocalView(any(SessionExecutionBody.class), any(UserModel.class)))
+				.thenAnswer(invocation -> ((SessionExecutionBody) invocation.getArguments()[0]).execute());
+
+		service.setFlexibleSearchService(flexibleSearchService);
+		service.setCommonI18NService(commonI18NService);
+		service.setTypeService(typeService);
+		service.setModelService(modelService);
+		service.setSessionService(sessionService);
+		service.setUserService(userService);
+		service.setSearchRestrictionService(searchRestrictionService);
+		service.init();
+
+		values.put(pk(PRODUCT, 1), "rote Birne");
+		values.put(pk(PRODUCT, 2), "Apfel");
+		values.put(pk(PRODUCT, 3), "gelbe Birne");
+		values.put(pk(VARIANT, 1), "Birne");
+	}
+
+	@After
+	public void tearDown()
+	{
+		service.destroy();
+	}
+
+	@Test
+	public void shouldNotAnswerBeforeIndexIsReady()
+	{
+		assertFalse(service.search(search("birne", null)).isPresent());
+	}
+
+	@Test
+	public void shouldSearchAndSortByCollation()
+	{
+		service.prepareIndex(KEY, "Product", "name", "de", false);
+
+		assertEquals(Optional.of(Arrays.asList(pk(VARIANT, 1), pk(PRODUCT, 3), pk(PRODUCT, 1))),
+				service.search(search("BIRNE", "name")));
+		final List<PK> byPk = new ArrayList<>(Arrays.asList(pk(VARIANT, 1), pk(PRODUCT, 3), pk(PRODUCT, 1)));
+		byPk.sort(null);
+		assertEquals(Optional.of(byPk), service.search(search("birne", null)));
+	}
+
+	@Test
+	public void shouldApplySavedAndRemovedItemsAndWriteIndexOnShutdown()
+	{
+		service.prepareIndex(KEY, "Product", "name", "de", false);
+		final List<Object> row = Arrays.asList(pk(PRODUCT, 1), "Apfel rot");
+		when(flexibleSearchService.search(any(FlexibleSearchQuery.class)))
+				.thenReturn(new SearchResultImpl<>(new ArrayList<>(Collections.singletonList(row)), 1, -1, 0));
+		final File file = service.getIndexFile(KEY);
+		assertTrue(file.delete());
+
+		service.afterSave(Arrays.asList(event(pk(PRODUCT, 1), AfterSaveEvent.UPDATE),
+				event(pk(VARIANT, 1), AfterSaveEvent.REMOVE), event(PK.createFixedCounterPK(30, 1), AfterSaveEvent.REMOVE)));
+		service.destroy();
+
+		assertEquals(Optional.of(Collections.singletonList(pk(PRODUCT, 3))), service.search(search("birne", null)));
+		assertEquals(Optional.of(Arrays.asList(pk(PRODUCT, 2), pk(PRODUCT, 1))), service.search(search("apfel", "name")));
+		assertTrue(file.isFile());
+	}
+
+	@Test
+	public void shouldIgnoreRestrictionsOfAdmins()
+	{
+		final UserModel admin = mock(UserModel.class);
+		when(userService.getCurrentUser()).thenReturn(admin);
+		when(userService.isAdmin(admin)).thenReturn(Boolean.TRUE);
+		when(searchRestrictionService.isSearchRestrictionsEnabled()).thenReturn(Boolean.TRUE);
+
+		assertFalse(service.hasActiveRestrictions("Product"));
+	}
+
+	@Test
+	public void shouldIgnoreRestrictionsWhenDisabled()
+	{
+		when(userService.getCurrentUser()).thenReturn(mock(UserModel.class));
+		when(searchRestrictionService.isSearchRestrictionsEnabled()).thenReturn(Boolean.FALSE);
+
+		assertFalse(service.hasActiveRestrictions("Product"));
+	}
+
+	@Test
+	public void shouldDetectRestrictionsOfSubtypes()
+	{
+		final UserModel user = mock(UserModel.class);
+		when(userService.getCurrentUser()).thenReturn(user);
+		when(searchRestrictionService.isSearchRestrictionsEnabled()).thenReturn(Boolean.TRUE);
+		when(searchRestrictionService.getActiveSearchRestrictions(eq(user), eq(true), anyCollection()))
+				.thenAnswer(invocation -> ((Collection<?>) invocation.getArguments()[2]).contains(variantType)
+						? Collections.singletonList(mock(SearchRestrictionModel.class))
+						: Collections.emptyList());
+
+		assertTrue(service.hasActiveRestrictions("Product"));
+	}
+
+	private static CollateIndexedSearch search(final String term, final String sortAttribute)
+	{
+		return new CollateIndexedSearch("Product", "name", term, sortAttribute, true, "de");
+	}
+
+	private static AfterSaveEvent event(final PK pk, final int type)
+	{
+		final AfterSaveEvent event = mock(AfterSaveEvent.class);
+		when(event.getPk()).thenReturn(pk);
+		when(event.getType()).thenReturn(Integer.valueOf(type));
+		return event;
+	}
+
+	private static ComposedType jaloType(final int typeCode)
+	{
+		final ComposedType type = mock(ComposedType.class);
+		when(type.getItemTypeCode()).thenReturn(Integer.valueOf(typeCode));
+		return type;
+	}
+
+	private static PK pk(final int typeCode, final long counter)
+	{
+		return PK.createFixedCounterPK(typeCode, counter);
+	}
+
+	private class TestService extends CollateSearchIndexService
+	{
+		@Override
+		protected ExecutorService createExecutor()
+		{
+			return Executors.newSingleThreadExecutor();
+		}
+
+		@Override
+		protected CollateNgramIndex buildIndex(final String typeCode, final String attribute, final String isocode,
+				final Locale locale, final Collator collator, final boolean accentInsensitive)
+		{
+			final CollateNgramIndex index = new CollateNgramIndex(locale, collator, accentInsensitive, System.currentTimeMillis());
+			values.forEach(index::put);
+			return index;
+		}
+
+		@Override
+		protected long getMaxAge()
+		{
+			return 60_000;
+		}
+
+		@Override
+		protected long getShutdownTimeout()
+		{
+			return 10_000;
+		}
+
+		@Override
+		protected String getCollation(final String isocode)
+		{
+			return null;
+		}
+
+		@Override
+		protected File getIndexFile(final String key)
+		{
+			return new File(folder.getRoot(), key.replace('|', '_') + ".idx");
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.tx.AfterSaveEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+/**
+ * Checks keying, expiry, eviction and invalidation of {@link CollateSearchResultCache}.
+ */
+@UnitTest
+public class CollateSearchResultCacheTest
+{
+	private static final int PRODUCT = 1;
+	private static final int VARIANT = 2;
+	private static final int CATEGORY = 142;
+	private static final int MEDIA = 30;
+
+	private final TestCache cache = new TestCache();
+
+	@Test
+	public void shouldKeyPagesBySearchAndPageBounds()
+	{
+		final String key = CollateSearchResultCache.pageKey("search", 0, 50, true);
+
+		assertEquals(key, CollateSearchResultCache.pageKey("search", 0, 50, true));
+		assertNotEquals(key, CollateSearchResultCache.pageKey("search", 50, 50, true));
+		assertNotEquals(key, CollateSearchResultCache.pageKey("search", 0, 20, true));
+		assertNotEquals(key, CollateSearchResultCache.pageKey("search", 0, 50, false));
+		assertNotEquals(key, CollateSearchResultCache.pageKey("other", 0, 50, true));
+	}
+
+	@Test
+	public void shouldServeCachedPage()
+	{
+		final List<PK> pks = Arrays.asList(pk(PRODUCT, 1), pk(PRODUCT, 2));
+		cache.put("page", "Product", false, pks, 7);
+
+		final CollateSearchResultCache.CachedPage page = cache.get("page");
+
+		assertNotNull(page);
+		assertEquals(pks, page.getPks());
+		assertEquals(7, page.getTotalCount());
+		assertEquals(1, cache.getHits());
+		assertNull(cache.get("other"));
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void shouldNotServeExpiredPage()
+	{
+		cache.timeToLive = -1;
+		cache.put("page", "Product", false, Collections.singletonList(pk(PRODUCT, 1)), 1);
+
+		assertNull(cache.get("page"));
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsedPage()
+	{
+		cache.maxSize = 2;
+		cache.put("first", "Product", false, Collections.singletonList(pk(PRODUCT, 1)), 1);
+		cache.put("second", "Product", false, Collections.singletonList(pk(PRODUCT, 2)), 1);
+		cache.get("first");
+		cache.put("third", "Product", false, Collections.singletonList(pk(PRODUCT, 3)), 1);
+
+		assertNotNull(cache.get("first"));
+		assertNull(cache.get("second"));
+		assertNotNull(cache.get("third"));
+	}
+
+	@Test
+	public void shouldInvalidatePagesOfChangedSearchType()
+	{
+		cache.put("products", "Product", true, Collections.singletonList(pk(PRODUCT, 1)), 1);
+		cache.put("categories", "Category", false, Collections.singletonList(pk(CATEGORY, 1)), 1);
+
+		cache.afterSave(Collections.singletonList(event(pk(VARIANT, 9))));
+
+		assertNull(cache.get("products"));
+		assertNotNull(cache.get("categories"));
+		assertEquals(1, cache.getInvalidations());
+	}
+
+	@Test
+	public void shouldInvalidatePagesContainingChangedItemType()
+	{
+		cache.put("products", "Product", false, Arrays.asList(pk(PRODUCT, 1), pk(MEDIA, 1)), 2);
+
+		cache.afterSave(Collections.singletonList(event(pk(MEDIA, 5))));
+
+		assertNull(cache.get("products"));
+	}
+
+	@Test
+	public void shouldKeepPagesOnUnrelatedChanges()
+	{
+		cache.put("products", "Product", false, Collections.singletonList(pk(PRODUCT, 1)), 1);
+
+		cache.afterSave(Collections.singletonList(event(pk(MEDIA, 5))));
+
+		assertNotNull(cache.get("products"));
+		assertEquals(0, cache.getInvalidations());
+	}
+
+	@Test
+	public void shouldNotInvalidateReplacedPageTwice()
+	{
+		cache.put("products", "Product", false, Collections.singletonList(pk(MEDIA, 1)), 1);
+		cache.put("products", "Product", false, Collections.singletonList(pk(PRODUCT, 1)), 1);
+
+		cache.afterSave(Collections.singletonList(event(pk(MEDIA, 5))));
+
+		assertNotNull(cache.get("products"));
+	}
+
+	private static AfterSaveEvent event(final PK pk)
+	{
+		final AfterSaveEvent event = mock(AfterSaveEvent.class);
+		when(event.getPk()).thenReturn(pk);
+		return event;
+	}
+
+	private static PK pk(final int typeCode, final long counter)
+	{
+		return PK.createFixedCounterPK(typeCode, counter);
+	}
+
+	private static class TestCache extends CollateSearchResultCache
+	{
+		private long timeToLive = 60_000;
+		private int maxSize = 10;
+
+		@Override
+		protected Set<Integer> getTypeCodes(final String searchTypeCode, final boolean includeSubtypes)
+		{
+			if ("Product".equals(searchTypeCode))
+			{
+				return includeSubtypes ? new HashSet<>(Arrays.asList(Integer.valueOf(PRODUCT), Integer.valueOf(VARIANT)))
+						: Collections.singleton(Integer.valueOf(PRODUCT));
+			}
+			return Collections.singleton(Integer.valueOf(CATEGORY));
+		}
+
+		@Override
+		protected long getTimeToLive()
+		{
+			return timeToLive;
+		}
+
+		@Override
+		protected int getMaxSize()
+		{
+			return maxSize;
+		}
+	}
+}
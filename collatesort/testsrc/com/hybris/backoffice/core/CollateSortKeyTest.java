@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ * Checks parsing of the secondary sort keys configured per type.
+ */
+@UnitTest
+public class CollateSortKeyTest
+{
+	@Test
+	public void shouldParseKeysWithDirectionAndCollation()
+	{
+		assertEquals(
+				Arrays.asList(new CollateSortKey("name", true, null), new CollateSortKey("code", false, "Latin1_General_CS_AS")),
+				CollateSortKey.parseList("name:asc,code:desc:Latin1_General_CS_AS"));
+	}
+
+	@Test
+	public void shouldDefaultToAscendingAndLanguageCollation()
+	{
+		assertEquals(Arrays.asList(new CollateSortKey("name", true, null), new CollateSortKey("code", true, null)),
+				CollateSortKey.parseList("name, code"));
+	}
+
+	@Test
+	public void shouldIgnoreBlanksAndCase()
+	{
+		assertEquals(Arrays.asList(new CollateSortKey("name", false, null), new CollateSortKey("code", true, null)),
+				CollateSortKey.parseList(" name : DESC , , code:Asc: "));
+	}
+
+	@Test
+	public void shouldParseNothingFromBlankValue()
+	{
+		assertTrue(CollateSortKey.parseList(null).isEmpty());
+		assertTrue(CollateSortKey.parseList("  ").isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectUnknownDirection()
+	{
+		CollateSortKey.parseList("name:up");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectEmptyDirection()
+	{
+		CollateSortKey.parseList("name:");
+	}
+
+	@Test
+	public void shouldRenderConfigurationSyntax()
+	{
+		assertEquals("code:desc:Latin1_General_CS_AS", new CollateSortKey("code", false, "Latin1_General_CS_AS").toString());
+		assertEquals("name:asc", new CollateSortKey("name", true, null).toString());
+	}
+}
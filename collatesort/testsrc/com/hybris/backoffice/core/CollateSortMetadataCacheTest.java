@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.tx.AfterSaveEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ * Checks hits, least recently used eviction and invalidation of {@link CollateSortMetadataCache}.
+ */
+@UnitTest
+public class CollateSortMetadataCacheTest
+{
+	private final List<String> resolved = new ArrayList<>();
+
+	private final CollateSortMetadataCache cache = new CollateSortMetadataCache()
+	{
+		@Override
+		protected int getMaxSize()
+		{
+			return 2;
+		}
+	};
+
+	@Test
+	public void shouldResolveEachAttributeOnce()
+	{
+		final CollateSortMetadata first = get("Product", "name");
+		final CollateSortMetadata second = get("Product", "name");
+
+		assertSame(first, second);
+		assertEquals(Collections.singletonList("Product.name"), resolved);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void shouldEvictTheLeastRecentlyUsedEntry()
+	{
+		get("Product", "name");
+		get("Product", "code");
+		get("Product", "name");
+		get("Product", "description");
+		resolved.clear();
+
+		get("Product", "name");
+		get("Product", "description");
+		get("Product", "code");
+
+		assertEquals(Collections.singletonList("Product.code"), resolved);
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void shouldDropTheCacheWhenTheTypeSystemChanges()
+	{
+		get("Product", "name");
+		cache.afterSave(Collections.singletonList(event(Constants.TC.Product)));
+		assertEquals(1, cache.size());
+
+		cache.afterSave(Collections.singletonList(event(Constants.TC.AttributeDescriptor)));
+		assertEquals(0, cache.size());
+	}
+
+	private CollateSortMetadata get(final String typeCode, final String qualifier)
+	{
+		return cache.get(typeCode, qualifier, (type, attribute) -> {
+			resolved.add(type + "." + attribute);
+			return CollateSortMetadata.localized();
+		});
+	}
+
+	private static AfterSaveEvent event(final int typeCode)
+	{
+		final AfterSaveEvent event = mock(AfterSaveEvent.class);
+		when(event.getPk()).thenReturn(PK.createFixedCounterPK(typeCode, 1));
+		when(event.getType()).thenReturn(Integer.valueOf(AfterSaveEvent.UPDATE));
+		return event;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.cockpitng.dataaccess.facades.search;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import de.hybris.platform.core.GenericCondition;
+import de.hybris.platform.core.GenericQuery;
+import de.hybris.platform.core.GenericSearchField;
+import de.hybris.platform.core.Operator;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.model.ItemModel;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.hybris.backoffice.cockpitng.search.builder.ConditionQueryBuilder;
+import com.hybris.backoffice.core.CollateQuery;
+import com.hybris.cockpitng.search.data.SearchAttributeDescriptor;
+import com.hybris.cockpitng.search.data.SearchQueryCondition;
+import com.hybris.cockpitng.search.data.SearchQueryData;
+
+
+/**
+ * JMH benchmark of {@link CollatePlatformFieldSearchFacadeStrategy#buildConditions(CollateQuery, String, SearchQueryData)},
+ * sequential against concurrent on an executor configured like <code>collateConditionExecutor</code>. The condition
+ * builder is stubbed with a fixed amount of work per condition, <code>conditionCost</code> in JMH tokens, while the
+ * sessions of the worker threads are real, so the results show from which width and cost of a search the concurrent
+ * path pays for its hand over and session activation. Every fifth condition joins a type and is built on the searching
+ * thread. Run it through {@link CollateSearchBenchmarkRunner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class CollateConditionBenchmark
+{
+	private static final String TYPE_CODE = "Product";
+
+	@Param({ "8", "16", "32" })
+	private int conditionCount;
+
+	@Param({ "1000", "20000", "200000" })
+	private long conditionCost;
+
+	@Param({ "false", "true" })
+	private boolean parallel;
+
+	private ThreadPoolExecutor executor;
+
+	private BenchmarkStrategy strategy;
+
+	private SearchQueryData searchQueryData;
+
+	@Setup
+	public void setUp()
+	{
+		Registry.activateMasterTenant();
+		final SessionService sessionService = Registry.getApplicationContext().getBean("sessionService",
+				SessionService.class);
+		sessionService.createNewSession();
+
+		final UserService userService = stub(UserService.class);
+		when(userService.getCurrentUser()).thenReturn(stub(UserModel.class));
+
+		final List<SearchQueryCondition> conditions = new ArrayList<>(conditionCount);
+		for (int i = 0; i < conditionCount; i++)
+		{
+			final SearchAttributeDescriptor descriptor = stub(SearchAttributeDescriptor.class);
+			when(descriptor.getAttributeName()).thenReturn(i % 5 == 4 ? "joined" + i : "attribute" + i);
+			final SearchQueryCondition condition = stub(SearchQueryCondition.class);
+			when(condition.getDescriptor()).thenReturn(descriptor);
+			conditions.add(condition);
+		}
+		searchQueryData = stub(SearchQueryData.class);
+		when(searchQueryData.getSearchType()).thenReturn(TYPE_CODE);
+		when(searchQueryData.getConditions()).thenReturn(conditions);
+
+		final ConditionQueryBuilder conditionQueryBuilder = stub(ConditionQueryBuilder.class);
+		when(conditionQueryBuilder.buildQuery(any(GenericQuery.class), anyString(), any(SearchQueryCondition.class),
+				any(SearchQueryData.class))).thenAnswer(invocation -> {
+					Blackhole.consumeCPU(conditionCost);
+					final SearchQueryCondition condition = (SearchQueryCondition) invocation.getArguments()[2];
+					final String attribute = condition.getDescriptor().getAttributeName();
+					if (attribute.startsWith("joined"))
+					{
+						((GenericQuery) invocation.getArguments()[0]).addOuterJoin("CatalogVersion", attribute,
+								GenericCondition.createJoinCondition(new GenericSearchField(TYPE_CODE, "catalogVersion"),
+										new GenericSearchField(attribute, ItemModel.PK)));
+					}
+					return Collections.singletonList(GenericCondition.createConditionForValueComparison(
+							new GenericSearchField(TYPE_CODE, "code"), Operator.EQUAL, attribute));
+				});
+
+		executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(64),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		strategy = new BenchmarkStrategy(parallel);
+		strategy.setOwnGenericMultiConditionQueryBuilder(conditionQueryBuilder);
+		strategy.setOwnUserService(userService);
+		strategy.setOwnCommonI18NService(stub(CommonI18NService.class));
+		strategy.setSessionService(sessionService);
+		strategy.setConditionExecutor(executor);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public List<List<GenericCondition>> buildConditions()
+	{
+		return strategy.buildConditions(new CollateQuery(TYPE_CODE), TYPE_CODE, searchQueryData);
+	}
+
+	/**
+	 * Stub only mocks do not record invocations, which keeps their overhead out of the results.
+	 */
+	private static <T> T stub(final Class<T> type)
+	{
+		return mock(type, withSettings().stubOnly());
+	}
+
+	/**
+	 * Switches the concurrent path on or off regardless of the configuration.
+	 */
+	private static class BenchmarkStrategy extends CollatePlatformFieldSearchFacadeStrategy
+	{
+		private final boolean parallel;
+
+		BenchmarkStrategy(final boolean parallel)
+		{
+			this.parallel = parallel;
+		}
+
+		@Override
+		protected boolean isParallelConditionBuildingApplicable(final int conditionCount)
+		{
+			return parallel;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.cockpitng.dataaccess.facades.search;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import de.hybris.platform.core.GenericCondition;
+import de.hybris.platform.core.GenericQuery;
+import de.hybris.platform.core.GenericSearchField;
+import de.hybris.platform.core.GenericSearchFieldType;
+import de.hybris.platform.core.GenericSearchOrderBy;
+import de.hybris.platform.core.Operator;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.core.model.enumeration.EnumerationMetaTypeModel;
+import de.hybris.platform.core.model.type.AtomicTypeModel;
+import de.hybris.platform.core.model.type.AttributeDescriptorModel;
+import de.hybris.platform.core.model.type.TypeModel;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.type.TypeService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.hybris.backoffice.cockpitng.search.builder.ConditionQueryBuilder;
+import com.hybris.backoffice.core.CollateEnumRanking;
+import com.hybris.backoffice.core.CollateEnumSortOrderCache;
+import com.hybris.backoffice.core.CollateQuery;
+import com.hybris.backoffice.core.CollateSearchOrderBy;
+import com.hybris.backoffice.core.CollateSortMetadataCache;
+import com.hybris.cockpitng.search.data.SearchQueryCondition;
+import com.hybris.cockpitng.search.data.SearchQueryData;
+import com.hybris.cockpitng.search.data.SortData;
+
+
+/**
+ * JMH benchmarks of the query building and rendering done by {@link CollatePlatformFieldSearchFacadeStrategy} for every
+ * Backoffice grid refresh. Type system and i18n services are stubbed, so only the collatesort code is measured. Run it
+ * through {@link CollateSearchBenchmarkRunner}, which also reports the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class CollateSearchBenchmark
+{
+	private static final String TYPE_CODE = "Product";
+	private static final String ENUM_TYPE_CODE = "ArticleApprovalStatus";
+	private static final String COLLATION = "Chinese_PRC_CI_AI";
+
+	@Param({ "1", "5", "10", "25", "50" })
+	private int conditionCount;
+
+	@Param({ "PLAIN", "LOCALIZED", "ENUM" })
+	private String sortKind;
+
+	private BenchmarkStrategy strategy;
+
+	private SearchQueryData searchQueryData;
+
+	private CollateSearchOrderBy collateOrderBy;
+
+	private Map<String, String> typeIndexMap;
+
+	@Setup
+	public void setUp()
+	{
+		final TypeService typeService = stub(TypeService.class);
+		when(typeService.getAttributeDescriptor(TYPE_CODE, "code")).thenReturn(attribute(stub(AtomicTypeModel.class), false));
+		when(typeService.getAttributeDescriptor(TYPE_CODE, "name")).thenReturn(attribute(stub(AtomicTypeModel.class), true));
+		final EnumerationMetaTypeModel enumType = stub(EnumerationMetaTypeModel.class);
+		when(enumType.getCode()).thenReturn(ENUM_TYPE_CODE);
+		when(typeService.getAttributeDescriptor(TYPE_CODE, "approvalStatus")).thenReturn(attribute(enumType, false));
+
+		final LanguageModel language = stub(LanguageModel.class);
+		when(language.getIsocode()).thenReturn("zh");
+		when(language.getPk()).thenReturn(PK.fromLong(1L));
+		final CommonI18NService i18NService = stub(CommonI18NService.class);
+		when(i18NService.getCurrentLanguage()).thenReturn(language);
+		when(i18NService.getLocaleForLanguage(language)).thenReturn(Locale.SIMPLIFIED_CHINESE);
+
+		final List<PK> enumValues = new ArrayList<>();
+		for (long pk = 1; pk <= 10; pk++)
+		{
+			enumValues.add(PK.fromLong(pk));
+		}
+		final CollateEnumSortOrderCache enumSortOrderCache = stub(CollateEnumSortOrderCache.class);
+		when(enumSortOrderCache.getRanking(ENUM_TYPE_CODE, language)).thenReturn(Optional.of(new CollateEnumRanking(enumValues)));
+
+		final List<GenericCondition> genericConditions = Collections.singletonList(GenericCondition
+				.createConditionForValueComparison(new GenericSearchField(TYPE_CODE, "code"), Operator.EQUAL, "value"));
+		final ConditionQueryBuilder conditionQueryBuilder = stub(ConditionQueryBuilder.class);
+		when(conditionQueryBuilder.buildQuery(any(GenericQuery.class), anyString(), any(SearchQueryCondition.class),
+				any(SearchQueryData.class))).thenReturn(genericConditions);
+
+		strategy = new BenchmarkStrategy();
+		strategy.setTypeService(typeService);
+		strategy.setOwnCommonI18NService(i18NService);
+		strategy.setOwnGenericMultiConditionQueryBuilder(conditionQueryBuilder);
+		strategy.setEnumSortOrderCache(enumSortOrderCache);
+		strategy.setSortMetadataCache(new CollateSortMetadataCache());
+
+		final List<SearchQueryCondition> conditions = new ArrayList<>(conditionCount);
+		for (int i = 0; i < conditionCount; i++)
+		{
+			conditions.add(stub(SearchQueryCondition.class));
+		}
+		final SortData sortData = stub(SortData.class);
+		when(sortData.getSortAttribute()).thenReturn(sortAttribute());
+		when(Boolean.valueOf(sortData.isAscending())).thenReturn(Boolean.TRUE);
+		searchQueryData = stub(SearchQueryData.class);
+		when(searchQueryData.getSearchType()).thenReturn(TYPE_CODE);
+		when(searchQueryData.getConditions()).thenReturn(conditions);
+		when(searchQueryData.getSortData()).thenReturn(sortData);
+
+		final GenericSearchField field = new GenericSearchField(TYPE_CODE, "name");
+		field.addFieldType(GenericSearchFieldType.LOCALIZED);
+		collateOrderBy = new CollateSearchOrderBy(field, true, COLLATION);
+		typeIndexMap = new HashMap<>();
+		typeIndexMap.put(TYPE_CODE, "item_0");
+	}
+
+	@Benchmark
+	public Object buildQuery()
+	{
+		return strategy.buildQuery(searchQueryData);
+	}
+
+	@Benchmark
+	public String buildAndRenderQuery()
+	{
+		return strategy.buildQuery(searchQueryData).getQuery().toFlexibleSearch(new HashMap<>());
+	}
+
+	@Benchmark
+	public GenericSearchOrderBy createSortCondition()
+	{
+		return strategy.createSortCondition(new CollateQuery(TYPE_CODE), TYPE_CODE, searchQueryData);
+	}
+
+	@Benchmark
+	public GenericSearchOrderBy createEnumSortOrder()
+	{
+		return strategy.createEnumSortOrder(new CollateQuery(TYPE_CODE), ENUM_TYPE_CODE, "approvalStatus", true);
+	}
+
+	@Benchmark
+	public void collateToFlexibleSearch(final Blackhole blackhole)
+	{
+		final StringBuilder buffer = new StringBuilder(64);
+		collateOrderBy.toFlexibleSearch(buffer, typeIndexMap, new HashMap<>());
+		blackhole.consume(buffer);
+	}
+
+	private String sortAttribute()
+	{
+		switch (sortKind)
+		{
+			case "LOCALIZED":
+				return "name";
+			case "ENUM":
+				return "approvalStatus";
+			default:
+				return "code";
+		}
+	}
+
+	private static AttributeDescriptorModel attribute(final TypeModel type, final boolean localized)
+	{
+		final AttributeDescriptorModel attribute = stub(AttributeDescriptorModel.class);
+		when(attribute.getAttributeType()).thenReturn(type);
+		when(attribute.getLocalized()).thenReturn(Boolean.valueOf(localized));
+		return attribute;
+	}
+
+	/**
+	 * Stub only mocks do not record invocations, which keeps their overhead out of the allocation figures.
+	 */
+	private static <T> T stub(final Class<T> type)
+	{
+		return mock(type, withSettings().stubOnly());
+	}
+
+	/**
+	 * Fixes the configuration driven switches, so the results do not depend on the database the platform runs on.
+	 */
+	private static class BenchmarkStrategy extends CollatePlatformFieldSearchFacadeStrategy
+	{
+		@Override
+		protected boolean isCollateSupportEnabled()
+		{
+			return true;
+		}
+
+		@Override
+		protected String collate()
+		{
+			return COLLATION;
+		}
+
+		@Override
+		protected boolean isEnumSortInMemoryEnabled()
+		{
+			return true;
+		}
+
+		@Override
+		protected boolean sorEnumByLocalizedNameEnabled()
+		{
+			return true;
+		}
+
+		@Override
+		protected int getInMemorySortLimit()
+		{
+			return 0;
+		}
+	}
+}
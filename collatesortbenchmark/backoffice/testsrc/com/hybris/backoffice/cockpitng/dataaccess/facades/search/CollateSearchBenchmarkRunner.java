@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.cockpitng.dataaccess.facades.search;
+
+import de.hybris.bootstrap.annotations.PerformanceTest;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs {@link CollateSearchBenchmark} and {@link CollateConditionBenchmark} with
+ * <code>ant performancetests -Dtestclasses.extensions=collatesortbenchmark</code>. The benchmarks run in the platform
+ * JVM (no fork) so that {@link de.hybris.platform.util.Config} is available. Results are written to
+ * <code>collatesort-benchmark.json</code>; the <code>gc.alloc.rate.norm</code> figures are the bytes allocated per
+ * query.
+ */
+@PerformanceTest
+public class CollateSearchBenchmarkRunner
+{
+	@Test
+	public void runBenchmarks() throws RunnerException
+	{
+		final Options options = new OptionsBuilder()
+				.include(CollateSearchBenchmark.class.getSimpleName())
+				.include(CollateConditionBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("collatesort-benchmark.json")
+				.build();
+		new Runner(options).run();
+	}
+}
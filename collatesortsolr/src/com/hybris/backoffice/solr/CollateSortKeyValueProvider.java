@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.solr;
+
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.solrfacetsearch.config.IndexConfig;
+import de.hybris.platform.solrfacetsearch.config.IndexedProperty;
+import de.hybris.platform.solrfacetsearch.config.exceptions.FieldValueProviderException;
+import de.hybris.platform.solrfacetsearch.provider.FieldNameProvider;
+import de.hybris.platform.solrfacetsearch.provider.FieldValue;
+import de.hybris.platform.solrfacetsearch.provider.FieldValueProvider;
+import de.hybris.platform.util.Config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Required;
+
+import com.hybris.backoffice.constants.CollatesortConstants;
+import com.hybris.backoffice.core.CollateCollators;
+
+
+/**
+ * Indexes the collation key of a text attribute per language, see {@link CollateCollators#sortKey}, so that Backoffice
+ * grids served by the Solr search strategy sort like the grids served by
+ * {@link com.hybris.backoffice.core.CollateGenericSearchService} with the same <code>collate.&lt;isocode&gt;</code>
+ * settings. Use it for a localized, sortable indexed property of type <code>string</code> and sort by that property
+ * instead of the text itself, see <code>collatesortsolr-spring.xml</code>. The indexed attribute is given by the value
+ * provider parameter <code>attribute</code> and defaults to the name of the indexed property. A property that is not
+ * localized is keyed with the collation of the first language of the index.
+ */
+public class CollateSortKeyValueProvider implements FieldValueProvider
+{
+	public static final String ATTRIBUTE_PARAMETER = "attribute";
+
+	private FieldNameProvider fieldNameProvider;
+
+	private ModelService modelService;
+
+	private CommonI18NService commonI18NService;
+
+	@Override
+	public Collection<FieldValue> getFieldValues(final IndexConfig indexConfig, final IndexedProperty indexedProperty,
+			final Object model) throws FieldValueProviderException
+	{
+		final String attribute = StringUtils.defaultIfEmpty(indexedProperty.getValueProviderParameters() == null ? null
+				: indexedProperty.getValueProviderParameters().get(ATTRIBUTE_PARAMETER), indexedProperty.getName());
+
+		final List<FieldValue> fieldValues = new ArrayList<>();
+		for (final LanguageModel language : indexConfig.getLanguages())
+		{
+			final Locale locale = commonI18NService.getLocaleForLanguage(language);
+			final Object value;
+			try
+			{
+				value = indexedProperty.isLocalized() ? modelService.getAttributeValue(model, attribute, locale)
+						: modelService.getAttributeValue(model, attribute);
+			}
+			catch (final RuntimeException e)
+			{
+				throw new FieldValueProviderException("Cannot read " + attribute + " of " + model, e);
+			}
+			if (value == null)
+			{
+				continue;
+			}
+
+			final String collateType = getCollation(language.getIsocode());
+			final String sortKey = CollateCollators.sortKey(CollateCollators.getCollator(collateType, locale), value.toString());
+			final String qualifier = indexedProperty.isLocalized() ? language.getIsocode() : null;
+			for (final String fieldName : fieldNameProvider.getFieldNames(indexedProperty, qualifier))
+			{
+				fieldValues.add(new FieldValue(fieldName, sortKey));
+			}
+			if (!indexedProperty.isLocalized())
+			{
+				break;
+			}
+		}
+		return fieldValues;
+	}
+
+	protected String getCollation(final String isocode)
+	{
+		return Config.getParameter(CollatesortConstants.COLLATE_PREFIX + isocode);
+	}
+
+	@Required
+	public void setFieldNameProvider(final FieldNameProvider fieldNameProvider)
+	{
+		this.fieldNameProvider = fieldNameProvider;
+	}
+
+	@Required
+	public void setModelService(final ModelService modelService)
+	{
+		this.modelService = modelService;
+	}
+
+	@Required
+	public void setCommonI18NService(final CommonI18NService commonI18NService)
+	{
+		this.commonI18NService = commonI18NService;
+	}
+}
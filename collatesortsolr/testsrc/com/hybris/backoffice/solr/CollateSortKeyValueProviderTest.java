@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019 SAP SE or an SAP affiliate company. All rights reserved.
+ */
+
+package com.hybris.backoffice.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.model.c2l.LanguageModel;
+import de.hybris.platform.core.model.product.ProductModel;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.solrfacetsearch.config.IndexConfig;
+import de.hybris.platform.solrfacetsearch.config.IndexedProperty;
+import de.hybris.platform.solrfacetsearch.config.exceptions.FieldValueProviderException;
+import de.hybris.platform.solrfacetsearch.provider.FieldNameProvider;
+import de.hybris.platform.solrfacetsearch.provider.FieldValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hybris.backoffice.core.CollateCollators;
+
+
+/**
+ * Checks the collation keys indexed by {@link CollateSortKeyValueProvider}.
+ */
+@UnitTest
+public class CollateSortKeyValueProviderTest
+{
+	private static final String COLLATION = "Latin1_General_CI_AI";
+
+	private final CollateSortKeyValueProvider provider = new CollateSortKeyValueProvider()
+	{
+		@Override
+		protected String getCollation(final String isocode)
+		{
+			return COLLATION;
+		}
+	};
+
+	private ModelService modelService;
+
+	private FieldNameProvider fieldNameProvider;
+
+	private IndexConfig indexConfig;
+
+	private IndexedProperty indexedProperty;
+
+	private LanguageModel german;
+
+	private LanguageModel english;
+
+	@Before
+	public void setUp()
+	{
+		modelService = mock(ModelService.class);
+		fieldNameProvider = mock(FieldNameProvider.class);
+		final CommonI18NService commonI18NService = mock(CommonI18NService.class);
+		provider.setModelService(modelService);
+		provider.setFieldNameProvider(fieldNameProvider);
+		provider.setCommonI18NService(commonI18NService);
+
+		german = language("de", Locale.GERMAN, commonI18NService);
+		english = language("en", Locale.ENGLISH, commonI18NService);
+		indexConfig = mock(IndexConfig.class);
+		when(indexConfig.getLanguages()).thenReturn(Arrays.asList(german, english));
+
+		indexedProperty = mock(IndexedProperty.class);
+		when(indexedProperty.getName()).thenReturn("nameSortKey");
+		when(indexedProperty.getValueProviderParameters()).thenReturn(Collections.singletonMap("attribute", "name"));
+		when(fieldNameProvider.getFieldNames(indexedProperty, "de")).thenReturn(Collections.singletonList("nameSortKey_de"));
+		when(fieldNameProvider.getFieldNames(indexedProperty, "en")).thenReturn(Collections.singletonList("nameSortKey_en"));
+		when(fieldNameProvider.getFieldNames(indexedProperty, null)).thenReturn(Collections.singletonList("nameSortKey"));
+	}
+
+	@Test
+	public void shouldIndexSortKeyPerLanguage() throws FieldValueProviderException
+	{
+		final ProductModel product = new ProductModel();
+		when(indexedProperty.isLocalized()).thenReturn(Boolean.TRUE);
+		when(modelService.getAttributeValue(product, "name", Locale.GERMAN)).thenReturn("\u00c4pfel");
+		when(modelService.getAttributeValue(product, "name", Locale.ENGLISH)).thenReturn(null);
+
+		final Collection<FieldValue> values = provider.getFieldValues(indexConfig, indexedProperty, product);
+
+		assertEquals(1, values.size());
+		final FieldValue value = values.iterator().next();
+		assertEquals("nameSortKey_de", value.getFieldName());
+		assertEquals(CollateCollators.sortKey(CollateCollators.getCollator(COLLATION, Locale.GERMAN), "\u00c4pfel"),
+				value.getValue());
+	}
+
+	@Test
+	public void shouldIndexUnlocalizedPropertyOnce() throws FieldValueProviderException
+	{
+		final ProductModel product = new ProductModel();
+		when(modelService.getAttributeValue(product, "name")).thenReturn("Zebra");
+
+		final Collection<FieldValue> values = provider.getFieldValues(indexConfig, indexedProperty, product);
+
+		assertEquals(1, values.size());
+		assertEquals("nameSortKey", values.iterator().next().getFieldName());
+	}
+
+	@Test
+	public void shouldOrderIndexedKeysLikeTheCollation() throws FieldValueProviderException
+	{
+		when(indexedProperty.isLocalized()).thenReturn(Boolean.TRUE);
+		final List<String> keys = new ArrayList<>();
+		for (final String name : Arrays.asList("zebra", "\u00e4pfel", "Birne"))
+		{
+			final ProductModel product = new ProductModel();
+			when(modelService.getAttributeValue(product, "name", Locale.GERMAN)).thenReturn(name);
+			keys.add((String) provider.getFieldValues(indexConfig, indexedProperty, product).iterator().next().getValue());
+		}
+
+		assertTrue(keys.get(1).compareTo(keys.get(2)) < 0);
+		assertTrue(keys.get(2).compareTo(keys.get(0)) < 0);
+	}
+
+	@Test(expected = FieldValueProviderException.class)
+	public void shouldReportUnreadableAttribute() throws FieldValueProviderException
+	{
+		final ProductModel product = new ProductModel();
+		when(modelService.getAttributeValue(product, "name")).thenThrow(new IllegalArgumentException("unknown"));
+
+		provider.getFieldValues(indexConfig, indexedProperty, product);
+	}
+
+	private static LanguageModel language(final String isocode, final Locale locale, final CommonI18NService commonI18NService)
+	{
+		final LanguageModel language = mock(LanguageModel.class);
+		when(language.getIsocode()).thenReturn(isocode);
+		when(commonI18NService.getLocaleForLanguage(language)).thenReturn(locale);
+		return language;
+	}
+}
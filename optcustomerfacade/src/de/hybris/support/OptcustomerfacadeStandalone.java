@@ -8,49 +8,346 @@
  * ("Confidential Information"). You shall not disclose such Confidential
  * Information and shall use it only in accordance with the terms of the
  * license agreement you entered into with hybris.
- * 
- *  
+ *
+ *
  */
 package de.hybris.support;
 
+import de.hybris.platform.core.PK;
 import de.hybris.platform.core.Registry;
-import de.hybris.platform.jalo.JaloSession;
+import de.hybris.platform.core.TenantAwareThreadFactory;
+import de.hybris.platform.core.model.order.CartModel;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.util.Config;
 import de.hybris.platform.util.RedeployUtilities;
 import de.hybris.platform.util.Utilities;
+import de.hybris.support.constants.OptcustomerfacadeConstants;
+import de.hybris.support.facades.impl.OptCustomerFacade;
+import de.hybris.support.services.CartPurgeService;
+import de.hybris.support.services.LocalSessions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 
 
 /**
- * Demonstration of how to write a standalone application that can be run directly from within eclipse or from the
- * commandline.<br>
+ * Headless batch runner for cart maintenance, meant to run outside the storefront nodes. It walks all carts in
+ * ascending pk order, page by page, and hands the pages to a pool of workers which recalculate the carts with
+ * {@link OptCustomerFacade#recalculateCart(CartModel)}. The highest pk up to which all pages are done is written to a
+ * checkpoint file, an interrupted run resumes after it. In purge mode the abandoned carts are removed by the
+ * {@link CartPurgeService}, which needs no checkpoint as removed carts are not found again.<br>
  * To run this from commandline, just use the following command:<br>
  * <code>
- * java -jar bootstrap/bin/ybootstrap.jar "new de.hybris.support.OptcustomerfacadeStandalone().run();"
- * </code> From eclipse, just run as Java Application. Note that you maybe need to add all other projects like
- * ext-commerce, ext-pim to the Launch configuration classpath.
+ * java -jar bootstrap/bin/ybootstrap.jar "new de.hybris.support.OptcustomerfacadeStandalone().run(new String[] {\"recalculate\"});"
+ * </code> From eclipse, just run as Java Application with the mode as argument. Note that you maybe need to add all
+ * other projects like ext-commerce, ext-pim to the Launch configuration classpath.
  */
 public class OptcustomerfacadeStandalone
 {
+	private static final Logger LOG = Logger.getLogger(OptcustomerfacadeStandalone.class);
+
+	private static final String CHECKPOINT_MODE = "mode";
+	private static final String CHECKPOINT_LAST_PK = "lastPk";
+
+	public enum Mode
+	{
+		RECALCULATE, PURGE
+	}
+
+	private final Object checkpointLock = new Object();
+
+	/** Last pk of each page that is done but still behind an unfinished page, keyed by page number. */
+	private final TreeMap<Long, PK> donePages = new TreeMap<>();
+
+	private final AtomicLong processed = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile boolean aborted;
+
+	private long nextCheckpointPage;
+
+	private volatile PK checkpointPk;
+
+	private Mode mode;
+
+	private File checkpointFile;
+
+	private OptCustomerFacade customerFacade;
+
+	private ModelService modelService;
+
+	private SessionService sessionService;
+
+	private UserService userService;
+
 	/**
 	 * Main class to be able to run it directly as a java program.
-	 * 
+	 *
 	 * @param args
-	 *           the arguments from commandline
+	 *           the arguments from commandline, optionally the mode <code>recalculate</code> or <code>purge</code>
 	 */
 	public static void main(final String[] args)
 	{
-		new OptcustomerfacadeStandalone().run();
+		new OptcustomerfacadeStandalone().run(args);
 	}
 
 	public void run()
+	{
+		run(new String[0]);
+	}
+
+	public void run(final String[] args)
 	{
 		Registry.activateStandaloneMode();
 		Registry.activateMasterTenant();
-
-		final JaloSession jaloSession = JaloSession.getCurrentSession();
-		System.out.println("Session ID: " + jaloSession.getSessionID()); //NOPMD
-		System.out.println("User: " + jaloSession.getUser()); //NOPMD
 		Utilities.printAppInfo();
 
-		RedeployUtilities.shutdown();
+		try
+		{
+			customerFacade = Registry.getApplicationContext().getBean("optCustomerFacade", OptCustomerFacade.class);
+			modelService = Registry.getApplicationContext().getBean("modelService", ModelService.class);
+			sessionService = Registry.getApplicationContext().getBean("sessionService", SessionService.class);
+			userService = Registry.getApplicationContext().getBean("userService", UserService.class);
+			userService.setCurrentUser(userService.getAdminUser());
+
+			mode = Mode.valueOf(
+					(args.length > 0 ? args[0] : Config.getString(OptcustomerfacadeConstants.BATCH_MODE, "recalculate"))
+							.toUpperCase(Locale.ROOT));
+			checkpointFile = new File(Config.getString(OptcustomerfacadeConstants.BATCH_CHECKPOINT_FILE,
+					new File(Config.getParameter("HYBRIS_TEMP_DIR"), "optcustomerfacade/cartbatch.checkpoint").getPath()));
+			if (mode == Mode.PURGE)
+			{
+				final long start = System.currentTimeMillis();
+				final long removed = Registry.getApplicationContext().getBean("cartPurgeService", CartPurgeService.class).purge();
+				LOG.info(String.format("Cart purge: %d carts removed, %.1f carts/s", Long.valueOf(removed),
+						Double.valueOf(removed * 1000d / Math.max(1, System.currentTimeMillis() - start))));
+			}
+			else
+			{
+				process();
+			}
+		}
+		finally
+		{
+			RedeployUtilities.shutdown();
+		}
+	}
+
+	protected void process()
+	{
+		final int workers = Math.max(1, Config.getInt(OptcustomerfacadeConstants.BATCH_WORKERS, 4));
+		final int pageSize = Math.max(1, Config.getInt(OptcustomerfacadeConstants.BATCH_PAGE_SIZE, 200));
+		final long reportInterval = TimeUnit.SECONDS
+				.toMillis(Math.max(1, Config.getLong(OptcustomerfacadeConstants.BATCH_REPORT_INTERVAL, 10)));
+
+		checkpointPk = readCheckpoint();
+		LOG.info(String.format("Starting cart %s with %d workers, page size %d, resuming after pk %s",
+				mode.name().toLowerCase(Locale.ROOT), Integer.valueOf(workers), Integer.valueOf(pageSize), checkpointPk));
+
+		// at most two pages per worker are read ahead, the pks of the remaining carts stay in the database
+		final Semaphore pending = new Semaphore(workers * 2);
+		final ExecutorService executor = Executors.newFixedThreadPool(workers,
+				new TenantAwareThreadFactory(Registry.getCurrentTenant()));
+		final long start = System.currentTimeMillis();
+		long lastReport = start;
+		long page = 0;
+		PK lastPk = checkpointPk;
+		try
+		{
+			List<PK> pks;
+			while (!aborted && !(pks = customerFacade.readCartPks(lastPk, pageSize)).isEmpty())
+			{
+				pending.acquire();
+				final long pageNumber = page++;
+				final List<PK> pagePks = pks;
+				executor.execute(() -> {
+					try
+					{
+						processPage(pageNumber, pagePks);
+					}
+					finally
+					{
+						pending.release();
+					}
+				});
+				lastPk = pks.get(pks.size() - 1);
+
+				if (System.currentTimeMillis() - lastReport >= reportInterval)
+				{
+					lastReport = System.currentTimeMillis();
+					report(start);
+				}
+			}
+			executor.shutdown();
+			while (!executor.awaitTermination(reportInterval, TimeUnit.MILLISECONDS))
+			{
+				report(start);
+			}
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			aborted = true;
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		report(start);
+		if (aborted)
+		{
+			LOG.warn("Cart " + mode.name().toLowerCase(Locale.ROOT) + " aborted, the next run resumes after pk " + checkpointPk);
+		}
+		else if (checkpointFile.exists() && !checkpointFile.delete())
+		{
+			LOG.warn("Could not remove checkpoint file " + checkpointFile);
+		}
+	}
+
+	protected void processPage(final long pageNumber, final List<PK> pks)
+	{
+		try
+		{
+			LocalSessions.runAsAdmin(sessionService, userService, () -> {
+				for (final PK pk : pks)
+				{
+					processCart(pk);
+				}
+			});
+			pageDone(pageNumber, pks.get(pks.size() - 1));
+		}
+		catch (final RuntimeException e)
+		{
+			// the checkpoint never passes this page, so the next run starts again with it
+			LOG.error("Cart page " + pageNumber + " failed, stopping the run", e);
+			aborted = true;
+		}
+	}
+
+	protected void processCart(final PK pk)
+	{
+		try
+		{
+			final CartModel cart = modelService.get(pk);
+			if (!customerFacade.recalculateCart(cart))
+			{
+				failed.incrementAndGet();
+			}
+			modelService.detach(cart);
+		}
+		catch (final RuntimeException e)
+		{
+			LOG.warn("Could not process cart " + pk, e);
+			failed.incrementAndGet();
+		}
+		processed.incrementAndGet();
+	}
+
+	/**
+	 * Advances the checkpoint over all pages that are done without a gap.
+	 */
+	private void pageDone(final long pageNumber, final PK lastPk)
+	{
+		synchronized (checkpointLock)
+		{
+			donePages.put(Long.valueOf(pageNumber), lastPk);
+			boolean advanced = false;
+			while (!donePages.isEmpty() && donePages.firstKey().longValue() == nextCheckpointPage)
+			{
+				checkpointPk = donePages.pollFirstEntry().getValue();
+				nextCheckpointPage++;
+				advanced = true;
+			}
+			if (advanced)
+			{
+				writeCheckpoint(checkpointPk);
+			}
+		}
+	}
+
+	private PK readCheckpoint()
+	{
+		if (!checkpointFile.isFile())
+		{
+			return null;
+		}
+		final Properties checkpoint = new Properties();
+		try (final InputStream in = new FileInputStream(checkpointFile))
+		{
+			checkpoint.load(in);
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Could not read checkpoint file " + checkpointFile + ", starting from the first cart", e);
+			return null;
+		}
+		if (!mode.name().equals(checkpoint.getProperty(CHECKPOINT_MODE)))
+		{
+			LOG.info("Checkpoint file " + checkpointFile + " belongs to another mode, starting from the first cart");
+			return null;
+		}
+		final String lastPk = checkpoint.getProperty(CHECKPOINT_LAST_PK);
+		return StringUtils.isBlank(lastPk) ? null : PK.parse(lastPk);
+	}
+
+	/**
+	 * Replaces the checkpoint file atomically, so a crash never leaves a partially written checkpoint behind.
+	 */
+	private void writeCheckpoint(final PK lastPk)
+	{
+		final Properties checkpoint = new Properties();
+		checkpoint.setProperty(CHECKPOINT_MODE, mode.name());
+		checkpoint.setProperty(CHECKPOINT_LAST_PK, lastPk.toString());
+
+		final File directory = checkpointFile.getAbsoluteFile().getParentFile();
+		final File temporary = new File(directory, checkpointFile.getName() + ".tmp");
+		try
+		{
+			if (!directory.isDirectory() && !directory.mkdirs())
+			{
+				throw new IOException("Cannot create checkpoint directory " + directory);
+			}
+			try (final OutputStream out = new FileOutputStream(temporary))
+			{
+				checkpoint.store(out, "optcustomerfacade cart batch");
+			}
+			Files.move(temporary.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Could not write checkpoint file " + checkpointFile, e);
+		}
+	}
+
+	private void report(final long start)
+	{
+		final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		final long count = processed.get();
+		LOG.info(String.format("Cart %s: %d carts processed, %d failed, %.1f carts/s, checkpoint pk %s",
+				mode.name().toLowerCase(Locale.ROOT), Long.valueOf(count), Long.valueOf(failed.get()),
+				Double.valueOf(count * 1000d / elapsed), checkpointPk));
 	}
 }
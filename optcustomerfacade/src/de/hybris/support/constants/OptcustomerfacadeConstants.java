@@ -26,4 +26,36 @@ public final class OptcustomerfacadeConstants extends GeneratedOptcustomerfacade
 	}
 
 	// implement here constants used by this extension
+
+	/** FlexibleSearch queries of the facade, pre-translated by the warm-up of the extension manager. */
+	public static final String QUERY_CARTS_EXCEPT = "SELECT {pk} FROM {Cart} WHERE {pk} != ?pk";
+	public static final String QUERY_CART_PKS_AFTER = "SELECT {pk} FROM {Cart} WHERE {pk} > ?lastPk ORDER BY {pk} ASC";
+
+	public static final String WARMUP_ENABLED = "optcustomerfacade.warmup.enabled";
+	public static final String WARMUP_DELAY = "optcustomerfacade.warmup.delay";
+
+	public static final String BATCH_MODE = "optcustomerfacade.batch.mode";
+	public static final String BATCH_WORKERS = "optcustomerfacade.batch.workers";
+	public static final String BATCH_PAGE_SIZE = "optcustomerfacade.batch.pagesize";
+	public static final String BATCH_CHECKPOINT_FILE = "optcustomerfacade.batch.checkpoint.file";
+	public static final String BATCH_REPORT_INTERVAL = "optcustomerfacade.batch.report.interval";
+
+	public static final String CART_PURGE_ANONYMOUS_MAX_AGE = "optcustomerfacade.cartpurge.anonymous.maxage.days";
+	public static final String CART_PURGE_STALE_MAX_AGE = "optcustomerfacade.cartpurge.stale.maxage.days";
+	public static final String CART_PURGE_WORKERS = "optcustomerfacade.cartpurge.workers";
+	public static final String CART_PURGE_PARTITION_SIZE = "optcustomerfacade.cartpurge.partitionsize";
+	public static final String CART_PURGE_THROTTLE = "optcustomerfacade.cartpurge.throttle.ms";
+
+	public static final String CART_TOTALS_CACHE_ENABLED = "optcustomerfacade.carttotals.cache.enabled";
+	public static final String CART_TOTALS_CACHE_MAX_SIZE = "optcustomerfacade.carttotals.cache.maxsize";
+
+	public static final String MEDIA_PERMISSION_CACHE_ENABLED = "optcustomerfacade.mediapermission.cache.enabled";
+	public static final String MEDIA_PERMISSION_CACHE_TTL = "optcustomerfacade.mediapermission.cache.ttl";
+	public static final String MEDIA_PERMISSION_CACHE_MAX_SIZE = "optcustomerfacade.mediapermission.cache.maxsize";
+	public static final String MEDIA_PERMISSION_PUBLIC_FOLDERS = "optcustomerfacade.mediapermission.publicfolders";
+
+	public static final String CART_EXECUTION_MODE = "optcustomerfacade.cartexecution.mode";
+	public static final String CART_EXECUTION_POOL_SIZE = "optcustomerfacade.cartexecution.pool.size";
+	public static final String CART_EXECUTION_DB_PERMITS = "optcustomerfacade.cartexecution.db.permits";
+	public static final String CART_EXECUTION_TIMEOUT = "optcustomerfacade.cartexecution.timeout";
 }
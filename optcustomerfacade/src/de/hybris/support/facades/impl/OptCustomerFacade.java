@@ -4,17 +4,25 @@
 package de.hybris.support.facades.impl;
 
 import de.hybris.platform.commercefacades.customer.impl.DefaultCustomerFacade;
+import de.hybris.platform.core.PK;
 import de.hybris.platform.core.model.order.CartModel;
 import de.hybris.platform.order.exceptions.CalculationException;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
 import de.hybris.platform.servicelayer.search.FlexibleSearchService;
 import de.hybris.platform.servicelayer.search.SearchResult;
-import de.hybris.platform.util.Config;
-
+import de.hybris.support.constants.OptcustomerfacadeConstants;
+import de.hybris.support.memo.RequestMemoizer;
+import de.hybris.support.services.CartTotalsCache;
+import de.hybris.support.services.CartTotalsSnapshot;
+import de.hybris.support.services.CartWorkExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
@@ -28,27 +36,30 @@ public class OptCustomerFacade extends DefaultCustomerFacade
 {
 	private static final Logger LOG = Logger.getLogger(OptCustomerFacade.class);
 
-	private static final String SELECT_PK_FROM_CART_WHERE_PK_PK = "SELECT {pk} FROM {Cart} WHERE {pk} != ?pk";
-
 	private static final String READ_CARTS_FROM_DB = "read.carts.from.db";
 	private static final String RECALCULATE_CART = "recalculate.cart";
 
-	private static final AtomicInteger nextId = new AtomicInteger(0);
+	private static final int DEFAULT_CART_LIST_CAPACITY = 1000;
 
-	// Thread local variable containing each thread's ID
-	private static final ThreadLocal cartId = new ThreadLocal()
-	{
-		@Override
-		protected Integer initialValue()
-		{
-			return Integer.valueOf(nextId.getAndIncrement());
-		}
-	};
+	/** Pk of the session cart whose snapshot was taken last, kept in the session next to the cart. */
+	private static final String SESSION_CART_PK = "optcustomerfacade.sessionCartPk";
 
-	private static List<CartModel> cartList = new CopyOnWriteArrayList<>();
+	/**
+	 * The carts read at login, shared by all concurrent logins. Bounded; when it is full the eldest cart makes room for
+	 * the new one.
+	 */
+	private BlockingQueue<CartModel> cartList = new ArrayBlockingQueue<>(DEFAULT_CART_LIST_CAPACITY);
 
 	private FlexibleSearchService flexibleSearchService;
 
+	private ConfigurationService configurationService;
+
+	private CartWorkExecutor cartWorkExecutor;
+
+	private CartTotalsCache cartTotalsCache;
+
+	private RequestMemoizer requestMemoizer;
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -58,18 +69,28 @@ public class OptCustomerFacade extends DefaultCustomerFacade
 	public void loginSuccess()
 	{
 		LOG.debug(">>>>>>>>>>>OptCustomerFacade<<<<<<<<<<<<<");
-		super.loginSuccess();
+		// the user was just changed by the authentication, lookups memoized before are stale
+		requestMemoizer.clear();
+		updateSessionAfterLogin();
 		checkCartList();
 	}
 
+	/**
+	 * Updates the session cart, currency and language of the user who just logged in.
+	 */
+	protected void updateSessionAfterLogin()
+	{
+		super.loginSuccess();
+		// the login may have replaced the session cart
+		getSessionService().removeAttribute(SESSION_CART_PK);
+	}
+
 	/**
 	 *
 	 */
 	private void checkCartList()
 	{
-		final boolean readCartsFromDB = Config.getBoolean(READ_CARTS_FROM_DB, false);
-
-		if (readCartsFromDB)
+		if (configurationService.getConfiguration().getBoolean(READ_CARTS_FROM_DB, false))
 		{
 			readListOfCartsfs();
 			recalculateCarts();
@@ -85,38 +106,113 @@ public class OptCustomerFacade extends DefaultCustomerFacade
 	 */
 	private void recalculateCarts()
 	{
-		final boolean recalculateCarts = Config.getBoolean(RECALCULATE_CART, false);
-		if (recalculateCarts)
+		if (!configurationService.getConfiguration().getBoolean(RECALCULATE_CART, false))
+		{
+			return;
+		}
+		if (cartWorkExecutor.getMode() == CartWorkExecutor.Mode.INLINE)
 		{
 			for (final CartModel cartModel : getListOfCarts())
 			{
-				try
-				{
-					getCommerceCartService().recalculateCart(cartModel);
-				}
-				catch (final CalculationException e)
-				{
-					e.printStackTrace();
-				}
-				getModelService().save(cartModel);
+				recalculateCart(cartModel);
 			}
 		}
+		else
+		{
+			// each unit reads its cart again, models are not shared between threads
+			final List<PK> cartPks = new ArrayList<>();
+			getListOfCarts().stream().filter(cart -> cart.getPk() != null).forEach(cart -> cartPks.add(cart.getPk()));
+			cartWorkExecutor.executeAll(cartPks, cartPk -> recalculateCart(getModelService().<CartModel> get(cartPk)));
+		}
 	}
 
 	/**
+	 * Returns the entry count and totals of the session cart for the mini-cart and the header. They are served from the
+	 * {@link CartTotalsCache} by the cart pk remembered in the session, so a cached cart is not touched at all; only a
+	 * cart that is not cached is read from the cart service to take a snapshot. Nothing is recalculated. A session cart
+	 * that is replaced is picked up once the snapshot of the previous one is dropped, which happens when that cart is
+	 * saved or removed, and at login.
 	 *
+	 * @return the snapshot of the session cart, {@link CartTotalsSnapshot#EMPTY} if the session has no cart yet
 	 */
-	private void readListOfCarts()
+	public CartTotalsSnapshot getSessionCartTotals()
 	{
-		final boolean readCartsFromDB = Config.getBoolean(READ_CARTS_FROM_DB, false);
+		if (cartTotalsCache.isEnabled())
+		{
+			final Object cartPk = getSessionService().getAttribute(SESSION_CART_PK);
+			final CartTotalsSnapshot snapshot = cartPk instanceof PK ? cartTotalsCache.get((PK) cartPk) : null;
+			if (snapshot != null)
+			{
+				return snapshot;
+			}
+		}
+		if (!getCartService().hasSessionCart())
+		{
+			getSessionService().removeAttribute(SESSION_CART_PK);
+			return CartTotalsSnapshot.EMPTY;
+		}
+		final CartModel cart = getCartService().getSessionCart();
+		final CartTotalsSnapshot snapshot = cartTotalsCache.refresh(cart);
+		if (cartTotalsCache.isEnabled())
+		{
+			getSessionService().setAttribute(SESSION_CART_PK, cart.getPk());
+		}
+		return snapshot;
+	}
 
-		final CartModel cartModel = createCartModel();
-		while (!readCartsFromDB)
+	/**
+	 * Recalculates and saves one cart.
+	 *
+	 * @return false if the cart could not be calculated, it is saved unchanged in that case
+	 */
+	public boolean recalculateCart(final CartModel cartModel)
+	{
+		boolean calculated = true;
+		try
 		{
-			final CartModel itemCart = getModelService().clone(cartModel);
-			itemCart.setCode(getCode());
-			addToCartList(itemCart);
+			getCommerceCartService().recalculateCart(cartModel);
 		}
+		catch (final CalculationException e)
+		{
+			LOG.warn("Could not recalculate cart " + cartModel.getCode(), e);
+			calculated = false;
+		}
+		getModelService().save(cartModel);
+		if (cartTotalsCache.isEnabled())
+		{
+			cartTotalsCache.refresh(cartModel);
+		}
+		return calculated;
+	}
+
+	/**
+	 * Reads one page of cart pks in ascending pk order, used to walk all carts in batches.
+	 *
+	 * @param lastPk
+	 *           the page starts after this pk, <code>null</code> to start with the first cart
+	 * @param count
+	 *           maximum size of the page
+	 * @return the pks of the page, empty if there are no more carts
+	 */
+	public List<PK> readCartPks(final PK lastPk, final int count)
+	{
+		final FlexibleSearchQuery query = new FlexibleSearchQuery(OptcustomerfacadeConstants.QUERY_CART_PKS_AFTER);
+		query.addQueryParameter("lastPk", lastPk == null ? PK.NULL_PK : lastPk);
+		query.setResultClassList(Collections.singletonList(PK.class));
+		query.setCount(count);
+
+		final SearchResult<PK> result = flexibleSearchService.search(query);
+		return result.getResult();
+	}
+
+	/**
+	 *
+	 */
+	private void readListOfCarts()
+	{
+		final CartModel itemCart = getModelService().clone(createCartModel());
+		itemCart.setCode(getCode());
+		addToCartList(itemCart);
 	}
 
 	/**
@@ -138,19 +234,23 @@ public class OptCustomerFacade extends DefaultCustomerFacade
 		return UUID.randomUUID().toString();
 	}
 
-	private List<CartModel> getListOfCarts()
+	/**
+	 * @return a copy of the carts read at login so far
+	 */
+	protected List<CartModel> getListOfCarts()
 	{
-		if (cartList != null)
+		final List<CartModel> carts = new ArrayList<>(cartList);
+		if (LOG.isDebugEnabled())
 		{
-			LOG.info(" size of concurrent list : " + cartList.size());
+			LOG.debug(" size of concurrent list : " + carts.size());
 		}
-		return cartList;
+		return carts;
 	}
 
 	private void readListOfCartsfs()
 	{
 
-		final FlexibleSearchQuery query = new FlexibleSearchQuery(SELECT_PK_FROM_CART_WHERE_PK_PK);
+		final FlexibleSearchQuery query = new FlexibleSearchQuery(OptcustomerfacadeConstants.QUERY_CARTS_EXCEPT);
 		query.addQueryParameter("pk", "8098888880");
 
 		final SearchResult<CartModel> result = flexibleSearchService.search(query);
@@ -158,33 +258,45 @@ public class OptCustomerFacade extends DefaultCustomerFacade
 
 		if (listOfCarts != null)
 		{
-			LOG.info(" listOfCarts : " + listOfCarts.size());
+			LOG.debug(" listOfCarts : " + listOfCarts.size());
+			listOfCarts.forEach(this::addToCartList);
 		}
-
-		addToCartList(listOfCarts);
 	}
 
 
 	private void addToCartList(final CartModel cart)
 	{
-		if (cartList == null)
+		while (!cartList.offer(cart))
 		{
-			cartList = new CopyOnWriteArrayList<CartModel>();
+			cartList.poll();
 		}
+	}
 
-		cartList.add(cart);
+	public void setCartListCapacity(final int capacity)
+	{
+		cartList = new ArrayBlockingQueue<>(capacity);
 	}
 
-	private void addToCartList(final List<CartModel> listOfCarts)
+	@Required
+	public void setConfigurationService(final ConfigurationService configurationService)
 	{
-		if (cartList == null)
-		{
-			cartList = listOfCarts;
-		}
-		else
-		{
-			cartList.addAll(listOfCarts);
-		}
+		this.configurationService = configurationService;
+	}
+
+	protected ConfigurationService getConfigurationService()
+	{
+		return configurationService;
+	}
+
+	@Required
+	public void setCartWorkExecutor(final CartWorkExecutor cartWorkExecutor)
+	{
+		this.cartWorkExecutor = cartWorkExecutor;
+	}
+
+	protected CartWorkExecutor getCartWorkExecutor()
+	{
+		return cartWorkExecutor;
 	}
 
 	@Required
@@ -198,4 +310,26 @@ public class OptCustomerFacade extends DefaultCustomerFacade
 		return flexibleSearchService;
 	}
 
+	@Required
+	public void setCartTotalsCache(final CartTotalsCache cartTotalsCache)
+	{
+		this.cartTotalsCache = cartTotalsCache;
+	}
+
+	protected CartTotalsCache getCartTotalsCache()
+	{
+		return cartTotalsCache;
+	}
+
+	@Required
+	public void setRequestMemoizer(final RequestMemoizer requestMemoizer)
+	{
+		this.requestMemoizer = requestMemoizer;
+	}
+
+	protected RequestMemoizer getRequestMemoizer()
+	{
+		return requestMemoizer;
+	}
+
 }
\ No newline at end of file
@@ -13,13 +13,30 @@
  */
 package de.hybris.support.jalo;
 
+import de.hybris.platform.core.PK;
 import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.TenantAwareThreadFactory;
+import de.hybris.platform.core.model.order.CartEntryModel;
+import de.hybris.platform.core.model.order.CartModel;
+import de.hybris.platform.core.model.type.ComposedTypeModel;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.util.Config;
 import de.hybris.platform.util.JspContext;
 import de.hybris.support.constants.OptcustomerfacadeConstants;
+import de.hybris.support.services.LocalSessions;
 
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
+import org.springframework.context.ApplicationContext;
 
 
 
@@ -41,6 +58,15 @@ public class OptcustomerfacadeManager extends GeneratedOptcustomerfacadeManager
 	 * instance variable in your manager, the manager is created only once in the lifetime of a "deployment" or tenant.
 	 */
 
+	public enum WarmupState
+	{
+		IDLE, RUNNING, READY, FAILED
+	}
+
+	private volatile WarmupState warmupState = WarmupState.IDLE;
+
+	private ScheduledExecutorService warmupExecutor;
+
 
 	/**
 	 * Get the valid instance of this manager.
@@ -78,6 +104,92 @@ public class OptcustomerfacadeManager extends GeneratedOptcustomerfacadeManager
 		{
 			LOG.debug("init() of OptcustomerfacadeManager called. " + getTenant().getTenantID());
 		}
+		startWarmup();
+	}
+
+	/**
+	 * Schedules the warm-up of the facade dependencies on a background thread, so the start of the tenant is not
+	 * delayed. The first logins after a deploy otherwise pay for the lazy initialization of the type metadata, the
+	 * translation of the cart queries and the model converters of carts.
+	 */
+	protected void startWarmup()
+	{
+		if (!Config.getBoolean(OptcustomerfacadeConstants.WARMUP_ENABLED, true))
+		{
+			warmupState = WarmupState.READY;
+			return;
+		}
+		warmupExecutor = Executors.newSingleThreadScheduledExecutor(new TenantAwareThreadFactory(getTenant()));
+		warmupExecutor.schedule(this::warmUp, Config.getLong(OptcustomerfacadeConstants.WARMUP_DELAY, 30), TimeUnit.SECONDS);
+		// runs the scheduled warm-up and lets the thread end afterwards
+		warmupExecutor.shutdown();
+	}
+
+	protected void warmUp()
+	{
+		if (!getTenant().getJaloConnection().isSystemInitialized())
+		{
+			LOG.info("System is not initialized, skipping the warm-up of optcustomerfacade");
+			warmupState = WarmupState.READY;
+			return;
+		}
+		warmupState = WarmupState.RUNNING;
+		final long start = System.currentTimeMillis();
+		try
+		{
+			final ApplicationContext context = Registry.getApplicationContext();
+			final SessionService sessionService = context.getBean("sessionService", SessionService.class);
+			final UserService userService = context.getBean("userService", UserService.class);
+			LocalSessions.runAsAdmin(sessionService, userService, () -> warmUp(context));
+			warmupState = WarmupState.READY;
+			LOG.info(String.format("Warm-up of optcustomerfacade finished in %d ms", Long.valueOf(System.currentTimeMillis() - start)));
+		}
+		catch (final RuntimeException e)
+		{
+			warmupState = WarmupState.FAILED;
+			LOG.warn("Warm-up of optcustomerfacade failed, the remaining dependencies are initialized on demand", e);
+		}
+	}
+
+	private void warmUp(final ApplicationContext context)
+	{
+		final TypeService typeService = context.getBean("typeService", TypeService.class);
+		for (final String typeCode : new String[]
+		{ CartModel._TYPECODE, CartEntryModel._TYPECODE })
+		{
+			final ComposedTypeModel composedType = typeService.getComposedTypeForCode(typeCode);
+			typeService.getAttributeDescriptorsForType(composedType);
+		}
+
+		// creates the model converters of carts and entries, nothing is saved
+		final ModelService modelService = context.getBean("modelService", ModelService.class);
+		modelService.detach(modelService.create(CartModel.class));
+		modelService.detach(modelService.create(CartEntryModel.class));
+
+		final FlexibleSearchService flexibleSearchService = context.getBean("flexibleSearchService", FlexibleSearchService.class);
+		final FlexibleSearchQuery cartsExcept = new FlexibleSearchQuery(OptcustomerfacadeConstants.QUERY_CARTS_EXCEPT);
+		cartsExcept.addQueryParameter("pk", PK.NULL_PK);
+		flexibleSearchService.translate(cartsExcept);
+		final FlexibleSearchQuery cartPksAfter = new FlexibleSearchQuery(OptcustomerfacadeConstants.QUERY_CART_PKS_AFTER);
+		cartPksAfter.addQueryParameter("lastPk", PK.NULL_PK);
+		flexibleSearchService.translate(cartPksAfter);
+	}
+
+	/**
+	 * Whether the warm-up after the start of the tenant finished or is disabled. It is false during the delay before
+	 * the warm-up starts as well, a health check should treat {@link WarmupState#IDLE} and {@link WarmupState#RUNNING}
+	 * as "starting" and only {@link WarmupState#FAILED} as a failure, see {@link #getWarmupState()}.
+	 *
+	 * @return whether the warm-up finished or is disabled
+	 */
+	public boolean isReady()
+	{
+		return warmupState == WarmupState.READY;
+	}
+
+	public WarmupState getWarmupState()
+	{
+		return warmupState;
 	}
 
 	/**
@@ -92,6 +204,10 @@ public class OptcustomerfacadeManager extends GeneratedOptcustomerfacadeManager
 		{
 			LOG.debug("destroy() of OptcustomerfacadeManager called, current tenant: " + getTenant().getTenantID());
 		}
+		if (warmupExecutor != null)
+		{
+			warmupExecutor.shutdownNow();
+		}
 	}
 
 	/**
@@ -0,0 +1,149 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.memo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.Required;
+
+
+/**
+ * Creates a dynamic proxy of a service interface which memoizes the configured read methods in the
+ * {@link RequestMemoizer}. Calls of other methods are passed through. Unless they are configured as read-only methods
+ * they may change what was memoized, so they clear the memoized results of the current request first.
+ */
+public class MemoizingProxyFactoryBean implements FactoryBean<Object>
+{
+	private Object target;
+
+	private Class<?> serviceInterface;
+
+	private Set<String> memoizedMethods = Collections.emptySet();
+
+	private Set<String> readOnlyMethods = Collections.emptySet();
+
+	private RequestMemoizer memoizer;
+
+	private Object proxy;
+
+	@Override
+	public synchronized Object getObject()
+	{
+		if (proxy == null)
+		{
+			proxy = Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[]
+			{ serviceInterface }, new MemoizingInvocationHandler());
+		}
+		return proxy;
+	}
+
+	@Override
+	public Class<?> getObjectType()
+	{
+		return serviceInterface;
+	}
+
+	@Override
+	public boolean isSingleton()
+	{
+		return true;
+	}
+
+	@Required
+	public void setTarget(final Object target)
+	{
+		this.target = target;
+	}
+
+	@Required
+	public void setServiceInterface(final Class<?> serviceInterface)
+	{
+		this.serviceInterface = serviceInterface;
+	}
+
+	public void setMemoizedMethods(final Set<String> memoizedMethods)
+	{
+		this.memoizedMethods = new HashSet<>(memoizedMethods);
+	}
+
+	/**
+	 * Methods which are passed through without clearing the memoized results, only methods that change no state belong
+	 * here.
+	 */
+	public void setReadOnlyMethods(final Set<String> readOnlyMethods)
+	{
+		this.readOnlyMethods = new HashSet<>(readOnlyMethods);
+	}
+
+	@Required
+	public void setMemoizer(final RequestMemoizer memoizer)
+	{
+		this.memoizer = memoizer;
+	}
+
+	private class MemoizingInvocationHandler implements InvocationHandler
+	{
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+		{
+			if (method.getDeclaringClass() == Object.class)
+			{
+				return invokeTarget(method, args);
+			}
+			if (!memoizedMethods.contains(method.getName()))
+			{
+				if (!readOnlyMethods.contains(method.getName()))
+				{
+					memoizer.clear();
+				}
+				return invokeTarget(method, args);
+			}
+
+			final List<Object> key = new ArrayList<>();
+			key.add(serviceInterface.getName());
+			key.add(method.getName());
+			if (args != null)
+			{
+				key.addAll(Arrays.asList(args));
+			}
+			return memoizer.memoize(key, () -> invokeTarget(method, args));
+		}
+
+		private Object invokeTarget(final Method method, final Object[] args) throws Exception
+		{
+			try
+			{
+				return method.invoke(target, args);
+			}
+			catch (final InvocationTargetException e)
+			{
+				if (e.getCause() instanceof Error)
+				{
+					throw (Error) e.getCause();
+				}
+				throw (Exception) e.getCause();
+			}
+		}
+	}
+}
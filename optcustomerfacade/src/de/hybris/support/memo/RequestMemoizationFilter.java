@@ -0,0 +1,73 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.memo;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+
+/**
+ * Opens a {@link RequestMemoizer} scope for each request, so repeated lookups of the current user, the session cart
+ * and the store settings during the request are answered once. The scope is always closed when the request ends,
+ * nothing memoized survives into another request on the same thread.
+ * <p>
+ * The filter is defined in the core context as <code>requestMemoizationFilter</code> and only takes effect in the web
+ * applications whose filter chain contains it. The web module of this extension adds it to its own chain; a storefront
+ * has to add it to its filter chain after the session filter (in an accelerator storefront to the
+ * <code>storefrontTenantDefaultFilterChainList</code>), otherwise its requests, the login among them, run without a
+ * scope and nothing is memoized.
+ */
+public class RequestMemoizationFilter extends OncePerRequestFilter
+{
+	private static final Logger LOG = Logger.getLogger(RequestMemoizationFilter.class);
+
+	private RequestMemoizer memoizer;
+
+	@Override
+	protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+			final FilterChain filterChain) throws ServletException, IOException
+	{
+		final boolean started = memoizer.begin();
+		try
+		{
+			filterChain.doFilter(request, response);
+		}
+		finally
+		{
+			if (started)
+			{
+				final int hits = memoizer.end();
+				if (LOG.isDebugEnabled())
+				{
+					LOG.debug(String.format("%d memoized lookups for %s, %d hits in total", Integer.valueOf(hits),
+							request.getRequestURI(), Long.valueOf(memoizer.getHits())));
+				}
+			}
+		}
+	}
+
+	@Required
+	public void setMemoizer(final RequestMemoizer memoizer)
+	{
+		this.memoizer = memoizer;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.memo;
+
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Holds the results of memoized service calls for the length of one request. A scope is opened and closed by the
+ * {@link RequestMemoizationFilter}; outside a scope nothing is memoized. Writes through a memoizing proxy, every save
+ * or removal of a model committed by the request thread and {@link #clear()} drop everything memoized so far in the
+ * current scope, so changes made through the services without a proxy are seen as well. Session state changed through
+ * an unproxied service without saving a model, e.g. the session language, is only seen after such a clear or in the
+ * next request.
+ */
+public class RequestMemoizer implements AfterSaveListener
+{
+	private static final Object NULL = new Object();
+
+	private final ThreadLocal<Scope> scope = new ThreadLocal<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong clears = new AtomicLong();
+
+	/**
+	 * Opens a scope for the current thread unless one is open already.
+	 *
+	 * @return whether a scope was opened, only then the caller has to call {@link #end()}
+	 */
+	public boolean begin()
+	{
+		if (scope.get() != null)
+		{
+			return false;
+		}
+		scope.set(new Scope());
+		return true;
+	}
+
+	/**
+	 * Closes the scope of the current thread.
+	 *
+	 * @return the number of hits in the closed scope
+	 */
+	public int end()
+	{
+		final Scope current = scope.get();
+		scope.remove();
+		return current == null ? 0 : current.hits;
+	}
+
+	public boolean isActive()
+	{
+		return scope.get() != null;
+	}
+
+	/**
+	 * Drops all results memoized in the scope of the current thread.
+	 */
+	public void clear()
+	{
+		final Scope current = scope.get();
+		if (current != null && !current.values.isEmpty())
+		{
+			current.values.clear();
+			clears.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Called in the thread that committed the changes, drops what the scope of that thread memoized.
+	 */
+	@Override
+	public void afterSave(final Collection<AfterSaveEvent> events)
+	{
+		clear();
+	}
+
+	/**
+	 * Returns the memoized result for the key or calls the invocation and memoizes its result. Without an open scope the
+	 * invocation is always called.
+	 */
+	public Object memoize(final List<Object> key, final Callable<Object> invocation) throws Exception
+	{
+		final Scope current = scope.get();
+		if (current == null)
+		{
+			return invocation.call();
+		}
+		final Object value = current.values.get(key);
+		if (value != null)
+		{
+			current.hits++;
+			hits.incrementAndGet();
+			return value == NULL ? null : value;
+		}
+		misses.incrementAndGet();
+		final Object result = invocation.call();
+		current.values.put(key, result == null ? NULL : result);
+		return result;
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getClears()
+	{
+		return clears.get();
+	}
+
+	private static final class Scope
+	{
+		private final Map<List<Object>, Object> values = new HashMap<>();
+		private int hits;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import java.util.Date;
+
+
+/**
+ * Removes abandoned carts together with their entries. Saved carts are never removed.
+ */
+public interface CartPurgeService
+{
+	/**
+	 * Removes carts with the configured maximum ages, see <code>optcustomerfacade.cartpurge.*</code>.
+	 *
+	 * @return the number of removed carts
+	 */
+	long purge();
+
+	/**
+	 * @param anonymousBefore
+	 *           carts of the anonymous user last modified before this date are removed
+	 * @param staleBefore
+	 *           carts of any user last modified before this date are removed
+	 * @return the number of removed carts
+	 */
+	long purge(Date anonymousBefore, Date staleBefore);
+}
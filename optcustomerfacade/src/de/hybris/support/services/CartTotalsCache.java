@@ -0,0 +1,195 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.AbstractOrderEntryModel;
+import de.hybris.platform.core.model.order.CartModel;
+import de.hybris.platform.servicelayer.exceptions.ModelLoadingException;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+import de.hybris.platform.util.Config;
+import de.hybris.support.constants.OptcustomerfacadeConstants;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Required;
+
+
+/**
+ * Node-local, size bounded cache of {@link CartTotalsSnapshot}s keyed by cart pk. Snapshots are refreshed after a cart
+ * was recalculated through the facade and dropped when the cart, one of its entries or a new entry of the cart is
+ * saved or removed on this node. Invalidation only sees the saves of this node: a cart changed on another node of a
+ * cluster keeps its snapshot here until it is changed on this node, evicted or the node restarts. The cache is
+ * therefore off by default; only enable it with <code>optcustomerfacade.carttotals.cache.enabled</code> where carts are
+ * changed on a single node.
+ */
+public class CartTotalsCache implements AfterSaveListener
+{
+	private final Map<PK, CartTotalsSnapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Cart pk of every entry of a cached snapshot. */
+	private final ConcurrentMap<PK, PK> entryCarts = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private ModelService modelService;
+
+	public boolean isEnabled()
+	{
+		return Config.getBoolean(OptcustomerfacadeConstants.CART_TOTALS_CACHE_ENABLED, false);
+	}
+
+	/**
+	 * @return the snapshot of the cart or <code>null</code> if it is not cached
+	 */
+	public CartTotalsSnapshot get(final PK cartPk)
+	{
+		final CartTotalsSnapshot snapshot;
+		synchronized (snapshots)
+		{
+			snapshot = snapshots.get(cartPk);
+		}
+		(snapshot == null ? misses : hits).incrementAndGet();
+		return snapshot;
+	}
+
+	/**
+	 * Takes a new snapshot of the given cart and caches it.
+	 */
+	public CartTotalsSnapshot refresh(final CartModel cart)
+	{
+		final CartTotalsSnapshot snapshot = CartTotalsSnapshot.of(cart);
+		if (!isEnabled())
+		{
+			return snapshot;
+		}
+		final int maxSize = getMaxSize();
+		synchronized (snapshots)
+		{
+			remove(snapshots.put(snapshot.getCartPk(), snapshot));
+			snapshot.getEntryPks().forEach(entryPk -> entryCarts.put(entryPk, snapshot.getCartPk()));
+			final Iterator<CartTotalsSnapshot> eldest = snapshots.values().iterator();
+			while (snapshots.size() > maxSize && eldest.hasNext())
+			{
+				final CartTotalsSnapshot evicted = eldest.next();
+				eldest.remove();
+				evicted.getEntryPks().forEach(entryCarts::remove);
+			}
+		}
+		return snapshot;
+	}
+
+	public void invalidate(final PK cartPk)
+	{
+		synchronized (snapshots)
+		{
+			remove(snapshots.remove(cartPk));
+		}
+	}
+
+	private void remove(final CartTotalsSnapshot snapshot)
+	{
+		if (snapshot != null)
+		{
+			snapshot.getEntryPks().forEach(entryCarts::remove);
+		}
+	}
+
+	@Override
+	public void afterSave(final Collection<AfterSaveEvent> events)
+	{
+		synchronized (snapshots)
+		{
+			if (snapshots.isEmpty())
+			{
+				return;
+			}
+		}
+		for (final AfterSaveEvent event : events)
+		{
+			final PK pk = event.getPk();
+			if (pk != null)
+			{
+				final PK cartPk = entryCarts.get(pk);
+				if (cartPk != null)
+				{
+					invalidate(cartPk);
+				}
+				else if (event.getType() == AfterSaveEvent.CREATE && pk.getTypeCode() == Constants.TC.CartEntry)
+				{
+					// a new entry is not known to any snapshot yet, its cart is found through the entry
+					invalidate(getCartOfEntry(pk));
+				}
+				else
+				{
+					invalidate(pk);
+				}
+			}
+		}
+	}
+
+	private PK getCartOfEntry(final PK entryPk)
+	{
+		try
+		{
+			final AbstractOrderEntryModel entry = modelService.get(entryPk);
+			return entry.getOrder() == null ? null : entry.getOrder().getPk();
+		}
+		catch (final ModelLoadingException e)
+		{
+			// removed again in the meantime
+			return null;
+		}
+	}
+
+	protected int getMaxSize()
+	{
+		return Config.getInt(OptcustomerfacadeConstants.CART_TOTALS_CACHE_MAX_SIZE, 10000);
+	}
+
+	public int size()
+	{
+		synchronized (snapshots)
+		{
+			return snapshots.size();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	@Required
+	public void setModelService(final ModelService modelService)
+	{
+		this.modelService = modelService;
+	}
+}
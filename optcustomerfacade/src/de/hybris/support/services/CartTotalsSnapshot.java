@@ -0,0 +1,129 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.AbstractOrderEntryModel;
+import de.hybris.platform.core.model.order.CartModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Immutable summary of a cart as shown in the mini-cart and the header: number of entries and units, totals and
+ * currency. It holds no reference to the models it was taken from.
+ */
+public final class CartTotalsSnapshot
+{
+	/** Snapshot of a session without cart. */
+	public static final CartTotalsSnapshot EMPTY = new CartTotalsSnapshot(null, null, 0, 0, 0d, 0d, null, false,
+			Collections.<PK> emptyList());
+
+	private final PK cartPk;
+	private final String code;
+	private final int entryCount;
+	private final long totalUnitCount;
+	private final double subtotal;
+	private final double totalPrice;
+	private final String currencyIsocode;
+	private final boolean net;
+	private final List<PK> entryPks;
+
+	private CartTotalsSnapshot(final PK cartPk, final String code, final int entryCount, final long totalUnitCount,
+			final double subtotal, final double totalPrice, final String currencyIsocode, final boolean net,
+			final List<PK> entryPks)
+	{
+		this.cartPk = cartPk;
+		this.code = code;
+		this.entryCount = entryCount;
+		this.totalUnitCount = totalUnitCount;
+		this.subtotal = subtotal;
+		this.totalPrice = totalPrice;
+		this.currencyIsocode = currencyIsocode;
+		this.net = net;
+		this.entryPks = entryPks;
+	}
+
+	/**
+	 * Takes a snapshot of the current state of the given cart.
+	 */
+	public static CartTotalsSnapshot of(final CartModel cart)
+	{
+		final List<PK> entryPks = new ArrayList<>();
+		long units = 0;
+		for (final AbstractOrderEntryModel entry : cart.getEntries())
+		{
+			entryPks.add(entry.getPk());
+			units += entry.getQuantity() == null ? 0 : entry.getQuantity().longValue();
+		}
+		return new CartTotalsSnapshot(cart.getPk(), cart.getCode(), entryPks.size(), units, value(cart.getSubtotal()),
+				value(cart.getTotalPrice()), cart.getCurrency() == null ? null : cart.getCurrency().getIsocode(),
+				Boolean.TRUE.equals(cart.getNet()), Collections.unmodifiableList(entryPks));
+	}
+
+	private static double value(final Double value)
+	{
+		return value == null ? 0d : value.doubleValue();
+	}
+
+	public PK getCartPk()
+	{
+		return cartPk;
+	}
+
+	public String getCode()
+	{
+		return code;
+	}
+
+	public int getEntryCount()
+	{
+		return entryCount;
+	}
+
+	public long getTotalUnitCount()
+	{
+		return totalUnitCount;
+	}
+
+	public double getSubtotal()
+	{
+		return subtotal;
+	}
+
+	public double getTotalPrice()
+	{
+		return totalPrice;
+	}
+
+	public String getCurrencyIsocode()
+	{
+		return currencyIsocode;
+	}
+
+	public boolean isNet()
+	{
+		return net;
+	}
+
+	/**
+	 * @return pks of the entries at the time of the snapshot, used to invalidate the snapshot when an entry changes
+	 */
+	public List<PK> getEntryPks()
+	{
+		return entryPks;
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.Tenant;
+import de.hybris.platform.core.TenantAwareThreadFactory;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.util.Config;
+import de.hybris.support.constants.OptcustomerfacadeConstants;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+
+/**
+ * Runs units of blocking cart work, one unit per cart, configured with <code>optcustomerfacade.cartexecution.mode</code>:
+ * <ul>
+ * <li><code>inline</code> runs them one after the other on the calling thread</li>
+ * <li><code>pool</code> runs them on a fixed pool of <code>optcustomerfacade.cartexecution.pool.size</code> platform
+ * threads</li>
+ * <li><code>virtual</code> runs each unit on its own virtual thread; the JVM has to provide
+ * <code>Executors.newVirtualThreadPerTaskExecutor()</code>, it is looked up reflectively and the pool is used on older
+ * JVMs</li>
+ * </ul>
+ * However many units run at the same time, at most <code>optcustomerfacade.cartexecution.db.permits</code> of them use
+ * the database concurrently, which keeps a wide fan-out from draining the connection pool. Every unit runs in a session
+ * of its own with the tenant and the user of the caller.
+ */
+public class CartWorkExecutor
+{
+	private static final Logger LOG = Logger.getLogger(CartWorkExecutor.class);
+
+	public enum Mode
+	{
+		INLINE, POOL, VIRTUAL
+	}
+
+	private Mode mode = Mode.INLINE;
+
+	private ExecutorService executor;
+
+	private Semaphore dbPermits;
+
+	private SessionService sessionService;
+
+	private UserService userService;
+
+	public void init()
+	{
+		final int permits = Math.max(1, Config.getInt(OptcustomerfacadeConstants.CART_EXECUTION_DB_PERMITS, 8));
+		dbPermits = new Semaphore(permits, true);
+		mode = Mode.valueOf(Config.getString(OptcustomerfacadeConstants.CART_EXECUTION_MODE, "inline").toUpperCase(Locale.ROOT));
+		if (mode == Mode.VIRTUAL)
+		{
+			executor = newVirtualThreadPerTaskExecutor();
+			if (executor == null)
+			{
+				LOG.warn("Virtual threads are not available on this JVM, running cart work on a pool of platform threads");
+				mode = Mode.POOL;
+			}
+		}
+		if (mode == Mode.POOL)
+		{
+			final int poolSize = Math.max(1, Config.getInt(OptcustomerfacadeConstants.CART_EXECUTION_POOL_SIZE, 2 * permits));
+			executor = Executors.newFixedThreadPool(poolSize, new TenantAwareThreadFactory(Registry.getCurrentTenant()));
+		}
+		LOG.info("Cart work runs " + mode.name().toLowerCase(Locale.ROOT) + " with " + permits + " database permits");
+	}
+
+	public void destroy()
+	{
+		if (executor != null)
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (final NoSuchMethodException | IllegalAccessException | InvocationTargetException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Runs the unit for each of the given carts and waits until all are done.
+	 *
+	 * @param cartPks
+	 *           pks of the carts, each unit reads its cart itself in its own session
+	 * @param unit
+	 *           the read, recalculate and save work for one cart
+	 * @return the number of units that failed, failures are logged
+	 */
+	public int executeAll(final List<PK> cartPks, final Consumer<PK> unit)
+	{
+		final Tenant tenant = Registry.getCurrentTenant();
+		final UserModel user = userService.getCurrentUser();
+		if (mode == Mode.INLINE)
+		{
+			int failures = 0;
+			for (final PK cartPk : cartPks)
+			{
+				try
+				{
+					unit.accept(cartPk);
+				}
+				catch (final RuntimeException e)
+				{
+					LOG.warn("Cart unit of " + cartPk + " failed", e);
+					failures++;
+				}
+			}
+			return failures;
+		}
+
+		final List<Future<Boolean>> results = new ArrayList<>(cartPks.size());
+		cartPks.forEach(cartPk -> results.add(executor.submit(() -> Boolean.valueOf(run(tenant, user, cartPk, unit)))));
+
+		final long deadline = System.currentTimeMillis()
+				+ TimeUnit.SECONDS.toMillis(Config.getLong(OptcustomerfacadeConstants.CART_EXECUTION_TIMEOUT, 60));
+		int failures = 0;
+		for (final Future<Boolean> result : results)
+		{
+			try
+			{
+				failures += result.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS).booleanValue()
+						? 0 : 1;
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				results.forEach(pending -> pending.cancel(true));
+				return failures + 1;
+			}
+			catch (final ExecutionException | TimeoutException e)
+			{
+				result.cancel(true);
+				failures++;
+			}
+		}
+		if (failures > 0)
+		{
+			LOG.warn(failures + " of " + cartPks.size() + " cart units failed or timed out");
+		}
+		return failures;
+	}
+
+	private boolean run(final Tenant tenant, final UserModel user, final PK cartPk, final Consumer<PK> unit)
+	{
+		final boolean activateTenant = !Registry.hasCurrentTenant();
+		try
+		{
+			if (activateTenant)
+			{
+				Registry.setCurrentTenant(tenant);
+			}
+			dbPermits.acquire();
+			try
+			{
+				LocalSessions.runAs(sessionService, user, () -> unit.accept(cartPk));
+				return true;
+			}
+			finally
+			{
+				dbPermits.release();
+			}
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (final RuntimeException e)
+		{
+			LOG.warn("Cart unit of " + cartPk + " failed", e);
+			return false;
+		}
+		finally
+		{
+			if (activateTenant)
+			{
+				Registry.unsetCurrentTenant();
+			}
+		}
+	}
+
+	public Mode getMode()
+	{
+		return mode;
+	}
+
+	public int getAvailableDbPermits()
+	{
+		return dbPermits.availablePermits();
+	}
+
+	@Required
+	public void setSessionService(final SessionService sessionService)
+	{
+		this.sessionService = sessionService;
+	}
+
+	@Required
+	public void setUserService(final UserService userService)
+	{
+		this.userService = userService;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.session.Session;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+
+
+/**
+ * Runs background work in a session of its own: a new session is created, the work runs in a local view with the given
+ * user and the session is closed afterwards, so nothing is left bound to the (pooled) thread.
+ */
+public final class LocalSessions
+{
+	private LocalSessions()
+	{
+		// utility class
+	}
+
+	public static void runAs(final SessionService sessionService, final UserModel user, final Runnable task)
+	{
+		final Session session = sessionService.createNewSession();
+		try
+		{
+			sessionService.executeInLocalView(new SessionExecutionBody()
+			{
+				@Override
+				public void executeWithoutResult()
+				{
+					task.run();
+				}
+			}, user);
+		}
+		finally
+		{
+			sessionService.closeSession(session);
+		}
+	}
+
+	public static void runAsAdmin(final SessionService sessionService, final UserService userService, final Runnable task)
+	{
+		runAs(sessionService, userService.getAdminUser(), task);
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.media.MediaFolderModel;
+import de.hybris.platform.core.model.media.MediaModel;
+import de.hybris.platform.core.model.security.PrincipalGroupModel;
+import de.hybris.platform.core.model.security.PrincipalModel;
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+import de.hybris.platform.util.Config;
+import de.hybris.support.constants.OptcustomerfacadeConstants;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang.StringUtils;
+
+
+/**
+ * Caches the decisions of <code>isAccessGranted(media, principal)</code> of the media permission service for the
+ * secure media filter. The cache is off by default, see <code>optcustomerfacade.mediapermission.cache.enabled</code>.
+ * A decision is keyed by the media pk, the principal pk and the pks of all groups of the principal, nested groups
+ * included; the group pks of a principal are resolved once and cached next to the decisions. Decisions are kept for
+ * <code>optcustomerfacade.mediapermission.cache.ttl</code> seconds. They are dropped earlier when the permissions of the
+ * media are changed through a grant, deny or set method of the proxied service, or when the media, the principal or one
+ * of its groups is saved or removed on this node; the cached groups of the principal are dropped by the same saves.
+ * Permissions changed on another node, or changed on this node without going through the proxy or saving one of these
+ * items, are only seen once the decision expires. Media in the folders configured with
+ * <code>optcustomerfacade.mediapermission.publicfolders</code> are granted without asking the service at all.
+ */
+public class MediaPermissionCacheInterceptor implements MethodInterceptor, AfterSaveListener
+{
+	private static final String IS_ACCESS_GRANTED = "isAccessGranted";
+
+	private static final List<String> MUTATING_PREFIXES = Arrays.asList("grant", "deny", "set");
+
+	private final Map<DecisionKey, Decision> decisions = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Pks of all groups of a principal, nested groups included, guarded by the lock of {@link #decisions}. */
+	private final Map<PK, Set<PK>> principalGroups = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Media, principal and group pks of the cached decisions, may still hold pks of evicted decisions. */
+	private final Set<PK> watchedPks = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong publicHits = new AtomicLong();
+
+	@Override
+	public Object invoke(final MethodInvocation invocation) throws Throwable
+	{
+		final Object[] args = invocation.getArguments();
+		if (args.length == 0 || !(args[0] instanceof MediaModel))
+		{
+			return invocation.proceed();
+		}
+		if (IS_ACCESS_GRANTED.equals(invocation.getMethod().getName()) && args.length == 2
+				&& args[1] instanceof PrincipalModel)
+		{
+			return isAccessGranted(invocation, (MediaModel) args[0], (PrincipalModel) args[1]);
+		}
+		if (isMutating(invocation.getMethod().getName()))
+		{
+			invalidate(((MediaModel) args[0]).getPk());
+		}
+		return invocation.proceed();
+	}
+
+	private Object isAccessGranted(final MethodInvocation invocation, final MediaModel media, final PrincipalModel principal)
+			throws Throwable
+	{
+		if (isPublic(media.getFolder()))
+		{
+			publicHits.incrementAndGet();
+			return Boolean.TRUE;
+		}
+		if (!isEnabled() || media.getPk() == null || principal.getPk() == null)
+		{
+			return invocation.proceed();
+		}
+
+		final DecisionKey key;
+		synchronized (decisions)
+		{
+			final Set<PK> groupPks = principalGroups.get(principal.getPk());
+			key = groupPks == null ? null : new DecisionKey(media.getPk(), principal.getPk(), groupPks);
+			final Decision decision = key == null ? null : decisions.get(key);
+			if (decision != null && !decision.isExpired())
+			{
+				hits.incrementAndGet();
+				return decision.granted;
+			}
+		}
+
+		misses.incrementAndGet();
+		final Object granted = invocation.proceed();
+		cache(key == null ? new DecisionKey(media.getPk(), principal.getPk(), groupPks(principal)) : key, granted);
+		return granted;
+	}
+
+	private void cache(final DecisionKey key, final Object granted)
+	{
+		final long expiresAt = System.currentTimeMillis() + getTimeToLive();
+		final int maxSize = getMaxSize();
+		synchronized (decisions)
+		{
+			principalGroups.put(key.principalPk, key.groupPks);
+			decisions.put(key, new Decision(granted, expiresAt));
+			watchedPks.add(key.mediaPk);
+			watchedPks.add(key.principalPk);
+			watchedPks.addAll(key.groupPks);
+			evictEldest(decisions, maxSize);
+			evictEldest(principalGroups, maxSize);
+			if (watchedPks.size() > 4 * maxSize)
+			{
+				// drop the pks only evicted decisions were watched for
+				watchedPks.clear();
+				decisions.keySet().forEach(cached -> {
+					watchedPks.add(cached.mediaPk);
+					watchedPks.add(cached.principalPk);
+					watchedPks.addAll(cached.groupPks);
+				});
+				principalGroups.forEach((principalPk, groupPks) -> {
+					watchedPks.add(principalPk);
+					watchedPks.addAll(groupPks);
+				});
+			}
+		}
+	}
+
+	private static void evictEldest(final Map<?, ?> map, final int maxSize)
+	{
+		final Iterator<?> eldest = map.keySet().iterator();
+		while (map.size() > maxSize && eldest.hasNext())
+		{
+			eldest.next();
+			eldest.remove();
+		}
+	}
+
+	private static boolean isMutating(final String methodName)
+	{
+		return MUTATING_PREFIXES.stream().anyMatch(methodName::startsWith);
+	}
+
+	private boolean isPublic(final MediaFolderModel folder)
+	{
+		if (folder == null)
+		{
+			return false;
+		}
+		final String publicFolders = getPublicFolders();
+		if (StringUtils.isBlank(publicFolders))
+		{
+			return false;
+		}
+		for (final String qualifier : StringUtils.split(publicFolders, ','))
+		{
+			if (qualifier.trim().equals(folder.getQualifier()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Set<PK> groupPks(final PrincipalModel principal)
+	{
+		final Set<PrincipalGroupModel> groups = principal.getAllGroups();
+		if (groups == null || groups.isEmpty())
+		{
+			return Collections.emptySet();
+		}
+		final Set<PK> pks = new TreeSet<>();
+		groups.forEach(group -> pks.add(group.getPk()));
+		return pks;
+	}
+
+	@Override
+	public void afterSave(final Collection<AfterSaveEvent> events)
+	{
+		if (watchedPks.isEmpty())
+		{
+			return;
+		}
+		final Set<PK> changed = new HashSet<>();
+		for (final AfterSaveEvent event : events)
+		{
+			if (event.getPk() != null && watchedPks.contains(event.getPk()))
+			{
+				changed.add(event.getPk());
+			}
+		}
+		if (!changed.isEmpty())
+		{
+			synchronized (decisions)
+			{
+				decisions.keySet().removeIf(key -> key.isAffectedBy(changed));
+				principalGroups.entrySet().removeIf(
+						entry -> changed.contains(entry.getKey()) || entry.getValue().stream().anyMatch(changed::contains));
+				watchedPks.removeAll(changed);
+			}
+		}
+	}
+
+	public void invalidate(final PK mediaPk)
+	{
+		synchronized (decisions)
+		{
+			decisions.keySet().removeIf(key -> key.mediaPk.equals(mediaPk));
+		}
+	}
+
+	public void invalidate()
+	{
+		synchronized (decisions)
+		{
+			decisions.clear();
+			principalGroups.clear();
+			watchedPks.clear();
+		}
+	}
+
+	protected boolean isEnabled()
+	{
+		return Config.getBoolean(OptcustomerfacadeConstants.MEDIA_PERMISSION_CACHE_ENABLED, false);
+	}
+
+	protected long getTimeToLive()
+	{
+		return TimeUnit.SECONDS.toMillis(Config.getLong(OptcustomerfacadeConstants.MEDIA_PERMISSION_CACHE_TTL, 60));
+	}
+
+	protected int getMaxSize()
+	{
+		return Config.getInt(OptcustomerfacadeConstants.MEDIA_PERMISSION_CACHE_MAX_SIZE, 10000);
+	}
+
+	protected String getPublicFolders()
+	{
+		return Config.getParameter(OptcustomerfacadeConstants.MEDIA_PERMISSION_PUBLIC_FOLDERS);
+	}
+
+	public int size()
+	{
+		synchronized (decisions)
+		{
+			return decisions.size();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getPublicHits()
+	{
+		return publicHits.get();
+	}
+
+	private static final class DecisionKey
+	{
+		private final PK mediaPk;
+		private final PK principalPk;
+		private final Set<PK> groupPks;
+
+		private DecisionKey(final PK mediaPk, final PK principalPk, final Set<PK> groupPks)
+		{
+			this.mediaPk = mediaPk;
+			this.principalPk = principalPk;
+			this.groupPks = groupPks;
+		}
+
+		private boolean isAffectedBy(final Set<PK> changed)
+		{
+			return changed.contains(mediaPk) || changed.contains(principalPk) || groupPks.stream().anyMatch(changed::contains);
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof DecisionKey))
+			{
+				return false;
+			}
+			final DecisionKey other = (DecisionKey) obj;
+			return mediaPk.equals(other.mediaPk) && principalPk.equals(other.principalPk) && groupPks.equals(other.groupPks);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (mediaPk.hashCode() * 31 + principalPk.hashCode()) * 31 + groupPks.hashCode();
+		}
+	}
+
+	private static final class Decision
+	{
+		private final Object granted;
+		private final long expiresAt;
+
+		private Decision(final Object granted, final long expiresAt)
+		{
+			this.granted = granted;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired()
+		{
+			return System.currentTimeMillis() > expiresAt;
+		}
+	}
+}
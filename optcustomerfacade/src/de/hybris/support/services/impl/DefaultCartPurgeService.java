@@ -0,0 +1,246 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services.impl;
+
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.TenantAwareThreadFactory;
+import de.hybris.platform.core.model.order.CartEntryModel;
+import de.hybris.platform.core.model.order.CartModel;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.tx.Transaction;
+import de.hybris.platform.util.Config;
+import de.hybris.support.constants.OptcustomerfacadeConstants;
+import de.hybris.support.services.CartPurgeService;
+import de.hybris.support.services.LocalSessions;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+
+/**
+ * Finds purgeable carts in ascending pk order and cuts them into pk ranges of at most
+ * <code>optcustomerfacade.cartpurge.partitionsize</code> carts. Each range is deleted in its own transaction by one
+ * of <code>optcustomerfacade.cartpurge.workers</code> workers, which first removes all entries of the range in one
+ * bulk removal and then the carts. After every range a worker pauses for
+ * <code>optcustomerfacade.cartpurge.throttle.ms</code>, so a purge running next to live traffic only takes a bounded
+ * share of the database.
+ */
+public class DefaultCartPurgeService implements CartPurgeService
+{
+	private static final Logger LOG = Logger.getLogger(DefaultCartPurgeService.class);
+
+	private static final String PURGEABLE = "{c.saveTime} IS NULL AND ({c.modifiedtime} < ?staleBefore"
+			+ " OR ({c.user} = ?anonymous AND {c.modifiedtime} < ?anonymousBefore))";
+
+	private static final String SELECT_PURGEABLE_CART_PKS = "SELECT {c.pk} FROM {Cart AS c} WHERE {c.pk} > ?lastPk AND "
+			+ PURGEABLE + " ORDER BY {c.pk} ASC";
+
+	private static final String SELECT_PURGEABLE_CARTS_IN_RANGE = "SELECT {c.pk} FROM {Cart AS c} WHERE {c.pk} >= ?from"
+			+ " AND {c.pk} <= ?to AND " + PURGEABLE;
+
+	private static final String SELECT_ENTRIES_OF_CARTS = "SELECT {e.pk} FROM {CartEntry AS e} WHERE {e.order} IN (?carts)";
+
+	private FlexibleSearchService flexibleSearchService;
+
+	private ModelService modelService;
+
+	private SessionService sessionService;
+
+	private UserService userService;
+
+	@Override
+	public long purge()
+	{
+		final long now = System.currentTimeMillis();
+		return purge(
+				new Date(now - TimeUnit.DAYS.toMillis(Config.getLong(OptcustomerfacadeConstants.CART_PURGE_ANONYMOUS_MAX_AGE, 7))),
+				new Date(now - TimeUnit.DAYS.toMillis(Config.getLong(OptcustomerfacadeConstants.CART_PURGE_STALE_MAX_AGE, 30))));
+	}
+
+	@Override
+	public long purge(final Date anonymousBefore, final Date staleBefore)
+	{
+		final int workers = Math.max(1, Config.getInt(OptcustomerfacadeConstants.CART_PURGE_WORKERS, 2));
+		final int partitionSize = Math.max(1, Config.getInt(OptcustomerfacadeConstants.CART_PURGE_PARTITION_SIZE, 100));
+		final Map<String, Object> params = new HashMap<>();
+		params.put("anonymousBefore", anonymousBefore);
+		params.put("staleBefore", staleBefore);
+		params.put("anonymous", userService.getAnonymousUser());
+
+		// at most two partitions per worker are cut ahead of the deletes
+		final Semaphore pending = new Semaphore(workers * 2);
+		final AtomicLong removed = new AtomicLong();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final long start = System.currentTimeMillis();
+		final ExecutorService executor = Executors.newFixedThreadPool(workers,
+				new TenantAwareThreadFactory(Registry.getCurrentTenant()));
+		int partitions = 0;
+		try
+		{
+			PK lastPk = PK.NULL_PK;
+			List<PK> pks;
+			while (!failed.get() && !(pks = readPurgeablePks(params, lastPk, partitionSize)).isEmpty())
+			{
+				final PK from = pks.get(0);
+				final PK to = pks.get(pks.size() - 1);
+				pending.acquire();
+				executor.execute(() -> {
+					try
+					{
+						removed.addAndGet(purgePartition(params, from, to));
+					}
+					catch (final RuntimeException e)
+					{
+						LOG.error("Purge of carts " + from + " to " + to + " failed, the remaining carts are removed by the next purge",
+								e);
+						failed.set(true);
+					}
+					finally
+					{
+						pending.release();
+					}
+				});
+				partitions++;
+				lastPk = to;
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			LOG.warn("Cart purge interrupted");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		LOG.info(String.format("Removed %d carts in %d partitions in %d ms", Long.valueOf(removed.get()),
+				Integer.valueOf(partitions), Long.valueOf(System.currentTimeMillis() - start)));
+		return removed.get();
+	}
+
+	protected List<PK> readPurgeablePks(final Map<String, Object> params, final PK lastPk, final int count)
+	{
+		final FlexibleSearchQuery query = new FlexibleSearchQuery(SELECT_PURGEABLE_CART_PKS, params);
+		query.addQueryParameter("lastPk", lastPk);
+		query.setResultClassList(Collections.singletonList(PK.class));
+		query.setCount(count);
+		return flexibleSearchService.<PK> search(query).getResult();
+	}
+
+	/**
+	 * Removes the purgeable carts of one pk range in one transaction. The carts are read again inside the transaction,
+	 * carts that were modified since the range was cut are kept.
+	 *
+	 * @return the number of removed carts
+	 */
+	protected int purgePartition(final Map<String, Object> params, final PK from, final PK to)
+	{
+		final int[] removed = new int[1];
+		LocalSessions.runAsAdmin(sessionService, userService, () -> {
+			final Transaction tx = Transaction.current();
+			tx.begin();
+			boolean success = false;
+			try
+			{
+				final FlexibleSearchQuery cartQuery = new FlexibleSearchQuery(SELECT_PURGEABLE_CARTS_IN_RANGE, params);
+				cartQuery.addQueryParameter("from", from);
+				cartQuery.addQueryParameter("to", to);
+				final List<CartModel> carts = flexibleSearchService.<CartModel> search(cartQuery).getResult();
+				if (!carts.isEmpty())
+				{
+					final FlexibleSearchQuery entryQuery = new FlexibleSearchQuery(SELECT_ENTRIES_OF_CARTS);
+					entryQuery.addQueryParameter("carts", carts);
+					final List<CartEntryModel> entries = flexibleSearchService.<CartEntryModel> search(entryQuery).getResult();
+					modelService.removeAll(entries);
+					modelService.removeAll(carts);
+				}
+				removed[0] = carts.size();
+				success = true;
+			}
+			finally
+			{
+				if (success)
+				{
+					tx.commit();
+				}
+				else
+				{
+					tx.rollback();
+				}
+			}
+		});
+		throttle();
+		return removed[0];
+	}
+
+	private void throttle()
+	{
+		final long pause = Config.getLong(OptcustomerfacadeConstants.CART_PURGE_THROTTLE, 200);
+		if (pause > 0)
+		{
+			try
+			{
+				Thread.sleep(pause);
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Required
+	public void setFlexibleSearchService(final FlexibleSearchService flexibleSearchService)
+	{
+		this.flexibleSearchService = flexibleSearchService;
+	}
+
+	@Required
+	public void setModelService(final ModelService modelService)
+	{
+		this.modelService = modelService;
+	}
+
+	@Required
+	public void setSessionService(final SessionService sessionService)
+	{
+		this.sessionService = sessionService;
+	}
+
+	@Required
+	public void setUserService(final UserService userService)
+	{
+		this.userService = userService;
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.facades.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.commerceservices.order.CommerceCartService;
+import de.hybris.platform.core.model.order.CartModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.search.SearchResult;
+import de.hybris.support.memo.RequestMemoizer;
+import de.hybris.support.services.CartTotalsCache;
+import de.hybris.support.services.CartWorkExecutor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Drives concurrent {@link OptCustomerFacade#loginSuccess()} calls against stubbed services, all released at the same
+ * moment, and checks that the carts shared by the logins lose no update and never grow beyond their capacity.
+ */
+@UnitTest
+public class OptCustomerFacadeConcurrencyTest
+{
+	private static final int THREADS = 16;
+	private static final int LOGINS_PER_THREAD = 200;
+	private static final int CARTS_PER_SEARCH = 5;
+
+	private final AtomicInteger sessionUpdates = new AtomicInteger();
+
+	private final AtomicInteger databaseCarts = new AtomicInteger();
+
+	private OptCustomerFacade facade;
+
+	private Configuration configuration;
+
+	private CommerceCartService commerceCartService;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp()
+	{
+		facade = new OptCustomerFacade()
+		{
+			@Override
+			protected void updateSessionAfterLogin()
+			{
+				sessionUpdates.incrementAndGet();
+			}
+		};
+
+		configuration = mock(Configuration.class);
+		final ConfigurationService configurationService = mock(ConfigurationService.class);
+		when(configurationService.getConfiguration()).thenReturn(configuration);
+
+		final ModelService modelService = mock(ModelService.class);
+		when(modelService.clone(any(CartModel.class))).thenAnswer(invocation -> new CartModel());
+
+		final FlexibleSearchService flexibleSearchService = mock(FlexibleSearchService.class);
+		when(flexibleSearchService.search(any(FlexibleSearchQuery.class))).thenAnswer(invocation -> {
+			final List<CartModel> carts = new ArrayList<>();
+			for (int i = 0; i < CARTS_PER_SEARCH; i++)
+			{
+				final CartModel cart = new CartModel();
+				cart.setCode("db-" + databaseCarts.incrementAndGet());
+				carts.add(cart);
+			}
+			final SearchResult<CartModel> result = mock(SearchResult.class);
+			when(result.getResult()).thenReturn(carts);
+			return result;
+		});
+
+		commerceCartService = mock(CommerceCartService.class);
+
+		facade.setConfigurationService(configurationService);
+		facade.setModelService(modelService);
+		facade.setFlexibleSearchService(flexibleSearchService);
+		facade.setCommerceCartService(commerceCartService);
+		facade.setCartTotalsCache(mock(CartTotalsCache.class));
+		facade.setRequestMemoizer(new RequestMemoizer());
+		final CartWorkExecutor cartWorkExecutor = mock(CartWorkExecutor.class);
+		when(cartWorkExecutor.getMode()).thenReturn(CartWorkExecutor.Mode.INLINE);
+		facade.setCartWorkExecutor(cartWorkExecutor);
+
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void shouldKeepTheCartOfEveryConcurrentLogin() throws Exception
+	{
+		readCartsFromDatabase(false, false);
+		facade.setCartListCapacity(THREADS * LOGINS_PER_THREAD);
+
+		loginConcurrently();
+
+		assertEquals(THREADS * LOGINS_PER_THREAD, sessionUpdates.get());
+		assertUniqueCarts(THREADS * LOGINS_PER_THREAD);
+	}
+
+	@Test
+	public void shouldNotGrowBeyondCapacityUnderConcurrentLogins() throws Exception
+	{
+		readCartsFromDatabase(false, false);
+		facade.setCartListCapacity(100);
+
+		loginConcurrently();
+
+		assertEquals(THREADS * LOGINS_PER_THREAD, sessionUpdates.get());
+		assertUniqueCarts(100);
+	}
+
+	@Test
+	public void shouldRecalculateABoundedListOfDatabaseCarts() throws Exception
+	{
+		readCartsFromDatabase(true, true);
+		facade.setCartListCapacity(50);
+
+		loginConcurrently();
+
+		assertUniqueCarts(50);
+		verify(commerceCartService, atLeast(THREADS * LOGINS_PER_THREAD)).recalculateCart(any(CartModel.class));
+	}
+
+	private void readCartsFromDatabase(final boolean readCartsFromDatabase, final boolean recalculate)
+	{
+		when(Boolean.valueOf(configuration.getBoolean(eq("read.carts.from.db"), anyBoolean())))
+				.thenReturn(Boolean.valueOf(readCartsFromDatabase));
+		when(Boolean.valueOf(configuration.getBoolean(eq("recalculate.cart"), anyBoolean())))
+				.thenReturn(Boolean.valueOf(recalculate));
+	}
+
+	private void loginConcurrently() throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		for (int i = 0; i < THREADS; i++)
+		{
+			executor.execute(() -> {
+				try
+				{
+					start.await();
+					for (int login = 0; login < LOGINS_PER_THREAD; login++)
+					{
+						facade.loginSuccess();
+					}
+				}
+				catch (final Throwable e) //NOPMD
+				{
+					failures.add(e);
+				}
+				finally
+				{
+					done.countDown();
+				}
+			});
+		}
+		start.countDown();
+		assertTrue("logins did not finish in time", done.await(60, TimeUnit.SECONDS));
+		assertTrue("logins failed: " + failures, failures.isEmpty());
+	}
+
+	private void assertUniqueCarts(final int expectedSize)
+	{
+		final List<CartModel> carts = facade.getListOfCarts();
+		assertEquals(expectedSize, carts.size());
+		final Set<String> codes = new HashSet<>();
+		carts.forEach(cart -> codes.add(cart.getCode()));
+		assertEquals("carts were duplicated or lost", expectedSize, codes.size());
+	}
+}
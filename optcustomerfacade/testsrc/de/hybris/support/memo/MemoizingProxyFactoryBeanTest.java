@@ -0,0 +1,128 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.memo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.exceptions.UnknownIdentifierException;
+import de.hybris.platform.servicelayer.user.UserService;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks which calls through a {@link MemoizingProxyFactoryBean} proxy are memoized and which clear the memoized
+ * results.
+ */
+@UnitTest
+public class MemoizingProxyFactoryBeanTest
+{
+	private final RequestMemoizer memoizer = new RequestMemoizer();
+
+	private UserService target;
+
+	private UserService proxy;
+
+	private UserModel user;
+
+	@Before
+	public void setUp()
+	{
+		target = mock(UserService.class);
+		user = mock(UserModel.class);
+		when(target.getCurrentUser()).thenReturn(user);
+
+		final MemoizingProxyFactoryBean factoryBean = new MemoizingProxyFactoryBean();
+		factoryBean.setTarget(target);
+		factoryBean.setServiceInterface(UserService.class);
+		factoryBean.setMemoizer(memoizer);
+		factoryBean.setMemoizedMethods(Collections.singleton("getCurrentUser"));
+		factoryBean.setReadOnlyMethods(Collections.singleton("getAdminUser"));
+		proxy = (UserService) factoryBean.getObject();
+
+		memoizer.begin();
+	}
+
+	@After
+	public void tearDown()
+	{
+		memoizer.end();
+	}
+
+	@Test
+	public void shouldCallTheTargetOnceForAMemoizedMethod()
+	{
+		assertSame(user, proxy.getCurrentUser());
+		assertSame(user, proxy.getCurrentUser());
+
+		verify(target, times(1)).getCurrentUser();
+	}
+
+	@Test
+	public void shouldKeepMemoizedResultsOverReadOnlyCalls()
+	{
+		proxy.getCurrentUser();
+		proxy.getAdminUser();
+		proxy.getCurrentUser();
+
+		verify(target, times(1)).getCurrentUser();
+		verify(target).getAdminUser();
+	}
+
+	@Test
+	public void shouldClearMemoizedResultsOnOtherCalls()
+	{
+		proxy.getCurrentUser();
+		proxy.setCurrentUser(mock(UserModel.class));
+		proxy.getCurrentUser();
+
+		verify(target, times(2)).getCurrentUser();
+	}
+
+	@Test
+	public void shouldClearMemoizedResultsOnUnlistedReadsAsWell()
+	{
+		// a method is not trusted to be free of side effects because of its name
+		proxy.getCurrentUser();
+		proxy.getAnonymousUser();
+		proxy.getCurrentUser();
+
+		verify(target, times(2)).getCurrentUser();
+	}
+
+	@Test(expected = UnknownIdentifierException.class)
+	public void shouldPassTheExceptionOfTheTargetThrough()
+	{
+		when(target.getUserForUID("unknown")).thenThrow(new UnknownIdentifierException("unknown"));
+
+		proxy.getUserForUID("unknown");
+	}
+
+	@Test
+	public void shouldPassObjectMethodsToTheTarget()
+	{
+		assertEquals(target.toString(), proxy.toString());
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.memo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.tx.AfterSaveEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+/**
+ * Checks the scope handling of {@link RequestMemoizer} and what drops memoized results.
+ */
+@UnitTest
+public class RequestMemoizerTest
+{
+	private static final List<Object> KEY = Arrays.<Object> asList("service", "getCurrentUser");
+
+	private final RequestMemoizer memoizer = new RequestMemoizer();
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	@After
+	public void tearDown()
+	{
+		memoizer.end();
+	}
+
+	@Test
+	public void shouldNotMemoizeWithoutScope() throws Exception
+	{
+		assertFalse(memoizer.isActive());
+
+		memoizer.memoize(KEY, this::call);
+		memoizer.memoize(KEY, this::call);
+
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void shouldAnswerRepeatedCallsOnceInAScope() throws Exception
+	{
+		assertTrue(memoizer.begin());
+
+		assertEquals(Integer.valueOf(1), memoizer.memoize(KEY, this::call));
+		assertEquals(Integer.valueOf(1), memoizer.memoize(KEY, this::call));
+
+		assertEquals(1, calls.get());
+		assertEquals(1, memoizer.end());
+		assertFalse(memoizer.isActive());
+	}
+
+	@Test
+	public void shouldMemoizeNullResults() throws Exception
+	{
+		memoizer.begin();
+
+		assertNull(memoizer.memoize(KEY, this::callReturningNull));
+		assertNull(memoizer.memoize(KEY, this::callReturningNull));
+
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void shouldKeepTheOuterScopeOfNestedBegins() throws Exception
+	{
+		assertTrue(memoizer.begin());
+		assertFalse(memoizer.begin());
+
+		memoizer.memoize(KEY, this::call);
+		memoizer.memoize(KEY, this::call);
+
+		assertTrue(memoizer.isActive());
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void shouldDropMemoizedResultsOnClear() throws Exception
+	{
+		memoizer.begin();
+		memoizer.memoize(KEY, this::call);
+
+		memoizer.clear();
+		memoizer.memoize(KEY, this::call);
+
+		assertEquals(2, calls.get());
+		assertEquals(1, memoizer.getClears());
+	}
+
+	@Test
+	public void shouldDropMemoizedResultsWhenTheRequestSavesAModel() throws Exception
+	{
+		memoizer.begin();
+		memoizer.memoize(KEY, this::call);
+
+		memoizer.afterSave(Collections.<AfterSaveEvent> emptyList());
+		memoizer.memoize(KEY, this::call);
+
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void shouldNotShareScopesBetweenThreads() throws Exception
+	{
+		memoizer.begin();
+		memoizer.memoize(KEY, this::call);
+
+		final Thread other = new Thread(() -> {
+			try
+			{
+				memoizer.memoize(KEY, this::call);
+			}
+			catch (final Exception e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+		other.start();
+		other.join();
+
+		assertEquals(2, calls.get());
+	}
+
+	private Object call()
+	{
+		return Integer.valueOf(calls.incrementAndGet());
+	}
+
+	private Object callReturningNull()
+	{
+		calls.incrementAndGet();
+		return null;
+	}
+}
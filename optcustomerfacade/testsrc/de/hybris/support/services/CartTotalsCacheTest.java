@@ -0,0 +1,181 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.AbstractOrderEntryModel;
+import de.hybris.platform.core.model.order.CartModel;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.tx.AfterSaveEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks which saves drop a cached {@link CartTotalsSnapshot} and how the cache is bounded.
+ */
+@UnitTest
+public class CartTotalsCacheTest
+{
+	private static final int MAX_SIZE = 2;
+
+	private boolean enabled = true;
+
+	private ModelService modelService;
+
+	private CartTotalsCache cache;
+
+	@Before
+	public void setUp()
+	{
+		modelService = mock(ModelService.class);
+		cache = new CartTotalsCache()
+		{
+			@Override
+			public boolean isEnabled()
+			{
+				return enabled;
+			}
+
+			@Override
+			protected int getMaxSize()
+			{
+				return MAX_SIZE;
+			}
+		};
+		cache.setModelService(modelService);
+	}
+
+	@Test
+	public void shouldServeTheSnapshotTakenAtRefresh()
+	{
+		final CartModel cart = cart(1, entry(1, 2), entry(2, 3));
+
+		cache.refresh(cart);
+		final CartTotalsSnapshot snapshot = cache.get(cart.getPk());
+
+		assertEquals(2, snapshot.getEntryCount());
+		assertEquals(5, snapshot.getTotalUnitCount());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void shouldDropTheSnapshotWhenTheCartIsSaved()
+	{
+		final CartModel cart = cart(1);
+		cache.refresh(cart);
+
+		cache.afterSave(Collections.singletonList(event(cart.getPk(), AfterSaveEvent.UPDATE)));
+
+		assertNull(cache.get(cart.getPk()));
+	}
+
+	@Test
+	public void shouldDropTheSnapshotWhenAKnownEntryIsRemoved()
+	{
+		final AbstractOrderEntryModel entry = entry(1, 1);
+		final CartModel cart = cart(1, entry);
+		cache.refresh(cart);
+
+		cache.afterSave(Collections.singletonList(event(entry.getPk(), AfterSaveEvent.REMOVE)));
+
+		assertNull(cache.get(cart.getPk()));
+		verify(modelService, never()).get(any(PK.class));
+	}
+
+	@Test
+	public void shouldDropTheSnapshotWhenANewEntryIsAddedToTheCart()
+	{
+		final CartModel cart = cart(1, entry(1, 1));
+		final CartModel otherCart = cart(2);
+		cache.refresh(cart);
+		cache.refresh(otherCart);
+		final AbstractOrderEntryModel newEntry = entry(2, 1);
+		when(newEntry.getOrder()).thenReturn(cart);
+		when(modelService.get(newEntry.getPk())).thenReturn(newEntry);
+
+		cache.afterSave(Collections.singletonList(event(newEntry.getPk(), AfterSaveEvent.CREATE)));
+
+		assertNull(cache.get(cart.getPk()));
+		assertNotNull(cache.get(otherCart.getPk()));
+	}
+
+	@Test
+	public void shouldEvictTheLeastRecentlyUsedSnapshot()
+	{
+		final CartModel first = cart(1, entry(1, 1));
+		final CartModel second = cart(2);
+		cache.refresh(first);
+		cache.refresh(second);
+		cache.get(first.getPk());
+
+		cache.refresh(cart(3));
+
+		assertEquals(MAX_SIZE, cache.size());
+		assertNotNull(cache.get(first.getPk()));
+		assertNull(cache.get(second.getPk()));
+	}
+
+	@Test
+	public void shouldNotCacheWhenDisabled()
+	{
+		enabled = false;
+		final CartModel cart = cart(1, entry(1, 4));
+
+		assertEquals(4, cache.refresh(cart).getTotalUnitCount());
+		assertEquals(0, cache.size());
+	}
+
+	private static CartModel cart(final long counter, final AbstractOrderEntryModel... entries)
+	{
+		final CartModel cart = mock(CartModel.class);
+		when(cart.getPk()).thenReturn(PK.createFixedCounterPK(Constants.TC.Cart, counter));
+		final List<AbstractOrderEntryModel> cartEntries = new ArrayList<>();
+		Collections.addAll(cartEntries, entries);
+		when(cart.getEntries()).thenReturn(cartEntries);
+		return cart;
+	}
+
+	private static AbstractOrderEntryModel entry(final long counter, final long quantity)
+	{
+		final AbstractOrderEntryModel entry = mock(AbstractOrderEntryModel.class);
+		when(entry.getPk()).thenReturn(PK.createFixedCounterPK(Constants.TC.CartEntry, counter));
+		when(entry.getQuantity()).thenReturn(Long.valueOf(quantity));
+		return entry;
+	}
+
+	private static AfterSaveEvent event(final PK pk, final int type)
+	{
+		final AfterSaveEvent event = mock(AfterSaveEvent.class);
+		when(event.getPk()).thenReturn(pk);
+		when(event.getType()).thenReturn(Integer.valueOf(type));
+		return event;
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.hybris.bootstrap.annotations.IntegrationTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.ServicelayerBaseTest;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import de.hybris.platform.util.Config;
+import de.hybris.support.constants.OptcustomerfacadeConstants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Resource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Runs a {@link CartWorkExecutor} in pool mode with more threads than database permits on the platform and checks
+ * that the permits bound the units, the sessions of the units and how failures and timeouts are counted.
+ */
+@IntegrationTest
+public class CartWorkExecutorIntegrationTest extends ServicelayerBaseTest
+{
+	private static final int PERMITS = 3;
+	private static final int POOL_SIZE = 4 * PERMITS;
+	private static final int UNITS = 30;
+
+	@Resource
+	private SessionService sessionService;
+
+	@Resource
+	private UserService userService;
+
+	private final Map<String, String> previousParameters = new HashMap<>();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	private CartWorkExecutor executor;
+
+	@Before
+	public void setUp()
+	{
+		setParameter(OptcustomerfacadeConstants.CART_EXECUTION_MODE, "pool");
+		setParameter(OptcustomerfacadeConstants.CART_EXECUTION_POOL_SIZE, String.valueOf(POOL_SIZE));
+		setParameter(OptcustomerfacadeConstants.CART_EXECUTION_DB_PERMITS, String.valueOf(PERMITS));
+		setParameter(OptcustomerfacadeConstants.CART_EXECUTION_TIMEOUT, "60");
+		executor = new CartWorkExecutor();
+		executor.setSessionService(sessionService);
+		executor.setUserService(userService);
+		executor.init();
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.destroy();
+		previousParameters.forEach(Config::setParameter);
+	}
+
+	@Test
+	public void shouldNeverRunMoreUnitsThanDatabasePermits()
+	{
+		// the pool is wider than the permits, only the permits keep the units from all running at once
+		final UserModel caller = userService.getCurrentUser();
+		final Queue<UserModel> users = new ConcurrentLinkedQueue<>();
+
+		final int failures = executor.executeAll(cartPks(UNITS), cartPk -> {
+			users.add(userService.getCurrentUser());
+			work(50);
+		});
+
+		assertEquals(CartWorkExecutor.Mode.POOL, executor.getMode());
+		assertEquals(0, failures);
+		assertEquals(UNITS, users.size());
+		users.forEach(user -> assertEquals(caller, user));
+		assertTrue("more units than permits ran at once: " + maxRunning.get(), maxRunning.get() <= PERMITS);
+		assertEquals("the permits were not used up", PERMITS, maxRunning.get());
+		assertEquals(PERMITS, executor.getAvailableDbPermits());
+	}
+
+	@Test
+	public void shouldCountFailedUnits()
+	{
+		final PK failing = PK.fromLong(3);
+
+		final int failures = executor.executeAll(cartPks(10), cartPk -> {
+			if (failing.equals(cartPk))
+			{
+				throw new IllegalStateException("cart " + cartPk + " could not be calculated");
+			}
+		});
+
+		assertEquals(1, failures);
+		assertEquals(PERMITS, executor.getAvailableDbPermits());
+	}
+
+	@Test
+	public void shouldCountTimedOutUnitsAsFailures() throws InterruptedException
+	{
+		final PK blocking = PK.fromLong(1);
+		final CountDownLatch released = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		setParameter(OptcustomerfacadeConstants.CART_EXECUTION_TIMEOUT, "1");
+
+		final long start = System.currentTimeMillis();
+		final int failures = executor.executeAll(cartPks(5), cartPk -> {
+			if (blocking.equals(cartPk))
+			{
+				try
+				{
+					released.await();
+				}
+				catch (final InterruptedException e)
+				{
+					interrupted.countDown();
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		assertEquals(1, failures);
+		assertTrue("the timeout was not applied", System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(10));
+		assertTrue("the timed out unit was not cancelled", interrupted.await(10, TimeUnit.SECONDS));
+		released.countDown();
+	}
+
+	private void work(final long millis)
+	{
+		final int now = running.incrementAndGet();
+		maxRunning.accumulateAndGet(now, Math::max);
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			running.decrementAndGet();
+		}
+	}
+
+	private void setParameter(final String key, final String value)
+	{
+		previousParameters.putIfAbsent(key, Config.getParameter(key));
+		Config.setParameter(key, value);
+	}
+
+	private static List<PK> cartPks(final int count)
+	{
+		final List<PK> pks = new ArrayList<>(count);
+		for (int i = 1; i <= count; i++)
+		{
+			pks.add(PK.fromLong(i));
+		}
+		return pks;
+	}
+}
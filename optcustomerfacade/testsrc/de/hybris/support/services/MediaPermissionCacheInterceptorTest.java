@@ -0,0 +1,270 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.Constants;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.media.MediaFolderModel;
+import de.hybris.platform.core.model.media.MediaModel;
+import de.hybris.platform.core.model.security.PrincipalGroupModel;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.media.MediaPermissionService;
+import de.hybris.platform.tx.AfterSaveEvent;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks which decisions {@link MediaPermissionCacheInterceptor} serves from its cache and which changes drop them.
+ */
+@UnitTest
+public class MediaPermissionCacheInterceptorTest
+{
+	private static final String PUBLIC_FOLDER = "images";
+
+	private boolean enabled = true;
+
+	private MediaPermissionCacheInterceptor interceptor;
+
+	private MediaModel media;
+
+	private UserModel user;
+
+	private PrincipalGroupModel nestedGroup;
+
+	@Before
+	public void setUp()
+	{
+		interceptor = new MediaPermissionCacheInterceptor()
+		{
+			@Override
+			protected boolean isEnabled()
+			{
+				return enabled;
+			}
+
+			@Override
+			protected long getTimeToLive()
+			{
+				return 60000;
+			}
+
+			@Override
+			protected int getMaxSize()
+			{
+				return 10;
+			}
+
+			@Override
+			protected String getPublicFolders()
+			{
+				return PUBLIC_FOLDER;
+			}
+		};
+
+		media = media(1, "secure");
+		user = mock(UserModel.class);
+		when(user.getPk()).thenReturn(PK.createFixedCounterPK(Constants.TC.User, 1));
+		final PrincipalGroupModel group = group(1);
+		nestedGroup = group(2);
+		when(user.getAllGroups()).thenReturn(new HashSet<>(Arrays.asList(group, nestedGroup)));
+	}
+
+	@Test
+	public void shouldAskTheServiceOncePerMediaAndPrincipal() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.FALSE);
+
+		assertEquals(Boolean.FALSE, interceptor.invoke(invocation));
+		assertEquals(Boolean.FALSE, interceptor.invoke(invocation));
+
+		verify(invocation, times(1)).proceed();
+		assertEquals(1, interceptor.getHits());
+	}
+
+	@Test
+	public void shouldResolveTheGroupsOfAPrincipalOnce() throws Throwable
+	{
+		interceptor.invoke(isAccessGranted(media, user, Boolean.FALSE));
+		interceptor.invoke(isAccessGranted(media, user, Boolean.FALSE));
+		interceptor.invoke(isAccessGranted(media(2, "secure"), user, Boolean.FALSE));
+
+		verify(user, times(1)).getAllGroups();
+	}
+
+	@Test
+	public void shouldResolveTheGroupsAgainWhenThePrincipalIsSaved() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.FALSE);
+		interceptor.invoke(invocation);
+
+		when(user.getAllGroups()).thenReturn(Collections.singleton(nestedGroup));
+		interceptor.afterSave(Collections.singletonList(event(user.getPk())));
+		interceptor.invoke(invocation);
+
+		verify(invocation, times(2)).proceed();
+		verify(user, times(2)).getAllGroups();
+	}
+
+	@Test
+	public void shouldDropDecisionsWhenANestedGroupIsSaved() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.TRUE);
+		interceptor.invoke(invocation);
+
+		interceptor.afterSave(Collections.singletonList(event(nestedGroup.getPk())));
+		interceptor.invoke(invocation);
+
+		verify(invocation, times(2)).proceed();
+	}
+
+	@Test
+	public void shouldDropDecisionsWhenThePrincipalOrTheMediaIsSaved() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.TRUE);
+		interceptor.invoke(invocation);
+
+		interceptor.afterSave(Collections.singletonList(event(user.getPk())));
+		interceptor.invoke(invocation);
+		interceptor.afterSave(Collections.singletonList(event(media.getPk())));
+		interceptor.invoke(invocation);
+
+		verify(invocation, times(3)).proceed();
+	}
+
+	@Test
+	public void shouldKeepDecisionsWhenOtherItemsAreSaved() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.TRUE);
+		interceptor.invoke(invocation);
+
+		interceptor.afterSave(Collections.singletonList(event(PK.createFixedCounterPK(Constants.TC.Media, 2))));
+		interceptor.invoke(invocation);
+
+		verify(invocation, times(1)).proceed();
+	}
+
+	@Test
+	public void shouldDropDecisionsOfAMediaWhosePermissionsAreChangedThroughTheProxy() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.FALSE);
+		interceptor.invoke(invocation);
+
+		final MethodInvocation grant = invocation("grantReadPermission", media, user);
+		interceptor.invoke(grant);
+		interceptor.invoke(invocation);
+
+		verify(grant).proceed();
+		verify(invocation, times(2)).proceed();
+	}
+
+	@Test
+	public void shouldKeepDecisionsOverReadsThroughTheProxy() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.FALSE);
+		interceptor.invoke(invocation);
+
+		interceptor.invoke(invocation("getPermittedPrincipals", media));
+		interceptor.invoke(invocation);
+
+		verify(invocation, times(1)).proceed();
+	}
+
+	@Test
+	public void shouldGrantMediaInPublicFoldersWithoutAskingTheService() throws Throwable
+	{
+		final MethodInvocation invocation = isAccessGranted(media(2, PUBLIC_FOLDER), user, Boolean.FALSE);
+
+		assertEquals(Boolean.TRUE, interceptor.invoke(invocation));
+
+		verify(invocation, never()).proceed();
+		assertEquals(1, interceptor.getPublicHits());
+	}
+
+	@Test
+	public void shouldAlwaysAskTheServiceWhenDisabled() throws Throwable
+	{
+		enabled = false;
+		final MethodInvocation invocation = isAccessGranted(media, user, Boolean.TRUE);
+
+		interceptor.invoke(invocation);
+		interceptor.invoke(invocation);
+
+		verify(invocation, times(2)).proceed();
+		assertEquals(0, interceptor.size());
+	}
+
+	private static MediaModel media(final long counter, final String folderQualifier)
+	{
+		final MediaModel media = mock(MediaModel.class);
+		when(media.getPk()).thenReturn(PK.createFixedCounterPK(Constants.TC.Media, counter));
+		final MediaFolderModel folder = mock(MediaFolderModel.class);
+		when(folder.getQualifier()).thenReturn(folderQualifier);
+		when(media.getFolder()).thenReturn(folder);
+		return media;
+	}
+
+	private static PrincipalGroupModel group(final long counter)
+	{
+		final PrincipalGroupModel group = mock(PrincipalGroupModel.class);
+		when(group.getPk()).thenReturn(PK.createFixedCounterPK(Constants.TC.UserGroup, counter));
+		return group;
+	}
+
+	private static MethodInvocation isAccessGranted(final MediaModel media, final UserModel user, final Boolean granted)
+			throws Throwable
+	{
+		final MethodInvocation invocation = invocation("isAccessGranted", media, user);
+		when(invocation.proceed()).thenReturn(granted);
+		return invocation;
+	}
+
+	private static MethodInvocation invocation(final String methodName, final Object... args) throws NoSuchMethodException
+	{
+		for (final Method method : MediaPermissionService.class.getMethods())
+		{
+			if (method.getName().equals(methodName))
+			{
+				final MethodInvocation invocation = mock(MethodInvocation.class);
+				when(invocation.getMethod()).thenReturn(method);
+				when(invocation.getArguments()).thenReturn(args);
+				return invocation;
+			}
+		}
+		throw new NoSuchMethodException(methodName);
+	}
+
+	private static AfterSaveEvent event(final PK pk)
+	{
+		final AfterSaveEvent event = mock(AfterSaveEvent.class);
+		when(event.getPk()).thenReturn(pk);
+		when(event.getType()).thenReturn(Integer.valueOf(AfterSaveEvent.UPDATE));
+		return event;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * [y] hybris Platform
+ *
+ * Copyright (c) 2000-2013 hybris AG
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of hybris
+ * ("Confidential Information"). You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with hybris.
+ *
+ *
+ */
+package de.hybris.support.services.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import de.hybris.bootstrap.annotations.IntegrationTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.CartModel;
+import de.hybris.platform.core.model.user.CustomerModel;
+import de.hybris.platform.core.model.user.UserModel;
+import de.hybris.platform.servicelayer.ServicelayerTest;
+import de.hybris.platform.servicelayer.i18n.CommonI18NService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Runs {@link DefaultCartPurgeService} against the database. The purge deletes in transactions of its own workers, so
+ * the test is not transactional and removes what is left of its carts afterwards.
+ */
+@IntegrationTest
+public class DefaultCartPurgeServiceIntegrationTest extends ServicelayerTest
+{
+	private static final String SELECT_CART_BY_CODE = "SELECT {pk} FROM {Cart} WHERE {code} = ?code";
+
+	@Resource
+	private ModelService modelService;
+
+	@Resource
+	private FlexibleSearchService flexibleSearchService;
+
+	@Resource
+	private SessionService sessionService;
+
+	@Resource
+	private UserService userService;
+
+	@Resource
+	private CommonI18NService commonI18NService;
+
+	private final List<CartModel> carts = new ArrayList<>();
+
+	private DefaultCartPurgeService purgeService;
+
+	private CustomerModel customer;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		createCoreData();
+		customer = modelService.create(CustomerModel.class);
+		customer.setUid("cartpurge-" + System.nanoTime());
+		modelService.save(customer);
+		purgeService = createPurgeService(new DefaultCartPurgeService());
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (final CartModel cart : carts)
+		{
+			if (exists(cart))
+			{
+				modelService.remove(cart);
+			}
+		}
+		modelService.remove(customer);
+	}
+
+	@Test
+	public void shouldPurgeAnonymousCartsBeforeStaleCartsAndKeepSavedCarts() throws InterruptedException
+	{
+		final CartModel anonymousCart = createCart(userService.getAnonymousUser(), false);
+		final CartModel customerCart = createCart(customer, false);
+		final CartModel savedCart = createCart(userService.getAnonymousUser(), true);
+		final Date afterChanges = afterChanges();
+
+		purgeService.purge(afterChanges, daysAgo(1));
+
+		assertFalse("anonymous cart was kept", exists(anonymousCart));
+		assertTrue("customer cart was purged before it was stale", exists(customerCart));
+		assertTrue("saved cart was purged", exists(savedCart));
+
+		purgeService.purge(afterChanges, afterChanges);
+
+		assertFalse("stale customer cart was kept", exists(customerCart));
+		assertTrue("saved cart was purged", exists(savedCart));
+	}
+
+	@Test
+	public void shouldKeepCartsModifiedAfterTheirRangeWasCut() throws InterruptedException
+	{
+		final CartModel untouched = createCart(userService.getAnonymousUser(), false);
+		final CartModel touched = createCart(userService.getAnonymousUser(), false);
+		final Date afterChanges = afterChanges();
+		final boolean[] touchedInRange = new boolean[1];
+		final DefaultCartPurgeService service = createPurgeService(new DefaultCartPurgeService()
+		{
+			@Override
+			protected List<PK> readPurgeablePks(final Map<String, Object> params, final PK lastPk, final int count)
+			{
+				final List<PK> pks = super.readPurgeablePks(params, lastPk, count);
+				if (!touchedInRange[0] && pks.contains(untouched.getPk()) && pks.contains(touched.getPk()))
+				{
+					// the cart is modified after the range was cut but before the range is deleted
+					touched.setDescription("touched");
+					modelService.save(touched);
+					touchedInRange[0] = true;
+				}
+				return pks;
+			}
+		});
+
+		service.purge(afterChanges, afterChanges);
+
+		assertTrue("both carts were not cut into one range", touchedInRange[0]);
+		assertFalse("untouched cart was kept", exists(untouched));
+		assertTrue("cart modified after the range was cut was purged", exists(touched));
+	}
+
+	private DefaultCartPurgeService createPurgeService(final DefaultCartPurgeService service)
+	{
+		service.setFlexibleSearchService(flexibleSearchService);
+		service.setModelService(modelService);
+		service.setSessionService(sessionService);
+		service.setUserService(userService);
+		return service;
+	}
+
+	private CartModel createCart(final UserModel user, final boolean saved)
+	{
+		final CartModel cart = modelService.create(CartModel.class);
+		cart.setCode("cartpurge-" + System.nanoTime());
+		cart.setUser(user);
+		cart.setCurrency(commonI18NService.getCurrency("EUR"));
+		cart.setDate(new Date());
+		if (saved)
+		{
+			cart.setSaveTime(new Date());
+		}
+		modelService.save(cart);
+		carts.add(cart);
+		return cart;
+	}
+
+	private boolean exists(final CartModel cart)
+	{
+		final FlexibleSearchQuery query = new FlexibleSearchQuery(SELECT_CART_BY_CODE);
+		query.addQueryParameter("code", cart.getCode());
+		query.setResultClassList(Collections.singletonList(PK.class));
+		return !flexibleSearchService.search(query).getResult().isEmpty();
+	}
+
+	/**
+	 * A cut-off between the changes made so far and the ones made later, with a second of margin on both sides for
+	 * databases that store the modification time in seconds.
+	 */
+	private static Date afterChanges() throws InterruptedException
+	{
+		Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+		final Date cutOff = new Date();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+		return cutOff;
+	}
+
+	private static Date daysAgo(final int days)
+	{
+		return new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+	}
+}